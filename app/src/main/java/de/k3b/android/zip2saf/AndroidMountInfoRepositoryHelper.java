@@ -22,34 +22,98 @@ package de.k3b.android.zip2saf;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
-import android.provider.DocumentsContract;
+import android.util.Log;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.k3b.zip2saf.data.MountInfo;
 import de.k3b.zip2saf.data.MountInfoRepository;
+import de.k3b.zip2saf.data.MountInfoStore;
 
 /** Add android specific persistence of android independent {@link MountInfoRepository} */
 public class AndroidMountInfoRepositoryHelper {
+    /** mounts of older versions: the complete list as one json string */
+    private static final String PREF_MOUNTS = "mounts";
+    private static final String STORE_FILE = "mounts.log";
+
+    /** load on demand via getStore() */
+    private static MountInfoStore store = null;
+
+    private static synchronized MountInfoStore getStore(@NotNull Context context) {
+        if (store == null) {
+            store = new MountInfoStore(new File(context.getFilesDir(), STORE_FILE));
+        }
+        return store;
+    }
+
     public static void saveRepository(@NotNull Context context) {
         saveRepository(context, MountInfoRepository.getInstance());
     }
 
+    /** replaces all saved mounts. Mount, eject and update should use {@link #saveMount(Context, MountInfo)} instead */
     public static void saveRepository(@NotNull Context context, @NotNull MountInfoRepository repository) {
-        SharedPreferences prefsInstance = PreferenceManager.getDefaultSharedPreferences(context);
+        try {
+            getStore(context).save(getMounts(repository));
+        } catch (IOException ioException) {
+            Log.w(ZipReadStorageProvider.TAG, "saveRepository " + ioException.getMessage(), ioException);
+        }
+    }
 
-        prefsInstance
-                .edit()
-                .putString("mounts", repository.toString())
-                .apply();
+    /** @return all items of repository without the special "[[add]]" item */
+    @NotNull private static List<MountInfo> getMounts(@NotNull MountInfoRepository repository) {
+        List<MountInfo> items = new ArrayList<>();
+        for (MountInfo item : repository.getAll()) {
+            if (!repository.isSpecialItem(item)) items.add(item);
+        }
+        return items;
     }
 
-    public static void loadRepository(@NotNull Context context) {
-        SharedPreferences prefsInstance = PreferenceManager.getDefaultSharedPreferences(context);
+    /** persists a new or updated mount */
+    public static void saveMount(@NotNull Context context, @NotNull MountInfo item) {
+        if (MountInfoRepository.getInstance().isSpecialItem(item)) return;
+        try {
+            getStore(context).put(item);
+        } catch (IOException ioException) {
+            Log.w(ZipReadStorageProvider.TAG, "saveMount(" + item + ") " + ioException.getMessage(), ioException);
+        }
+    }
+
+    /** persists that item was ejected */
+    public static void saveEject(@NotNull Context context, @NotNull MountInfo item) {
+        try {
+            getStore(context).remove(item.zipId);
+        } catch (IOException ioException) {
+            Log.w(ZipReadStorageProvider.TAG, "saveEject(" + item + ") " + ioException.getMessage(), ioException);
+        }
+    }
+
+    /**
+     * @return the persisted mounts. Does disk io: To be used as {@link MountInfoRepository.Loader}
+     * so that the mounts are loaded on first use and not in Application.onCreate().
+     */
+    @NotNull
+    public static List<MountInfo> loadMounts(@NotNull Context context) {
+        MountInfoStore store = getStore(context);
+        if (store.exists()) return store.getAll();
 
-        String json = prefsInstance.getString("mounts","[]");
-        MountInfoRepository.fromString(json);
-        context.getContentResolver()
-                .notifyChange(DocumentsContract.buildRootsUri(BuildConfig.DOCUMENTS_AUTHORITY), null);
+        // the preferences are only parsed if the mounts have not been migrated yet
+        SharedPreferences prefsInstance = PreferenceManager.getDefaultSharedPreferences(context);
+        String json = prefsInstance.getString(PREF_MOUNTS, null);
+        if (json == null) return store.getAll();
 
+        // first start after update: move mounts from the preferences to the store
+        List<MountInfo> items = getMounts(MountInfoRepository.fromString(json));
+        try {
+            store.save(items);
+            prefsInstance.edit().remove(PREF_MOUNTS).apply();
+        } catch (IOException ioException) {
+            Log.w(ZipReadStorageProvider.TAG, "loadMounts " + ioException.getMessage(), ioException);
+        }
+        return items;
     }
 }
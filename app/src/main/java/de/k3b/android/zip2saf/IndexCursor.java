@@ -0,0 +1,316 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.android.zip2saf;
+
+import static android.provider.DocumentsContract.Document.MIME_TYPE_DIR;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.os.Bundle;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import de.k3b.zip2saf.index.ZipArchive;
+import de.k3b.zip2saf.index.ZipIndex;
+
+/**
+ * Read only {@link Cursor} of zip entries that takes every value straight from the {@link ZipIndex}
+ * when it is asked for, instead of building all rows in a MatrixCursor up front.
+ * Only the columns of the projection are ever computed.
+ *
+ * {@link #fillWindow(int, CursorWindow)} writes the rows directly into the window
+ * that is sent to the client.
+ */
+public class IndexCursor extends AbstractCursor {
+    /** file name -> mime type */
+    public interface MimeTypeResolver {
+        @NonNull String getMimeType(@NonNull String fileName);
+    }
+
+    private static final int COL_UNKNOWN = -1;
+    private static final int COL_DOCUMENT_ID = 0;
+    private static final int COL_DISPLAY_NAME = 1;
+    private static final int COL_MIME_TYPE = 2;
+    private static final int COL_FLAGS = 3;
+    private static final int COL_SIZE = 4;
+    private static final int COL_LAST_MODIFIED = 5;
+
+    @NonNull private final String[] columnNames;
+    /** COL_XXX of every column of the projection */
+    @NonNull private final int[] columns;
+    @NonNull private final String archiveId;
+    @NonNull private final ZipIndex index;
+    /** the rows are the children of parent or ... */
+    private final int parent;
+    /** ... the rows are these nodes */
+    @Nullable private final int[] nodes;
+    /** document id of parent ending with "/" */
+    @Nullable private final String childIdPrefix;
+    @NonNull private final MimeTypeResolver mimeTypes;
+    private final int count;
+    @NonNull private Bundle extras = Bundle.EMPTY;
+
+    /** values of the node of the last row: every column needs them, getName() is not cheap */
+    private int rowNode = ZipIndex.NOT_FOUND;
+    private String rowName;
+    private boolean rowIsDir;
+    @Nullable private String rowMimeType;
+
+    private IndexCursor(@NonNull String[] projection, @NonNull String archiveId, @NonNull ZipIndex index,
+                        int parent, @Nullable int[] nodes, @NonNull MimeTypeResolver mimeTypes) {
+        this.columnNames = projection;
+        this.columns = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            columns[i] = getColumnId(projection[i]);
+        }
+        this.archiveId = archiveId;
+        this.index = index;
+        this.parent = parent;
+        this.nodes = nodes;
+        this.childIdPrefix = (nodes == null) ? getDirectoryDocumentId(parent) : null;
+        this.mimeTypes = mimeTypes;
+        this.count = (nodes == null) ? index.getChildCount(parent) : nodes.length;
+    }
+
+    /**
+     * @param archiveId document id of the zip file that index belongs to. See {@link ZipArchive#id}
+     * @return cursor of all children of parent
+     */
+    @NonNull
+    public static IndexCursor createChildren(@NonNull String[] projection, @NonNull String archiveId,
+                                             @NonNull ZipIndex index, int parent, @NonNull MimeTypeResolver mimeTypes) {
+        return new IndexCursor(projection, archiveId, index, parent, null, mimeTypes);
+    }
+
+    /**
+     * @param archiveId document id of the zip file that index belongs to. See {@link ZipArchive#id}
+     * @return cursor of the nodes in this order
+     */
+    @NonNull
+    public static IndexCursor create(@NonNull String[] projection, @NonNull String archiveId,
+                                     @NonNull ZipIndex index, @NonNull int[] nodes, @NonNull MimeTypeResolver mimeTypes) {
+        return new IndexCursor(projection, archiveId, index, ZipIndex.NOT_FOUND, nodes, mimeTypes);
+    }
+
+    private static int getColumnId(String columnName) {
+        switch (columnName) {
+            case Document.COLUMN_DOCUMENT_ID: return COL_DOCUMENT_ID;
+            case Document.COLUMN_DISPLAY_NAME: return COL_DISPLAY_NAME;
+            case Document.COLUMN_MIME_TYPE: return COL_MIME_TYPE;
+            case Document.COLUMN_FLAGS: return COL_FLAGS;
+            case Document.COLUMN_SIZE: return COL_SIZE;
+            case Document.COLUMN_LAST_MODIFIED: return COL_LAST_MODIFIED;
+            default: return COL_UNKNOWN;
+        }
+    }
+
+    /**
+     * @param loading true: the rows are incomplete. The client is notified via the
+     *                notification uri when more rows are available.
+     */
+    public void setLoading(boolean loading) {
+        Bundle extras = new Bundle();
+        extras.putBoolean(DocumentsContract.EXTRA_LOADING, loading);
+        this.extras = extras;
+    }
+
+    @Override
+    public Bundle getExtras() {
+        return extras;
+    }
+
+    @Override
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return columnNames;
+    }
+
+    private int getNode(int row) {
+        return (nodes != null) ? nodes[row] : index.getChild(parent, row);
+    }
+
+    private void loadRow(int node) {
+        if (node != rowNode) {
+            rowNode = node;
+            rowName = index.getName(node);
+            // nested zips are shown as dirs
+            rowIsDir = index.isDirectory(node) || ZipArchive.isNestedArchive(index, node, rowName);
+            rowMimeType = null;
+        }
+    }
+
+    private boolean isDir(int node) {
+        loadRow(node);
+        return rowIsDir;
+    }
+
+    @NonNull
+    private String getDirectoryDocumentId(int dir) {
+        return Zip2SafHelper.getDocumentId(archiveId,
+                (dir == ZipIndex.ROOT) ? "" : Zip2SafHelper.getDirectoryID(index.getPath(dir)));
+    }
+
+    @NonNull
+    private String getDisplayName(int node) {
+        loadRow(node);
+        return rowIsDir ? rowName + Zip2SafHelper.PATH_DELIMITER : rowName;
+    }
+
+    @NonNull
+    private String getDocumentId(int node) {
+        String prefix = (childIdPrefix != null) ? childIdPrefix : getDirectoryDocumentId(index.getParent(node));
+        return prefix + getDisplayName(node);
+    }
+
+    @NonNull
+    private String getMimeType(int node) {
+        loadRow(node);
+        if (rowMimeType == null) {
+            rowMimeType = rowIsDir ? MIME_TYPE_DIR : mimeTypes.getMimeType(rowName);
+        }
+        return rowMimeType;
+    }
+
+    private int getFlags(int node) {
+        // expect a call to openDocumentThumbnail for each image
+        return (!isDir(node) && getMimeType(node).startsWith("image/")) ? Document.FLAG_SUPPORTS_THUMBNAIL : 0;
+    }
+
+    /** @return 0 if null */
+    private long getNumber(int column, int node) {
+        switch (column) {
+            case COL_FLAGS: return getFlags(node);
+            case COL_SIZE: return isDir(node) ? 0 : index.getSize(node);
+            case COL_LAST_MODIFIED: return isDir(node) ? 0 : Zip2SafHelper.getTimeInMilliSince1970(index.getLastModified(node));
+            default: return 0;
+        }
+    }
+
+    @Nullable
+    private String getText(int column, int node) {
+        switch (column) {
+            case COL_DOCUMENT_ID: return getDocumentId(node);
+            case COL_DISPLAY_NAME: return getDisplayName(node);
+            case COL_MIME_TYPE: return getMimeType(node);
+            default: return null;
+        }
+    }
+
+    private static boolean isNumber(int column) {
+        return column == COL_FLAGS || column == COL_SIZE || column == COL_LAST_MODIFIED;
+    }
+
+    private boolean isNull(int column, int node) {
+        if (column == COL_UNKNOWN) return true;
+        // size and last modified are null if unknown
+        return (column == COL_SIZE || column == COL_LAST_MODIFIED) && getNumber(column, node) == 0;
+    }
+
+    @Override
+    public int getType(int column) {
+        int col = columns[column];
+        if (isNull(col, getNode(mPos))) return Cursor.FIELD_TYPE_NULL;
+        return isNumber(col) ? Cursor.FIELD_TYPE_INTEGER : Cursor.FIELD_TYPE_STRING;
+    }
+
+    @Override
+    public String getString(int column) {
+        int col = columns[column];
+        int node = getNode(mPos);
+        if (isNull(col, node)) return null;
+        return isNumber(col) ? Long.toString(getNumber(col, node)) : getText(col, node);
+    }
+
+    @Override
+    public long getLong(int column) {
+        return getNumber(columns[column], getNode(mPos));
+    }
+
+    @Override
+    public short getShort(int column) {
+        return (short) getLong(column);
+    }
+
+    @Override
+    public int getInt(int column) {
+        return (int) getLong(column);
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return getLong(column);
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return isNull(columns[column], getNode(mPos));
+    }
+
+    @Override
+    public void fillWindow(int position, CursorWindow window) {
+        if (position < 0 || position >= count) return;
+        window.acquireReference();
+        try {
+            window.clear();
+            window.setStartPosition(position);
+            window.setNumColumns(columns.length);
+            for (int row = position; row < count; row++) {
+                if (!window.allocRow()) break;
+                if (!putRow(window, row)) {
+                    // window is full
+                    window.freeLastRow();
+                    break;
+                }
+            }
+        } finally {
+            window.releaseReference();
+        }
+    }
+
+    private boolean putRow(CursorWindow window, int row) {
+        int node = getNode(row);
+        for (int column = 0; column < columns.length; column++) {
+            int col = columns[column];
+            boolean ok;
+            if (isNull(col, node)) {
+                ok = window.putNull(row, column);
+            } else if (isNumber(col)) {
+                ok = window.putLong(getNumber(col, node), row, column);
+            } else {
+                ok = window.putString(getText(col, node), row, column);
+            }
+            if (!ok) return false;
+        }
+        return true;
+    }
+}
@@ -19,17 +19,26 @@
 package de.k3b.android.zip2saf;
 
 import android.app.Activity;
+import android.app.AlertDialog;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.Toast;
 
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
 import de.k3b.android.zip2saf.widget.FilePermissionActivity;
 import de.k3b.zip2saf.data.MountInfoRepository;
+import de.k3b.zip2saf.metrics.ProviderMetrics;
 
 public class MountListActivity extends FilePermissionActivity {
+    private static final int MENU_STATISTICS = 1;
+
     private RecyclerView mountList = null;
     private MountService mountService = null;
 
@@ -41,6 +50,28 @@ public class MountListActivity extends FilePermissionActivity {
         this.mountList.setAdapter(mountService.createAdapter());
     }
 
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        menu.add(Menu.NONE, MENU_STATISTICS, Menu.NONE, R.string.menu_statistics);
+        return super.onCreateOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == MENU_STATISTICS) {
+            // same text as "adb shell dumpsys activity provider de.k3b.android.zip2saf/.ZipReadStorageProvider"
+            StringWriter statistics = new StringWriter();
+            ProviderMetrics.getInstance().dump(new PrintWriter(statistics));
+            new AlertDialog.Builder(this)
+                    .setTitle(R.string.menu_statistics)
+                    .setMessage(statistics.toString())
+                    .setPositiveButton(android.R.string.ok, null)
+                    .show();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         if (requestCode == MountService.REQUEST_ZIP_FILE) {
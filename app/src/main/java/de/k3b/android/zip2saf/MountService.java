@@ -40,9 +40,8 @@ public class MountService {
             if (repository.isSpecialItem(item)) {
                 requestMount();
             } else {
-                repository.remove(item);
-                Zip2SafHelper.clearThumbCache(activity, item.zipId);
-                notifyChange();
+                Zip2SafHelper.eject(activity, item);
+                adapter.notifyDataSetChanged();
             }
         }
     }
@@ -51,7 +50,6 @@ public class MountService {
         adapter.notifyDataSetChanged();
         activity.getContentResolver()
                 .notifyChange(DocumentsContract.buildRootsUri(BuildConfig.DOCUMENTS_AUTHORITY), null);
-        AndroidMountInfoRepositoryHelper.saveRepository(activity.getApplicationContext(), repository);
     }
 
     public void requestMount() {
@@ -74,11 +72,10 @@ public class MountService {
      * @return errormessage or null if all is ok
      */
     public String mount(@NotNull String zipID, @NotNull String uri) {
-        if (repository.getById(zipID) == null) {
-            // new MountInfo("added", "path/to/added", "added details")
-            MountInfo mountInfo = new MountInfo(zipID, uri, null);
-            this.repository.add(mountInfo);
-            AndroidMountInfoRepositoryHelper.saveRepository(this.activity.getApplicationContext(), this.repository);
+        // new MountInfo("added", "path/to/added", "added details")
+        MountInfo mountInfo = new MountInfo(zipID, uri, null);
+        if (this.repository.addIfAbsent(mountInfo)) {
+            AndroidMountInfoRepositoryHelper.saveMount(this.activity.getApplicationContext(), mountInfo);
             notifyChange();
 
             return null;
@@ -0,0 +1,122 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.android.zip2saf;
+
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.ParcelFileDescriptor;
+import android.os.ProxyFileDescriptorCallback;
+import android.os.storage.StorageManager;
+import android.system.ErrnoException;
+import android.system.OsConstants;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+
+import java.io.IOException;
+
+import de.k3b.zip2saf.index.RandomAccessInput;
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+/**
+ * Serves a {@link RandomAccessInput} as seekable {@link ParcelFileDescriptor} (Android-8 ff)
+ * so that video players, pdf viewers, ... can lseek inside a zip entry.
+ * Every read of the client is mapped to a read of the {@link RandomAccessInput}.
+ */
+@RequiresApi(Build.VERSION_CODES.O)
+public class RandomAccessProxyCallback extends ProxyFileDescriptorCallback {
+    /**
+     * descriptors are spread round robin over a few shared threads: a slow read (i.e. inflating
+     * again after a backward seek or a slow source uri) blocks only the descriptors on the same thread
+     */
+    private static final int MAX_THREADS = 4;
+    /** created on demand */
+    private static final Handler[] handlers = new Handler[MAX_THREADS];
+    private static int nextHandler = 0;
+
+    @NonNull private final RandomAccessInput content;
+    private final String dbgContext;
+
+    private RandomAccessProxyCallback(@NonNull RandomAccessInput content, String dbgContext) {
+        this.content = content;
+        this.dbgContext = dbgContext;
+    }
+
+    /** @return handler of the next shared thread */
+    @NonNull
+    private static synchronized Handler getHandler() {
+        int number = nextHandler;
+        nextHandler = (nextHandler + 1) % MAX_THREADS;
+        if (handlers[number] == null) {
+            HandlerThread thread = new HandlerThread("ZipProxyFileDescriptor-" + (number + 1));
+            thread.start();
+            handlers[number] = new Handler(thread.getLooper());
+        }
+        return handlers[number];
+    }
+
+    /**
+     * @return read only seekable file descriptor of content. content is closed when the client closes the descriptor.
+     */
+    @NonNull
+    public static ParcelFileDescriptor open(@NonNull Context context, @NonNull RandomAccessInput content,
+                                            String dbgContext) throws IOException {
+        StorageManager storageManager = (StorageManager) context.getSystemService(Context.STORAGE_SERVICE);
+        RandomAccessProxyCallback callback = new RandomAccessProxyCallback(content, dbgContext);
+        ParcelFileDescriptor result = storageManager.openProxyFileDescriptor(ParcelFileDescriptor.MODE_READ_ONLY,
+                callback, getHandler());
+        // finished in onRelease()
+        ProviderMetrics.getInstance().transferStarted();
+        return result;
+    }
+
+    @Override
+    public long onGetSize() throws ErrnoException {
+        try {
+            return content.length();
+        } catch (IOException ioException) {
+            throw new ErrnoException(dbgContext + " onGetSize", OsConstants.EIO, ioException);
+        }
+    }
+
+    @Override
+    public int onRead(long offset, int size, byte[] data) throws ErrnoException {
+        int done = 0;
+        try {
+            while (done < size) {
+                int read = content.read(offset + done, data, done, size - done);
+                if (read <= 0) break;
+                done += read;
+            }
+        } catch (IOException ioException) {
+            throw new ErrnoException(dbgContext + " onRead", OsConstants.EIO, ioException);
+        }
+        ProviderMetrics.getInstance().addBytesServed(done);
+        return done;
+    }
+
+    @Override
+    public void onRelease() {
+        ProviderMetrics.getInstance().transferFinished();
+        ZipReadStorageProvider.closeSilently(content, dbgContext + " onRelease");
+    }
+}
@@ -10,7 +10,8 @@ public class Zip2SafApp extends Application {
     public void onCreate() {
         super.onCreate();
         MountInfoRepository.init(getString(R.string.title_mountinfo_new_item));
-        AndroidMountInfoRepositoryHelper.loadRepository(this);
+        // no disk io here: this delays every start, even for a single provider call
+        MountInfoRepository.setLoader(() -> AndroidMountInfoRepositoryHelper.loadMounts(this));
 
         // log info when resources where not released
         // from https://wh0.github.io/2020/08/12/closeguard.html
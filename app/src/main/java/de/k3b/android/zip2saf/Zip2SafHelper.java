@@ -1,8 +1,10 @@
 package de.k3b.android.zip2saf;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.net.Uri;
 import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -10,33 +12,67 @@ import androidx.annotation.Nullable;
 
 import net.lingala.zip4j.io.inputstream.ZipInputStream;
 import net.lingala.zip4j.model.LocalFileHeader;
+import net.lingala.zip4j.model.enums.CompressionMethod;
 
 import java.io.File;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
-import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 
+import de.k3b.zip2saf.cache.EntryContentCache;
+import de.k3b.zip2saf.cache.FileLruCache;
+import de.k3b.zip2saf.data.DocumentIds;
 import de.k3b.zip2saf.data.MountInfo;
 import de.k3b.zip2saf.data.MountInfoRepository;
+import de.k3b.zip2saf.index.ContentSearchIndex;
+import de.k3b.zip2saf.index.InflateCheckpointCache;
+import de.k3b.zip2saf.index.InflateCheckpoints;
+import de.k3b.zip2saf.index.ZipEntryInfo;
+import de.k3b.zip2saf.index.ZipIndexFile;
+import de.k3b.zip2saf.index.ZipIndexRepository;
+import de.k3b.zip2saf.recent.RecentDocuments;
+import de.k3b.zip2saf.thumbnail.ThumbnailCache;
 
 public class Zip2SafHelper {
-    static final String PATH_DELIMITER = "/";
-    /**
-     * load on demand via getRepository()
-     */
-    private static MountInfoRepository repository = null;
+    static final String PATH_DELIMITER = DocumentIds.PATH_DELIMITER;
 
-    private static long millisecsSince2100;
+    /** sub dir of the cache dir with the persisted zip indexes. "." so it cannot collide with a thumb cache dir */
+    private static final String INDEX_DIR = ".zipindex";
+    /** sub dir of the cache dir with the thumbnails of all zips */
+    private static final String THUMBNAIL_DIR = ".thumbnails";
+    private static final long THUMBNAIL_CACHE_MAX_BYTES = 64 * 1024 * 1024;
+    /** sub dir of the cache dir with the uncompressed content of recently opened zip entries */
+    private static final String ENTRY_CONTENT_DIR = ".entries";
+    private static final long ENTRY_CONTENT_MEMORY_MAX_BYTES = 8 * 1024 * 1024;
+    private static final int ENTRY_CONTENT_MEMORY_MAX_ENTRY_SIZE = 128 * 1024;
+    private static final long ENTRY_CONTENT_DISK_MAX_BYTES = 64 * 1024 * 1024;
+    /** sub dir of the cache dir with uncompressed DEFLATED zips that are inside other zips */
+    private static final String NESTED_ARCHIVE_DIR = ".nested";
+    private static final long NESTED_ARCHIVE_MAX_BYTES = 256 * 1024 * 1024;
+    /** recorded provider calls. See {@link #getTraceFile(Context)} */
+    private static final String TRACE_FILE = "provider.trace";
+    /** max number of remembered recent documents per zip */
+    private static final int RECENT_MAX_ENTRIES = 64;
 
-    static {
-        Calendar cal = Calendar.getInstance();
-        cal.clear();
-        // 2100-02-01
-        cal.set(2100, 1, 1);
-        millisecsSince2100 = cal.getTimeInMillis();
-    }
+    /**
+     * load on demand via getThumbnailCache()
+     */
+    private static ThumbnailCache thumbnailCache = null;
+    /**
+     * load on demand via getEntryContentCache()
+     */
+    private static EntryContentCache entryContentCache = null;
+    /**
+     * load on demand via getNestedArchiveCache()
+     */
+    private static FileLruCache nestedArchiveCache = null;
+    /**
+     * zipId -> recently opened entries. Loaded on demand via getRecentDocuments()
+     */
+    private static final Map<String, RecentDocuments> recentDocuments = new HashMap<>();
 
     //--------------
     static String getRelPath(LocalFileHeader localFileHeader, String zipParentDir) {
@@ -49,15 +85,11 @@ public class Zip2SafHelper {
      */
     @Nullable
     static String getRelPath(String zipPath, String zipParentDir) {
-        if (zipPath != null && zipPath.startsWith(zipParentDir)) return zipPath.substring(zipParentDir.length());
-        return null;
+        return DocumentIds.getRelPath(zipPath, zipParentDir);
     }
 
     static MountInfoRepository getRepository() {
-        if (repository == null) {
-            repository = MountInfoRepository.getInstance();
-        }
-        return repository;
+        return MountInfoRepository.getInstance();
     }
 
     @Nullable
@@ -67,20 +99,14 @@ public class Zip2SafHelper {
     }
 
     static String getDocumentId(String zipId, String fileName) {
-        return zipId + PATH_DELIMITER + fileName;
+        return DocumentIds.getDocumentId(zipId, fileName);
     }
 
     /**
      * @return zipID without pathInsideZip. null if error
      */
     static String getRootId(String documentId) {
-        if ((documentId == null) || (documentId.isEmpty())) return null;
-
-        if (documentId.startsWith(PATH_DELIMITER)) return getRootId(documentId.substring(1));
-
-        String result = documentId;
-        int end = documentId.indexOf(PATH_DELIMITER);
-        if (end >= 0) result = documentId.substring(0, end);
+        String result = DocumentIds.getRootId(documentId);
         if (ZipReadStorageProvider.debug) Log.i(ZipReadStorageProvider.TAG, "getRootId('"
                 + documentId + "') => '" + result + "'");
         return result;
@@ -90,16 +116,7 @@ public class Zip2SafHelper {
      * @return pathInsideZip without zipID. "" if root
      */
     static String getZipPath(String documentId) {
-        String result = "";
-        if ((documentId != null) && (!documentId.isEmpty())) {
-
-            if (documentId.startsWith(PATH_DELIMITER)) return getZipPath(documentId.substring(1));
-            int begin = documentId.indexOf(PATH_DELIMITER) + 1;
-
-            if (begin > 1 && documentId.length() > begin) {
-                result = documentId.substring(begin);
-            }
-        }
+        String result = DocumentIds.getZipPath(documentId);
         if (ZipReadStorageProvider.debug) Log.i(ZipReadStorageProvider.TAG, "getZipPath('"
                 + documentId + "') => '" + result + "'");
         return result;
@@ -107,11 +124,7 @@ public class Zip2SafHelper {
 
     @NonNull
     static String getDirectoryID(@Nullable String parentDocumentId) {
-        if (parentDocumentId == null) return "";
-        if (parentDocumentId.length() > 0 && !parentDocumentId.endsWith(PATH_DELIMITER)) {
-            return parentDocumentId + PATH_DELIMITER;
-        }
-        return parentDocumentId;
+        return DocumentIds.getDirectoryID(parentDocumentId);
     }
 
     @NonNull
@@ -119,6 +132,18 @@ public class Zip2SafHelper {
         return new ZipInputStream(inputStream, password == null ? null : password.toCharArray());
     }
 
+    /** used to build a zip index if the zip has no accessible central directory */
+    @NonNull
+    static ZipEntryInfo toZipEntryInfo(@NonNull LocalFileHeader localFileHeader) {
+        CompressionMethod method = localFileHeader.getCompressionMethod();
+        return new ZipEntryInfo(localFileHeader.getFileName(),
+                localFileHeader.getUncompressedSize(), localFileHeader.getCompressedSize(),
+                localFileHeader.getCrc(),
+                (localFileHeader.getLastModifiedTime() == 0) ? 0 : localFileHeader.getLastModifiedTimeEpoch(),
+                (method == null) ? ZipEntryInfo.METHOD_STORED : method.getCode(),
+                ZipEntryInfo.OFFSET_UNKNOWN, localFileHeader.isEncrypted());
+    }
+
     public static String decodeDocumentId(String path) {
         if (false) {
             if (path == null || path.isEmpty()) return "";
@@ -134,40 +159,151 @@ public class Zip2SafHelper {
 
     @Nullable
     public static Long getTimeInMilliSince1970OrNull(long timeInSecsSince1970) {
-        // assume Secs Since 1970-01-01
-        Long result = timeInSecsSince1970;
-        if (result == null || result == 0) {
-            return null;
-        }
+        long result = getTimeInMilliSince1970(timeInSecsSince1970);
+        return (result == 0) ? null : result;
+    }
 
-        // assume milliSecs since 1970 as required by Document.COLUMN_LAST_MODIFIED
-        result *= 1000;
+    /** same as {@link #getTimeInMilliSince1970OrNull(long)} without boxing. 0 if unknown */
+    public static long getTimeInMilliSince1970(long timeInSecsSince1970) {
+        return DocumentIds.getTimeInMilliSince1970(timeInSecsSince1970);
+    }
 
-        if (result > millisecsSince2100) {
-            // if calculated time is bigger than 2100-01-01 assume that
-            // input time timeInSecsSince1970 was already in milliSecs since 1970
-            return timeInSecsSince1970;
+    @NonNull
+    public static synchronized ThumbnailCache getThumbnailCache(@NonNull Context context) {
+        if (thumbnailCache == null) {
+            thumbnailCache = new ThumbnailCache(new File(context.getCacheDir(), THUMBNAIL_DIR),
+                    THUMBNAIL_CACHE_MAX_BYTES);
         }
+        return thumbnailCache;
+    }
 
-        return result;
+    /**
+     * Bigger DEFLATED entries are not cached but served seekable through inflate checkpoints.
+     */
+    @NonNull
+    public static synchronized EntryContentCache getEntryContentCache(@NonNull Context context) {
+        if (entryContentCache == null) {
+            entryContentCache = new EntryContentCache(ENTRY_CONTENT_MEMORY_MAX_BYTES, ENTRY_CONTENT_MEMORY_MAX_ENTRY_SIZE,
+                    new File(context.getCacheDir(), ENTRY_CONTENT_DIR), ENTRY_CONTENT_DISK_MAX_BYTES,
+                    InflateCheckpoints.MIN_SPACING);
+        }
+        return entryContentCache;
     }
 
     @NonNull
     public static File getThumbCacheDir(@NonNull Context context, @NonNull String rootId) {
-        File cacheDir = new File(context.getCacheDir(), rootId);
-        cacheDir.mkdirs();
-        return cacheDir;
+        return getThumbnailCache(context).getDir(rootId);
     }
 
-    public static void clearThumbCache(@NonNull Context context, @NonNull String zipId) {
-        File thumbCacheDir = getThumbCacheDir(context, zipId);
-        int delCount = 0;
-        if (thumbCacheDir.exists()) {
-            for (File f : thumbCacheDir.listFiles()) {
-                if (f.delete()) delCount++;
+    @NonNull
+    public static File getIndexFile(@NonNull Context context, @NonNull String zipId) {
+        return getIndexDirFile(context, zipId, ".idx");
+    }
+
+    /** @return file of the persisted {@link ContentSearchIndex} of zipId, next to the index file */
+    @NonNull
+    public static File getContentIndexFile(@NonNull Context context, @NonNull String zipId) {
+        return getIndexDirFile(context, zipId, ".words");
+    }
+
+    private static File getIndexDirFile(@NonNull Context context, @NonNull String zipId, String extension) {
+        File indexDir = new File(context.getCacheDir(), INDEX_DIR);
+        indexDir.mkdirs();
+        // zipId may contain chars that are not allowed in file names
+        String fileName = zipId.replaceAll("[^A-Za-z0-9._-]", "_") + "_" + Integer.toHexString(zipId.hashCode());
+        return new File(indexDir, fileName + extension);
+    }
+
+    /**
+     * @return where provider calls are recorded to. In the external cache if available so that it can be
+     * pulled with adb without root. See {@link de.k3b.zip2saf.trace.TraceWriter}
+     */
+    @NonNull
+    public static File getTraceFile(@NonNull Context context) {
+        File dir = context.getExternalCacheDir();
+        return new File((dir != null) ? dir : context.getCacheDir(), TRACE_FILE);
+    }
+
+    /** @return where DEFLATED zips inside zips are uncompressed to. See {@link de.k3b.zip2saf.index.ZipArchive} */
+    @NonNull
+    public static synchronized FileLruCache getNestedArchiveCache(@NonNull Context context) {
+        if (nestedArchiveCache == null) {
+            nestedArchiveCache = new FileLruCache(new File(context.getCacheDir(), NESTED_ARCHIVE_DIR),
+                    NESTED_ARCHIVE_MAX_BYTES, ".zip");
+        }
+        return nestedArchiveCache;
+    }
+
+    /** @return the recently opened entries of zipId, persisted next to the index file */
+    @NonNull
+    public static RecentDocuments getRecentDocuments(@NonNull Context context, @NonNull String zipId) {
+        synchronized (recentDocuments) {
+            RecentDocuments result = recentDocuments.get(zipId);
+            if (result == null) {
+                result = new RecentDocuments(getIndexDirFile(context, zipId, ".recent"), RECENT_MAX_ENTRIES);
+                recentDocuments.put(zipId, result);
+            }
+            return result;
+        }
+    }
+
+    /** @return when an entry of zipId was opened the last time or 0 if never */
+    public static long getLastUsed(@NonNull Context context, @NonNull String zipId) {
+        return getIndexDirFile(context, zipId, ".recent").lastModified();
+    }
+
+    /**
+     * Unmounts mountInfo: used by the app and by {@link ZipReadStorageProvider#ejectRoot(String)}.
+     * The background content indexer is stopped first so that it neither reads the unmounted zip
+     * nor recreates the deleted content index file.
+     */
+    public static void eject(@NonNull Context context, @NonNull MountInfo mountInfo) {
+        ZipReadStorageProvider.cancelContentIndexer(mountInfo.zipId);
+        getRepository().remove(mountInfo);
+        AndroidMountInfoRepositoryHelper.saveEject(context.getApplicationContext(), mountInfo);
+        clearIndex(context, mountInfo.zipId);
+        clearThumbCache(context, mountInfo.zipId);
+
+        context.getContentResolver()
+                .notifyChange(DocumentsContract.buildRootsUri(BuildConfig.DOCUMENTS_AUTHORITY), null);
+    }
+
+    /** to be called when the zip is unmounted */
+    public static void clearIndex(@NonNull Context context, @NonNull String zipId) {
+        ZipIndexRepository.getInstance().remove(zipId);
+        InflateCheckpointCache.getInstance().remove(zipId);
+        getEntryContentCache(context).invalidate(zipId);
+        getContentIndexFile(context, zipId).delete();
+        getRecentDocuments(context, zipId).clear();
+        getNestedArchiveCache(context).invalidate(zipId);
+        if (getIndexFile(context, zipId).delete()) {
+            Log.i(ZipReadStorageProvider.TAG, "clearIndex('" + zipId + "')");
+        }
+    }
+
+    /**
+     * Used to find out if a persisted zip index is still valid without reading the zip file itself.
+     *
+     * @return size and last modified of the zip file or null if unknown. See {@link ZipIndexFile#toStamp(long, long)}
+     */
+    @Nullable
+    static String getSourceStamp(@NonNull Context context, @NonNull MountInfo mountInfo) {
+        String[] projection = new String[]{OpenableColumns.SIZE, DocumentsContract.Document.COLUMN_LAST_MODIFIED};
+        try (Cursor cursor = context.getContentResolver().query(Uri.parse(mountInfo.uri),
+                projection, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                return ZipIndexFile.toStamp(cursor.getLong(0), cursor.getLong(1));
             }
-            if (thumbCacheDir.delete()) delCount++;
+        } catch (RuntimeException ex) {
+            // i.e. SecurityException or IllegalArgumentException for unsupported columns
+            Log.w(ZipReadStorageProvider.TAG, "getSourceStamp(" + mountInfo + ") " + ex.getMessage());
         }
+        return null;
+    }
+
+    /** to be called when the zip is unmounted or has changed */
+    public static void clearThumbCache(@NonNull Context context, @NonNull String zipId) {
+        int delCount = getThumbnailCache(context).invalidate(zipId);
 
         if (delCount > 0) {
             Log.i(ZipReadStorageProvider.TAG, "clearThumbCache('" + zipId +
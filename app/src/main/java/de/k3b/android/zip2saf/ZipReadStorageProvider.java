@@ -34,7 +34,10 @@ import android.graphics.Point;
 import android.net.Uri;
 import android.os.Build;
 import android.os.CancellationSignal;
+import android.os.OperationCanceledException;
 import android.os.ParcelFileDescriptor;
+import android.os.Process;
+import android.os.SystemClock;
 import android.provider.DocumentsContract;
 import android.provider.DocumentsContract.Document;
 import android.provider.DocumentsContract.Root;
@@ -44,24 +47,62 @@ import android.webkit.MimeTypeMap;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
 import androidx.core.content.ContextCompat;
 
 import net.lingala.zip4j.io.inputstream.ZipInputStream;
 import net.lingala.zip4j.model.LocalFileHeader;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import de.k3b.zip2saf.cache.EntryContentCache;
+import de.k3b.zip2saf.concurrent.SingleFlight;
+import de.k3b.zip2saf.concurrent.TransferExecutor;
 import de.k3b.zip2saf.data.MountInfo;
 import de.k3b.zip2saf.data.MountInfoRepository;
+import de.k3b.zip2saf.index.ContentIndexer;
+import de.k3b.zip2saf.index.ContentSearchIndex;
+import de.k3b.zip2saf.index.FileChannelInput;
+import de.k3b.zip2saf.index.InflateCheckpointCache;
+import de.k3b.zip2saf.index.InflateCheckpoints;
+import de.k3b.zip2saf.index.MappedZipIndex;
+import de.k3b.zip2saf.index.NameSearchIndex;
+import de.k3b.zip2saf.index.RandomAccessInput;
+import de.k3b.zip2saf.index.ZipArchive;
+import de.k3b.zip2saf.index.ZipCentralDirectoryReader;
+import de.k3b.zip2saf.index.ZipEntryInfo;
+import de.k3b.zip2saf.index.ZipEntryReader;
+import de.k3b.zip2saf.index.ZipIndex;
+import de.k3b.zip2saf.index.ZipIndexFile;
+import de.k3b.zip2saf.index.ZipIndexProgress;
+import de.k3b.zip2saf.index.ZipIndexRepository;
+import de.k3b.zip2saf.metrics.MeteredInput;
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+import de.k3b.zip2saf.thumbnail.ExifThumbnailReader;
+import de.k3b.zip2saf.thumbnail.ThumbnailCache;
+import de.k3b.zip2saf.trace.TraceWriter;
 
 public class ZipReadStorageProvider extends DocumentsProvider {
     /**
@@ -69,10 +110,22 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     public static boolean debug = true;
 
+    /**
+     * warmUpIndexes= true : after the first roots query the persisted indexes of the recently used zips are
+     * loaded in a background priority thread, so that browsing them does not wait for the index
+     */
+    public static boolean warmUpIndexes = true;
+
     public static final String TAG = "k3b.ZipSafProv";
 
+    /** process start before Android-7, where Process.getStartElapsedRealtime() is not available */
+    private static final long CLASS_LOADED_ELAPSED = SystemClock.elapsedRealtime();
+
     // incremented every time there is a queryXXX call
-    private static long queryId = 1;
+    private static final AtomicLong queryId = new AtomicLong(1);
+
+    /** not null while provider calls are recorded. See {@link #dump(FileDescriptor, PrintWriter, String[])} */
+    private static volatile TraceWriter traceWriter = null;
 
     /**
      * Default root projection: everything but Root.COLUMN_MIME_TYPES, Root.COLUMN_SUMMARY, Root.COLUMN_AVAILABLE_BYTES
@@ -86,6 +139,47 @@ public class ZipReadStorageProvider extends DocumentsProvider {
             Document.COLUMN_DISPLAY_NAME, Document.COLUMN_FLAGS, Document.COLUMN_MIME_TYPE, Document.COLUMN_SIZE,
             Document.COLUMN_LAST_MODIFIED};
 
+    /**
+     * Bytes that may be read to find out the image size or the exif thumbnail before the
+     * thumbnail decoder rewinds. Enough for jpg with big exif data.
+     */
+    private static final int THUMBNAIL_HEADER_MARK_LIMIT = 256 * 1024;
+
+    /** DocumentsUI shows only the first results anyway */
+    private static final int MAX_SEARCH_RESULTS = 500;
+    /** DocumentsUI shows at most 64 recent documents */
+    private static final int MAX_RECENT_RESULTS = 64;
+    /** eject waits this long for the background content indexer to stop */
+    private static final long CANCEL_INDEXER_MILLIS = 2000;
+    /** number of recently used zips whose index is loaded after the first roots query */
+    private static final int MAX_WARM_UP_INDEXES = 3;
+    /** recording stops when the trace file gets bigger */
+    private static final long MAX_TRACE_BYTES = 8 * 1024 * 1024;
+    /** queryChildDocuments waits this long for a new index before it returns the entries found so far */
+    private static final long FIRST_ROWS_MILLIS = 300;
+    /** while a new index is loading clients are notified at most this often */
+    private static final long PROGRESS_NOTIFY_MILLIS = 1000;
+
+    /**
+     * DocumentsUI and galleries often send identical requests in parallel on different binder threads.
+     * These share one computation.
+     */
+    private final SingleFlight<MatrixCursor> cursorFlights = new SingleFlight<>();
+    private final SingleFlight<File> thumbnailFlights = new SingleFlight<>();
+    private final SingleFlight<NameSearchIndex> nameIndexFlights = new SingleFlight<>();
+
+    /**
+     * zipId -> index that is currently created in the background. Guarded by itself.
+     * Parallel first listings of a big zip share one load.
+     */
+    private final Map<String, ZipIndexProgress> indexLoads = new HashMap<>();
+
+    /**
+     * zipId -> running background {@link ContentIndexer} or null while it is starting. Guarded by itself.
+     * Static so that an eject from the app can cancel it, too.
+     */
+    private static final Map<String, ContentIndexer> contentIndexers = new HashMap<>();
+
     /**
      * Check to see if we are missing the Storage permission group. In those cases, we cannot
      * access local files and must invalidate any root URIs currently available.
@@ -100,7 +194,7 @@ public class ZipReadStorageProvider extends DocumentsProvider {
 
     private static boolean isMissingPermission(@Nullable Context context, String debugContext, String api, String permission) {
         if (context == null) {
-            log(api + " no context " + debugContext);
+            if (debug) log(api + " no context " + debugContext);
             return true;
         }
         if (ContextCompat.checkSelfPermission(context,
@@ -108,7 +202,7 @@ public class ZipReadStorageProvider extends DocumentsProvider {
             // Make sure that our root is invalidated as apparently we lost permission
             context.getContentResolver().notifyChange(
                     DocumentsContract.buildRootsUri(BuildConfig.DOCUMENTS_AUTHORITY), null);
-            log(api + " no permissions for " + debugContext);
+            if (debug) log(api + " no permissions for " + debugContext);
             return true;
         }
         return false;
@@ -125,14 +219,18 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     }
 
 
-    @NonNull
-    private static File createThumbFile(@NonNull Context context, @NonNull String rootId) throws IOException {
-        return File.createTempFile("thumbnail", ".png", Zip2SafHelper.getThumbCacheDir(context, rootId));
+    private static void countCache(int cache, boolean hit) {
+        if (hit) {
+            ProviderMetrics.getInstance().cacheHit(cache);
+        } else {
+            ProviderMetrics.getInstance().cacheMiss(cache);
+        }
     }
 
+    /** callers that concatenate strings check {@link #debug} first so that disabled logging costs nothing */
     private static void log(String msg) {
         if (debug) {
-            Log.i(TAG, "#" + queryId +
+            Log.i(TAG, "#" + queryId.get() +
                     ":" + msg);
         }
     }
@@ -151,7 +249,7 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     @Override
     public String createDocument(final String parentDocumentId, final String mimeType,
                                  final String displayName) {
-        log("not implemented createDocument('" + parentDocumentId + "'," + mimeType + "," + displayName + ")");
+        if (debug) log("not implemented createDocument('" + parentDocumentId + "'," + mimeType + "," + displayName + ")");
         return null;
     }
 
@@ -171,40 +269,96 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     @Override
     public Cursor queryRoots(final String[] projection) {
-        queryId++;
-        log("queryRoots");
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            log("queryRoots");
 
-        if (getContext() == null || ContextCompat.checkSelfPermission(getContext(),
-                Manifest.permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
-            log("queryRoots no read permissions");
-            return null;
+            if (getContext() == null || ContextCompat.checkSelfPermission(getContext(),
+                    Manifest.permission.READ_EXTERNAL_STORAGE) != PackageManager.PERMISSION_GRANTED) {
+                log("queryRoots no read permissions");
+                return null;
+            }
+            // Create a cursor with either the requested fields, or the default projection if "projection" is null.
+            final MatrixCursor result = new MatrixCursor(projection != null ? projection : DEFAULT_ROOT_PROJECTION);
+
+            // Add Home directories
+            MountInfoRepository repository = Zip2SafHelper.getRepository();
+
+            for (MountInfo mountInfo : repository.getAll()) {
+                if (!repository.isSpecialItem(mountInfo)) {
+                    final MatrixCursor.RowBuilder row = result.newRow();
+                    // These columns are required
+                    row.add(Root.COLUMN_ROOT_ID, mountInfo.zipId);
+                    row.add(Root.COLUMN_DOCUMENT_ID, mountInfo.zipId);
+                    row.add(Root.COLUMN_TITLE, mountInfo.zipId);
+                    int flags = Root.FLAG_LOCAL_ONLY | Root.FLAG_SUPPORTS_SEARCH | Root.FLAG_SUPPORTS_RECENTS;
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                        flags |= Root.FLAG_SUPPORTS_IS_CHILD;
+                    }
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                        flags |= Root.FLAG_SUPPORTS_EJECT;
+                    }
+                    row.add(Root.COLUMN_FLAGS, flags);
+                    row.add(Root.COLUMN_ICON, R.mipmap.ic_launcher);
+                }
+            }
+            return result;
+        } finally {
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_ROOTS, start);
+            trace(ProviderMetrics.OP_ROOTS, start, null, null, projection, null);
+            if (ProviderMetrics.getInstance().getColdStartMillis() < 0) onFirstQueryRoots();
         }
-        // Create a cursor with either the requested fields, or the default projection if "projection" is null.
-        final MatrixCursor result = new MatrixCursor(projection != null ? projection : DEFAULT_ROOT_PROJECTION);
-
-        // Add Home directories
-        MountInfoRepository repository = Zip2SafHelper.getRepository();
-
-        for (MountInfo mountInfo : repository.getAll()) {
-            if (!repository.isSpecialItem(mountInfo)) {
-                final MatrixCursor.RowBuilder row = result.newRow();
-                // These columns are required
-                row.add(Root.COLUMN_ROOT_ID, mountInfo.zipId);
-                row.add(Root.COLUMN_DOCUMENT_ID, mountInfo.zipId);
-                row.add(Root.COLUMN_TITLE, mountInfo.zipId);
-                int flags = Root.FLAG_LOCAL_ONLY;
-                // flags |= Root.FLAG_SUPPORTS_SEARCH
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                    flags |= Root.FLAG_SUPPORTS_IS_CHILD;
+    }
+
+    /** measures the cold start and then starts the optional background work */
+    private void onFirstQueryRoots() {
+        long processStart = (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+                ? Process.getStartElapsedRealtime()
+                : CLASS_LOADED_ELAPSED;
+        long millis = SystemClock.elapsedRealtime() - processStart;
+        if (ProviderMetrics.getInstance().coldStartFinished(millis)) {
+            Log.i(TAG, "cold start to first queryRoots " + millis + " ms");
+            if (warmUpIndexes) startIndexWarmUp();
+        }
+    }
+
+    /**
+     * Loads the persisted indexes of the {@link #MAX_WARM_UP_INDEXES} most recently used zips
+     * on a background priority thread. Indexes that are outdated are not recreated here.
+     */
+    private void startIndexWarmUp() {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final Context context = getContext();
+            final Map<String, Long> lastUsed = new HashMap<>();
+            List<MountInfo> candidates = new ArrayList<>();
+            for (MountInfo mountInfo : Zip2SafHelper.getRepository().getAll()) {
+                long used = Zip2SafHelper.getLastUsed(context, mountInfo.zipId);
+                if (mountInfo.indexFile != null && used > 0) {
+                    lastUsed.put(mountInfo.zipId, used);
+                    candidates.add(mountInfo);
                 }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-                    flags |= Root.FLAG_SUPPORTS_EJECT;
+            }
+            Collections.sort(candidates, (a, b) -> Long.compare(lastUsed.get(b.zipId), lastUsed.get(a.zipId)));
+
+            ZipIndexRepository indexRepository = ZipIndexRepository.getInstance();
+            for (MountInfo mountInfo : candidates.subList(0, Math.min(MAX_WARM_UP_INDEXES, candidates.size()))) {
+                if (indexRepository.get(mountInfo.zipId) != null) continue;
+                String stamp = Zip2SafHelper.getSourceStamp(context, mountInfo);
+                ZipIndex index = loadZipIndex(mountInfo, stamp, "warmUp");
+                synchronized (indexLoads) {
+                    // a query may have loaded it meanwhile
+                    if (index != null && !indexLoads.containsKey(mountInfo.zipId)
+                            && indexRepository.get(mountInfo.zipId) == null) {
+                        indexRepository.put(mountInfo.zipId, index, stamp);
+                    }
                 }
-                row.add(Root.COLUMN_FLAGS, flags);
-                row.add(Root.COLUMN_ICON, R.mipmap.ic_launcher);
             }
-        }
-        return result;
+            if (debug) log("warmUp done: " + candidates.size() + " recently used zips");
+        }, "ZipIndexWarmUp");
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
@@ -221,8 +375,20 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     @Override
     public boolean isChildDocument(final String parentDocumentId, final String documentId) {
-        boolean result = documentId.startsWith(Zip2SafHelper.getDirectoryID(parentDocumentId));
-        log("isChildDocument('" + parentDocumentId + "','" + documentId + "') ==> '" + result + "'");
+        boolean result;
+        String rootId = Zip2SafHelper.getRootId(documentId);
+        ZipIndex index = (rootId != null && rootId.equals(Zip2SafHelper.getRootId(parentDocumentId)))
+                ? getZipIndex(Zip2SafHelper.getMountInfo(documentId), "isChildDocument")
+                : null;
+        int parent = (index == null) ? ZipIndex.NOT_FOUND : index.find(Zip2SafHelper.getZipPath(parentDocumentId));
+        int child = (index == null) ? ZipIndex.NOT_FOUND : index.find(Zip2SafHelper.getZipPath(documentId));
+        if (parent != ZipIndex.NOT_FOUND && child != ZipIndex.NOT_FOUND) {
+            result = index.isDescendant(parent, child);
+        } else {
+            // no index or inside a nested zip
+            result = documentId.startsWith(Zip2SafHelper.getDirectoryID(parentDocumentId));
+        }
+        if (debug) log("isChildDocument('" + parentDocumentId + "','" + documentId + "') ==> '" + result + "'");
         return result;
     }
 
@@ -255,29 +421,338 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     @Override
     public Cursor queryChildDocuments(final String parentDocumentId, final String[] projection,
             final String sortOrder) {
-        queryId++;
-        String debugMsg = "queryChildDocuments('" + parentDocumentId + "',sort=" + sortOrder + ") ";
-        log(debugMsg);
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            String debugMsg = debug
+                    ? "queryChildDocuments('" + parentDocumentId + "',sort=" + sortOrder + ") "
+                    : "queryChildDocuments ";
+            log(debugMsg);
 
-        if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "queryChildDocuments")) {
-            return null;
+            if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "queryChildDocuments")) {
+                return null;
+            }
+            // Create a cursor with either the requested fields, or the default projection if "projection" is null.
+            final String[] columns = projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION;
+            Cursor indexed = queryIndexChildDocuments(parentDocumentId, columns, debugMsg);
+            if (indexed != null) return indexed;
+
+            MatrixCursor shared = cursorFlights.execute("queryChildDocuments:" + parentDocumentId + ":" + Arrays.toString(columns),
+                    () -> createChildDocuments(parentDocumentId, columns, debugMsg), null);
+            return copyOf(shared);
+        } finally {
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_CHILDREN, start);
+            trace(ProviderMetrics.OP_CHILDREN, start, parentDocumentId, sortOrder, projection, null);
         }
-        // Create a cursor with either the requested fields, or the default projection if "projection" is null.
-        final MatrixCursor result = new MatrixCursor(projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION);
+    }
+
+    /**
+     * @return rows computed on demand from the zip index or null if there is no index.
+     * If the index of a big zip is not ready yet the entries found so far with {@link DocumentsContract#EXTRA_LOADING}.
+     */
+    @Nullable
+    private Cursor queryIndexChildDocuments(final String parentDocumentId, final String[] columns, String debugMsg) {
+        MountInfo mountInfo = Zip2SafHelper.getRepository().getById(Zip2SafHelper.getRootId(parentDocumentId));
+        if (mountInfo == null) return null;
+        ZipIndex index = getCachedZipIndex(mountInfo);
+        countCache(ProviderMetrics.CACHE_INDEX, index != null);
+        if (index == null) {
+            ZipIndexProgress progress = startZipIndexLoad(mountInfo, debugMsg);
+            if (!progress.await(FIRST_ROWS_MILLIS)) {
+                Cursor loading = queryLoadingChildDocuments(parentDocumentId, columns, mountInfo, progress);
+                // else finished in the meantime
+                if (loading != null) return loading;
+            }
+            index = progress.getResult();
+        }
+        if (index == null) return null;
+
+        String dir = Zip2SafHelper.getDirectoryID(Zip2SafHelper.getZipPath(parentDocumentId));
+        ZipArchive.Entry parent = findEntry(mountInfo, index, dir, debugMsg);
+        if (parent == null) {
+            return IndexCursor.create(columns, mountInfo.zipId, index, new int[0], ZipReadStorageProvider::getMimeTypeFromName);
+        }
+        return IndexCursor.createChildren(columns, parent.archive.id, parent.archive.index, parent.node,
+                ZipReadStorageProvider::getMimeTypeFromName);
+    }
+
+    /**
+     * @return the children of parentDocumentId found so far while progress is still loading or null if it is done.
+     * The client re-queries when {@link #notifyIndexProgress(ZipIndexProgress)} fires on the notification uri.
+     */
+    @Nullable
+    private Cursor queryLoadingChildDocuments(final String parentDocumentId, final String[] columns,
+                                              @NonNull MountInfo mountInfo, @NonNull ZipIndexProgress progress) {
+        ZipIndex snapshot = progress.getSnapshot();
+        // nested zips cannot be opened before the index is complete
+        int parent = snapshot.find(Zip2SafHelper.getDirectoryID(Zip2SafHelper.getZipPath(parentDocumentId)));
+        IndexCursor result = (parent == ZipIndex.NOT_FOUND || !snapshot.isDirectory(parent))
+                ? IndexCursor.create(columns, mountInfo.zipId, snapshot, new int[0], ZipReadStorageProvider::getMimeTypeFromName)
+                : IndexCursor.createChildren(columns, mountInfo.zipId, snapshot, parent, ZipReadStorageProvider::getMimeTypeFromName);
+        result.setLoading(true);
+
+        Uri uri = DocumentsContract.buildChildDocumentsUri(BuildConfig.DOCUMENTS_AUTHORITY, parentDocumentId);
+        result.setNotificationUri(getContext().getContentResolver(), uri);
+        progress.addObserver(uri.toString());
+
+        // a finish() before addObserver() would never reach this cursor
+        if (progress.isDone()) return null;
+        if (debug) log("queryLoadingChildDocuments('" + parentDocumentId + "') " + result.getCount() + " rows so far");
+        return result;
+    }
+
+    /** tells every cursor of progress that there are more rows */
+    private void notifyIndexProgress(@NonNull ZipIndexProgress progress) {
+        Context context = getContext();
+        if (context == null) return;
+        for (String uri : progress.getObservers()) {
+            context.getContentResolver().notifyChange(Uri.parse(uri), null);
+        }
+    }
+
+    /** fallback if there is no index: scan the whole zip */
+    @NonNull
+    private MatrixCursor createChildDocuments(final String parentDocumentId, final String[] columns, String debugMsg) {
+        final MatrixCursor result = new MatrixCursor(columns);
         LocalFileHeader localFileHeader;
         MountInfo mountInfo = Zip2SafHelper.getRepository().getById(Zip2SafHelper.getRootId(parentDocumentId));
+        String dir = Zip2SafHelper.getDirectoryID(Zip2SafHelper.getZipPath(parentDocumentId));
+
+        int scanned = 0;
         try (ZipInputStream zipInputStream = getZipInputStream(parentDocumentId, mountInfo)) {
-            String dir = Zip2SafHelper.getDirectoryID(Zip2SafHelper.getZipPath(parentDocumentId));
             Set<String> duplicates = new HashSet<>();
             while ((localFileHeader = zipInputStream.getNextEntry()) != null) {
+                scanned++;
                 includeLocalFileHeader(result, mountInfo.zipId, dir, localFileHeader, duplicates);
             }
         } catch (IOException ioException) {
             Log.e(TAG, debugMsg + ioException.getMessage(), ioException);
         }
+        ProviderMetrics.getInstance().addEntriesScanned(scanned);
         return result;
     }
 
+    /**
+     * Return documents that match the given query under the requested root.
+     * The returned documents should be sorted by relevance in descending order.
+     *
+     * Case insensitive substring match on the file name, answered from the in memory
+     * {@link NameSearchIndex} without reading the zip again.
+     *
+     * @param rootId the root to search under.
+     * @param query string to match documents against.
+     * @param projection list of DocumentsContract.Document columns to put into the cursor. If null
+     *                   all supported columns should be included.
+     * @see Root#FLAG_SUPPORTS_SEARCH
+     */
+    @Override
+    public Cursor querySearchDocuments(final String rootId, final String query, final String[] projection) {
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            String debugMsg = debug ? "querySearchDocuments('" + rootId + "','" + query + "') " : "querySearchDocuments ";
+            log(debugMsg);
+
+            if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "querySearchDocuments")) {
+                return null;
+            }
+            final String[] columns = projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION;
+            MountInfo mountInfo = Zip2SafHelper.getMountInfo(rootId);
+            ZipIndex index = getZipIndex(mountInfo, debugMsg);
+            NameSearchIndex nameIndex = (index == null || query == null) ? null : getNameSearchIndex(mountInfo, index, debugMsg);
+            if (nameIndex == null) return new MatrixCursor(columns);
+
+            int[] nodes = nameIndex.search(query, MAX_SEARCH_RESULTS);
+            int count = nodes.length;
+
+            // text entries that contain all words of the query. Only what has been indexed so far.
+            ContentSearchIndex contentIndex = ZipIndexRepository.getInstance().getContentSearchIndex(mountInfo.zipId);
+            if (contentIndex != null) {
+                Set<Integer> found = new HashSet<>();
+                for (int node : nodes) found.add(node);
+                nodes = Arrays.copyOf(nodes, MAX_SEARCH_RESULTS);
+                for (int node : contentIndex.search(query, MAX_SEARCH_RESULTS)) {
+                    if (count >= MAX_SEARCH_RESULTS) break;
+                    if (found.add(node)) nodes[count++] = node;
+                }
+            }
+            if (contentIndex == null || !contentIndex.isComplete()) {
+                startContentIndexer(mountInfo, index, debugMsg);
+            }
+            if (debug) log(debugMsg + "==> " + count);
+            return IndexCursor.create(columns, mountInfo.zipId, index, Arrays.copyOf(nodes, count),
+                    ZipReadStorageProvider::getMimeTypeFromName);
+        } finally {
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_SEARCH, start);
+            trace(ProviderMetrics.OP_SEARCH, start, rootId, query, projection, null);
+        }
+    }
+
+    /**
+     * Streams all text entries of the zip once into its {@link ContentSearchIndex} on a background
+     * priority thread. Continues where a previous run was interrupted.
+     */
+    private void startContentIndexer(@NonNull MountInfo mountInfo, @NonNull ZipIndex index, String dbgContext) {
+        final String zipId = mountInfo.zipId;
+        synchronized (contentIndexers) {
+            if (contentIndexers.containsKey(zipId)) return;
+            contentIndexers.put(zipId, null);
+        }
+        String dbgMsg = dbgContext + "-ContentIndexer(" + zipId + "): ";
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            ContentIndexer indexer = null;
+            try {
+                ContentSearchIndex contentIndex = getContentSearchIndex(mountInfo);
+                if (contentIndex == null) return;
+                indexer = new ContentIndexer(index, contentIndex, new ContentIndexer.Source() {
+                    @Override
+                    public boolean isText(int node) {
+                        return isTextMimeType(getDocumentTypeImpl(index.getPath(node)));
+                    }
+
+                    @Override
+                    public InputStream open(int node) throws IOException {
+                        if (!ZipEntryReader.canOpen(index, node)) return null;
+                        RandomAccessInput input = openRandomAccessInput(mountInfo);
+                        try {
+                            return ZipEntryReader.open(input, index, node);
+                        } catch (IOException ioException) {
+                            closeSilently(input, dbgMsg + "open");
+                            throw ioException;
+                        }
+                    }
+                });
+                synchronized (contentIndexers) {
+                    // canceled while starting
+                    if (!contentIndexers.containsKey(zipId)) return;
+                    contentIndexers.put(zipId, indexer);
+                }
+                if (debug) log(dbgMsg + "start at " + contentIndex.getNextNode() + " of " + index.size());
+                indexer.run();
+                if (debug) log(dbgMsg + (indexer.isCanceled() ? "canceled at " : "done at ") + contentIndex.getNextNode()
+                        + (indexer.getError() == null ? "" : " " + indexer.getError().getMessage()));
+            } catch (IOException ioException) {
+                Log.e(TAG, dbgMsg + ioException.getMessage(), ioException);
+            } finally {
+                synchronized (contentIndexers) {
+                    if (contentIndexers.get(zipId) == indexer) contentIndexers.remove(zipId);
+                }
+            }
+        }, "ContentIndexer-" + zipId);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** stops the background indexer of zipId, if any */
+    static void cancelContentIndexer(@NonNull String zipId) {
+        ContentIndexer indexer;
+        synchronized (contentIndexers) {
+            indexer = contentIndexers.remove(zipId);
+        }
+        if (indexer != null) {
+            indexer.cancel();
+            try {
+                // the current entry must not be written after the index file was deleted
+                if (!indexer.awaitFinished(CANCEL_INDEXER_MILLIS)) {
+                    Log.w(TAG, "cancelContentIndexer(" + zipId + ") still running");
+                }
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /** @return the persisted content index of mountInfo. Loaded on first use. Null if the zip has no stamp. */
+    @Nullable
+    private ContentSearchIndex getContentSearchIndex(@NonNull MountInfo mountInfo) throws IOException {
+        ZipIndexRepository indexRepository = ZipIndexRepository.getInstance();
+        ContentSearchIndex contentIndex = indexRepository.getContentSearchIndex(mountInfo.zipId);
+        if (contentIndex == null) {
+            String stamp = Zip2SafHelper.getSourceStamp(getContext(), mountInfo);
+            if (stamp == null) return null;
+            contentIndex = ContentSearchIndex.open(Zip2SafHelper.getContentIndexFile(getContext(), mountInfo.zipId), stamp);
+            indexRepository.putContentSearchIndex(mountInfo.zipId, contentIndex);
+        }
+        return contentIndex;
+    }
+
+    private static boolean isTextMimeType(@Nullable String mime) {
+        return mime != null && (mime.startsWith("text/") || mime.endsWith("/xml") || mime.endsWith("+xml")
+                || mime.endsWith("/json") || mime.endsWith("/javascript"));
+    }
+
+    /** @return the name search index of index. Created on first search. */
+    @NonNull
+    private NameSearchIndex getNameSearchIndex(@NonNull MountInfo mountInfo, @NonNull ZipIndex index, String dbgContext) {
+        ZipIndexRepository indexRepository = ZipIndexRepository.getInstance();
+        NameSearchIndex nameIndex = indexRepository.getNameSearchIndex(mountInfo.zipId);
+        if (nameIndex == null) {
+            nameIndex = nameIndexFlights.execute(mountInfo.zipId, () -> {
+                NameSearchIndex created = NameSearchIndex.create(index);
+                if (debug) log(dbgContext + "-getNameSearchIndex(" + mountInfo.zipId + "): " + index.size() + " items");
+                indexRepository.putNameSearchIndex(mountInfo.zipId, created);
+                return created;
+            }, null);
+        }
+        return nameIndex;
+    }
+
+    /**
+     * Return recently modified documents under the requested root. This will only be called for
+     * roots that advertise Root.FLAG_SUPPORTS_RECENTS.
+     *
+     * Here: the entries that were opened most often and most recently. See {@link RecentDocuments}.
+     *
+     * @param rootId the root to return recents for.
+     * @param projection list of DocumentsContract.Document columns to put into the cursor. If null
+     *                   all supported columns should be included.
+     * @see Root#FLAG_SUPPORTS_RECENTS
+     */
+    @Override
+    public Cursor queryRecentDocuments(final String rootId, final String[] projection) {
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            String debugMsg = debug ? "queryRecentDocuments('" + rootId + "') " : "queryRecentDocuments ";
+            log(debugMsg);
+
+            if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "queryRecentDocuments")) {
+                return null;
+            }
+            final String[] columns = projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION;
+            MountInfo mountInfo = Zip2SafHelper.getMountInfo(rootId);
+            ZipIndex index = getZipIndex(mountInfo, debugMsg);
+            if (index == null) return new MatrixCursor(columns);
+
+            List<String> recent = Zip2SafHelper.getRecentDocuments(getContext(), mountInfo.zipId).getRecent(MAX_RECENT_RESULTS);
+            int[] nodes = new int[recent.size()];
+            int count = 0;
+            for (String zipPath : recent) {
+                int node = index.find(zipPath);
+                if (node != ZipIndex.NOT_FOUND && !index.isDirectory(node)) nodes[count++] = node;
+            }
+            if (debug) log(debugMsg + "==> " + count);
+            return IndexCursor.create(columns, mountInfo.zipId, index, Arrays.copyOf(nodes, count),
+                    ZipReadStorageProvider::getMimeTypeFromName);
+        } finally {
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_RECENT, start);
+            trace(ProviderMetrics.OP_RECENT, start, rootId, null, projection, null);
+        }
+    }
+
+    /** remember successful opens for {@link #queryRecentDocuments(String, String[])} */
+    private void addRecentDocument(final String documentId, String dbgMsg) {
+        String rootId = Zip2SafHelper.getRootId(documentId);
+        if (rootId == null) return;
+        try {
+            Zip2SafHelper.getRecentDocuments(getContext(), rootId)
+                    .add(Zip2SafHelper.getZipPath(documentId), System.currentTimeMillis());
+        } catch (IOException ioException) {
+            if (debug) log(dbgMsg + " not added to recent documents: " + ioException.getMessage());
+        }
+    }
+
     /**
      * Ejects the root. Throws {@link IllegalStateException} if ejection failed.
      *
@@ -286,43 +761,72 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     @Override
     public void ejectRoot(String rootId) {
-        log("ejectRoot " + rootId);
+        if (debug) log("ejectRoot " + rootId);
         MountInfo mountInfo = Zip2SafHelper.getMountInfo(rootId);
         if (mountInfo == null)
             throw new IllegalStateException("Eject: Root " + rootId + " not found");
 
-        MountInfoRepository repository = Zip2SafHelper.getRepository();
-        repository.remove(mountInfo);
-        Zip2SafHelper.clearThumbCache(getContext(), mountInfo.zipId);
-
-        getContext().getContentResolver()
-                .notifyChange(DocumentsContract.buildRootsUri(BuildConfig.DOCUMENTS_AUTHORITY), null);
-        AndroidMountInfoRepositoryHelper.saveRepository(getContext().getApplicationContext(), repository);
+        Zip2SafHelper.eject(getContext(), mountInfo);
     }
 
     private InputStream openZipEntryInputStream(final String documentId, String debugContext) {
-        String dbgMsg = debugContext + "-openZipEntryInputStream('" + documentId + "'): ";
+        String dbgMsg = debug ? debugContext + "-openZipEntryInputStream('" + documentId + "'): " : debugContext;
         LocalFileHeader localFileHeader;
         MountInfo mountInfo = Zip2SafHelper.getRepository().getById(Zip2SafHelper.getRootId(documentId));
+
+        InputStream direct = openZipEntryInputStreamDirect(mountInfo, documentId, dbgMsg);
+        if (direct != null) return direct;
+
+        // fallback: scan the zip until the entry is found
         ZipInputStream zipInputStream = null;
+        int scanned = 0;
         try {
             zipInputStream = getZipInputStream(documentId, mountInfo);
             String zipPath = Zip2SafHelper.getZipPath(documentId);
             while ((localFileHeader = zipInputStream.getNextEntry()) != null) {
+                scanned++;
                 if (zipPath.equals(localFileHeader.getFileName())) {
                     // found: close is done outside
+                    ProviderMetrics.getInstance().addEntriesScanned(scanned);
                     return zipInputStream;
                 }
             }
         } catch (IOException ioException) {
             Log.e(TAG, dbgMsg + ioException.getMessage(), ioException);
         }
+        ProviderMetrics.getInstance().addEntriesScanned(scanned);
         // not found: close zip file
         closeSilently(zipInputStream, dbgMsg +
                 "entry not found");
         return null;
     }
 
+    /**
+     * Jump directly to the zip entry of documentId using the position from the zip index
+     * so that time-to-first-byte does not depend on the position of the entry inside the zip.
+     *
+     * @return null if the zip is not seekable or if the entry cannot be read directly
+     * (i.e. encrypted or unknown compression).
+     */
+    @Nullable
+    private InputStream openZipEntryInputStreamDirect(@Nullable MountInfo mountInfo, final String documentId, String dbgMsg) {
+        ZipIndex index = getZipIndex(mountInfo, dbgMsg);
+        if (index == null) return null;
+        int node = index.find(Zip2SafHelper.getZipPath(documentId));
+        if (!ZipEntryReader.canOpen(index, node)) return null;
+
+        RandomAccessInput input = null;
+        try {
+            input = openRandomAccessInput(mountInfo);
+            // found: close is done outside
+            return ZipEntryReader.open(input, index, node);
+        } catch (IOException ioException) {
+            if (debug) log(dbgMsg + "no direct access: " + ioException.getMessage());
+            closeSilently(input, dbgMsg + "direct access");
+        }
+        return null;
+    }
+
     /**
      * Return metadata for the single requested document. You should avoid making network requests
      * to keep this request fast.
@@ -335,31 +839,63 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     @Override
     public Cursor queryDocument(final String documentId, final String[] projection) {
-        queryId++;
-        String debugMsg = "queryDocument('" + documentId + "') ";
-        log(debugMsg);
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            String debugMsg = debug ? "queryDocument('" + documentId + "') " : "queryDocument ";
+            log(debugMsg);
 
-        if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "queryDocument")) {
-            return null;
+            if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "queryDocument")) {
+                return null;
+            }
+            // Create a cursor with either the requested fields, or the default projection if "projection" is null.
+            final String[] columns = projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION;
+            MatrixCursor shared = cursorFlights.execute("queryDocument:" + documentId + ":" + Arrays.toString(columns),
+                    () -> createDocument(documentId, columns, debugMsg), null);
+            return copyOf(shared);
+        } finally {
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_DOCUMENT, start);
+            trace(ProviderMetrics.OP_DOCUMENT, start, documentId, null, projection, null);
         }
-        // Create a cursor with either the requested fields, or the default projection if "projection" is null.
-        final MatrixCursor result = new MatrixCursor(projection != null ? projection : DEFAULT_DOCUMENT_PROJECTION);
+    }
+
+    @NonNull
+    private MatrixCursor createDocument(final String documentId, final String[] columns, String debugMsg) {
+        final MatrixCursor result = new MatrixCursor(columns);
 
         LocalFileHeader localFileHeader;
         MountInfo mountInfo = Zip2SafHelper.getRepository().getById(Zip2SafHelper.getRootId(documentId));
+        String zipPath = Zip2SafHelper.getZipPath(documentId);
+
+        ZipIndex index = getZipIndex(mountInfo, debugMsg);
+        if (index != null) {
+            ZipArchive.Entry entry = findEntry(mountInfo, index, zipPath, debugMsg);
+            if (entry != null && entry.node == ZipIndex.ROOT) {
+                // special case: root dir or the root dir of a nested zip
+                String name = entry.archive.isNested() ? new File(zipPath).getName() + Zip2SafHelper.PATH_DELIMITER : "";
+                includeDir(result, mountInfo.zipId, name, zipPath);
+            } else if (entry != null) {
+                includeIndexNode(result, entry.archive.id, entry.archive.index, entry.node);
+            }
+            return result;
+        }
+
+        // fallback if there is no index: scan the whole zip
         ZipInputStream zipInputStream = null;
         try {
             zipInputStream = getZipInputStream(documentId, mountInfo);
-            String zipPath = Zip2SafHelper.getZipPath(documentId);
             if (zipPath.isEmpty()) {
                 // special case: root dir
                 includeDir(result, mountInfo.zipId, "", "");
             } else {
+                int scanned = 0;
                 while ((localFileHeader = zipInputStream.getNextEntry()) != null) {
+                    scanned++;
                     if (zipPath.equals(localFileHeader.getFileName())) {
                         includeLocalFileHeader(result, mountInfo.zipId, zipPath, localFileHeader, null);
                     }
                 }
+                ProviderMetrics.getInstance().addEntriesScanned(scanned);
             }
         } catch (IOException ioException) {
             Log.e(TAG, debugMsg + ioException.getMessage(), ioException);
@@ -388,52 +924,147 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     @Override
     public AssetFileDescriptor openDocumentThumbnail(final String documentId, final Point sizeHint,
                                                      final CancellationSignal signal) throws FileNotFoundException {
-        queryId++;
-        String dbgMsg = "openDocumentThumbnail('" + documentId + "'," + sizeHint + ") ";
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            String dbgMsg = debug
+                    ? "openDocumentThumbnail('" + documentId + "'," + sizeHint + ") "
+                    : "openDocumentThumbnail ";
 
-        if (ZipReadStorageProvider.isMissingReadPermission(getContext(), dbgMsg)) {
-            return null;
-        }
-        // Assume documentId points to an image file. Build a thumbnail no larger than twice the sizeHint
-        BitmapFactory.Options options = new BitmapFactory.Options();
-        options.inJustDecodeBounds = true;
+            if (ZipReadStorageProvider.isMissingReadPermission(getContext(), dbgMsg)) {
+                return null;
+            }
+            final int sizeBucket = ThumbnailCache.getSizeBucket(sizeHint.x, sizeHint.y);
+            final String key = getThumbnailKey(documentId, sizeBucket, dbgMsg);
 
-        InputStream inputStream = null;
+            File thumbnail;
+            try {
+                // concurrent requests for the same thumbnail share one decode
+                thumbnail = thumbnailFlights.execute(key,
+                        () -> getThumbnail(documentId, key, sizeHint, sizeBucket, dbgMsg),
+                        (signal == null) ? null : signal::isCanceled);
+            } catch (CancellationException canceled) {
+                throw new OperationCanceledException(dbgMsg + "canceled");
+            }
+            if (thumbnail == null) return null;
 
-        try {
-            inputStream = openZipEntryInputStream(documentId, dbgMsg + " reading original image size");
-            BitmapFactory.decodeStream(inputStream, null, options);
-            caculateScaleDown(sizeHint, options);
-        } catch (Exception e) {
-            Log.e(TAG, dbgMsg + "Error reading original image size ", e);
-            return null;
+            // every caller gets its own file descriptor
+            return new AssetFileDescriptor(ParcelFileDescriptor.open(thumbnail, ParcelFileDescriptor.MODE_READ_ONLY), 0,
+                    AssetFileDescriptor.UNKNOWN_LENGTH);
         } finally {
-            closeSilently(inputStream, dbgMsg + "  closing reading original image size");
-            inputStream = null;
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_THUMBNAIL, start);
+            trace(ProviderMetrics.OP_THUMBNAIL, start, documentId, null, null, (sizeHint == null) ? null : new int[]{sizeHint.x, sizeHint.y});
         }
+    }
 
+    /**
+     * @return thumbnail file from {@link ThumbnailCache} that is created if it is not in the cache yet
+     * or null if there is no thumbnail.
+     */
+    @Nullable
+    private File getThumbnail(final String documentId, @NonNull String key, @NonNull Point sizeHint,
+                              int sizeBucket, String dbgMsg) {
+        ThumbnailCache thumbnailCache = Zip2SafHelper.getThumbnailCache(getContext());
+        String rootId = Zip2SafHelper.getRootId(documentId);
+
+        File thumbnail = thumbnailCache.get(rootId, key);
+        countCache(ProviderMetrics.CACHE_THUMBNAIL, thumbnail != null);
+        if (thumbnail != null) {
+            if (debug) log(dbgMsg + "from cache " + thumbnail.getAbsolutePath());
+            return thumbnail;
+        }
+
+        // Assume documentId points to an image file. Build a thumbnail no larger than twice the size bucket.
+        // The entry is inflated only once: the image size is read from a rewindable buffer.
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+
+        InputStream inputStream = null;
         File tempFile = null;
         FileOutputStream out = null;
         try {
-            inputStream = openZipEntryInputStream(documentId, dbgMsg + " create thumbnail");
-            Bitmap bitmap = BitmapFactory.decodeStream(inputStream, null, options);
-            tempFile = createThumbFile(getContext(), Zip2SafHelper.getRootId(documentId));
-            out = new FileOutputStream(tempFile);
-            log(dbgMsg + "scale=" + (1.0 / options.inSampleSize) +
-                    ", file=" + tempFile.getAbsolutePath());
-
-            bitmap.compress(Bitmap.CompressFormat.PNG, 90, out);
-        } catch (IOException e) {
+            inputStream = new BufferedInputStream(openZipEntryInputStream(documentId, dbgMsg + " create thumbnail"));
+            inputStream.mark(THUMBNAIL_HEADER_MARK_LIMIT);
+            byte[] exifThumbnail = getExifThumbnail(inputStream, sizeHint, dbgMsg);
+            if (exifThumbnail != null) {
+                // camera jpg: the rest of the entry is not needed
+                tempFile = thumbnailCache.createTempFile(rootId);
+                out = new FileOutputStream(tempFile);
+                out.write(exifThumbnail);
+                out.close();
+                thumbnail = thumbnailCache.put(rootId, key, tempFile);
+                if (debug) log(dbgMsg + "exif thumbnail, file=" + thumbnail.getAbsolutePath());
+            } else {
+                inputStream.reset();
+                BitmapFactory.decodeStream(inputStream, null, options);
+                caculateScaleDown(new Point(sizeBucket, sizeBucket), options);
+                try {
+                    inputStream.reset();
+                } catch (IOException markInvalid) {
+                    // image header is bigger than the mark limit (i.e. huge exif): read the entry again
+                    if (debug) log(dbgMsg + "reopen: " + markInvalid.getMessage());
+                    closeSilently(inputStream, dbgMsg + "  closing reading original image size");
+                    inputStream = null;
+                    inputStream = openZipEntryInputStream(documentId, dbgMsg + " create thumbnail again");
+                }
+
+                Bitmap bitmap = BitmapFactory.decodeStream(inputStream, null, options);
+                if (bitmap == null) throw new IOException("Cannot decode image");
+                tempFile = thumbnailCache.createTempFile(rootId);
+                out = new FileOutputStream(tempFile);
+
+                bitmap.compress(Bitmap.CompressFormat.PNG, 90, out);
+                out.close();
+                thumbnail = thumbnailCache.put(rootId, key, tempFile);
+                if (debug) log(dbgMsg + "scale=" + (1.0 / options.inSampleSize) +
+                        ", file=" + thumbnail.getAbsolutePath());
+            }
+        } catch (Exception e) {
             Log.e(TAG, dbgMsg + "Error writing thumbnail " + (tempFile == null ? "" : tempFile.getAbsolutePath()), e);
+            if (tempFile != null) tempFile.delete();
             return null;
         } finally {
             closeSilently(inputStream, dbgMsg + "  closing thumbnail original");
             closeSilently(out, dbgMsg + " closing generated thumbnail");
         }
-        // It appears the Storage Framework UI caches these results quite aggressively so there is little reason to
-        // write your own caching layer beyond what you need to return a single AssetFileDescriptor
-        return new AssetFileDescriptor(ParcelFileDescriptor.open(tempFile, ParcelFileDescriptor.MODE_READ_ONLY), 0,
-                AssetFileDescriptor.UNKNOWN_LENGTH);
+        return thumbnail;
+    }
+
+    /**
+     * @return the jpg preview that cameras embed into the exif data if it is big enough for sizeHint or null.
+     * Reads at most {@link ExifThumbnailReader#MAX_HEADER_BYTES} from inputStream.
+     */
+    @Nullable
+    private static byte[] getExifThumbnail(@NonNull InputStream inputStream, @NonNull Point sizeHint, String dbgMsg) {
+        try {
+            byte[] thumbnail = ExifThumbnailReader.read(inputStream);
+            int[] size = (thumbnail == null) ? null : ExifThumbnailReader.getJpegSize(thumbnail);
+            // never more than 2 times smaller than requested
+            if (size != null && 2 * Math.max(size[0], size[1]) >= Math.max(sizeHint.x, sizeHint.y)) {
+                return thumbnail;
+            }
+        } catch (IOException | RuntimeException ex) {
+            // malformed exif: fall back to decoding the image
+            if (debug) log(dbgMsg + "no exif thumbnail: " + ex);
+        }
+        return null;
+    }
+
+    /**
+     * @return cache key of the thumbnail. Contains crc and size of the zip entry
+     * so that a changed entry gets a new thumbnail.
+     */
+    @NonNull
+    private String getThumbnailKey(@NonNull String documentId, int sizeBucket, String dbgMsg) {
+        long crc = 0;
+        long size = 0;
+        ZipIndex index = getZipIndex(Zip2SafHelper.getMountInfo(documentId), dbgMsg);
+        int node = (index == null) ? ZipIndex.NOT_FOUND : index.find(Zip2SafHelper.getZipPath(documentId));
+        if (node != ZipIndex.NOT_FOUND) {
+            crc = index.getCrc(node);
+            size = index.getSize(node);
+        }
+        return ThumbnailCache.getKey(documentId, crc, size, sizeBucket);
     }
 
     private void caculateScaleDown(Point sizeHint, BitmapFactory.Options options) {
@@ -456,8 +1087,11 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     }
 
     private void includeDir(final MatrixCursor result, @NonNull String zipId, String dirNameWithoutPath, String zipDirPath) {
-        String documentId = Zip2SafHelper.getDocumentId(zipId, zipDirPath);
-        log("## includeDir('" + documentId + "')");
+        includeDir(result, dirNameWithoutPath, Zip2SafHelper.getDocumentId(zipId, zipDirPath));
+    }
+
+    private void includeDir(final MatrixCursor result, String dirNameWithoutPath, String documentId) {
+        if (debug) log("## includeDir('" + documentId + "')");
 
         includeResult(result, dirNameWithoutPath, documentId, MIME_TYPE_DIR, null, null, 0);
     }
@@ -467,7 +1101,41 @@ public class ZipReadStorageProvider extends DocumentsProvider {
         return uncompressedSize;
     }
 
+    private void includeIndexNode(final MatrixCursor result, @NonNull String zipId, @NonNull ZipIndex index, int node) {
+        int parent = index.getParent(node);
+        includeIndexChild(result, Zip2SafHelper.getDocumentId(zipId, (parent == ZipIndex.ROOT) ? "" : index.getPath(parent)),
+                index, node);
+    }
+
+    /**
+     * @param parentDocumentId document id of the parent of node ending with "/". Shared by all children of a listing
+     *                         so that only one string per row is created for the document id.
+     */
+    private void includeIndexChild(final MatrixCursor result, @NonNull String parentDocumentId,
+                                   @NonNull ZipIndex index, int node) {
+        String name = index.getName(node);
+        if (index.isDirectory(node) || ZipArchive.isNestedArchive(index, node)) {
+            // zip inside the zip is browsed like a dir
+            String dirName = name + Zip2SafHelper.PATH_DELIMITER;
+            includeDir(result, dirName, parentDocumentId + dirName);
+        } else {
+            includeFile(result, parentDocumentId + name, name, index.getLastModified(node), index.getSize(node));
+        }
+    }
+
     private void includeFile(final MatrixCursor result, @NonNull String zipId, final LocalFileHeader file, String filenameWithoutPath) {
+        includeFile(result, zipId, file.getFileName(), filenameWithoutPath,
+                file.getLastModifiedTimeEpoch(), file.getUncompressedSize());
+    }
+
+    private void includeFile(final MatrixCursor result, @NonNull String zipId, String zipPath, String filenameWithoutPath,
+                             long lastModifiedTimeEpoch, long uncompressedSize) {
+        includeFile(result, Zip2SafHelper.getDocumentId(zipId, zipPath), filenameWithoutPath,
+                lastModifiedTimeEpoch, uncompressedSize);
+    }
+
+    private void includeFile(final MatrixCursor result, String documentId, String filenameWithoutPath,
+                             long lastModifiedTimeEpoch, long uncompressedSize) {
         String mimeType = getDocumentType(filenameWithoutPath);
         /*
         @SuppressLint("InlinedApi")
@@ -484,19 +1152,18 @@ public class ZipReadStorageProvider extends DocumentsProvider {
 
         // zipfile entry may or may not contain a value for LastModified or UncompressedSize
         Long lastModifiedTimeInMilliSince1970OrNull = Zip2SafHelper.getTimeInMilliSince1970OrNull(
-                file.getLastModifiedTimeEpoch());
-
-        String documentId = Zip2SafHelper.getDocumentId(
-                zipId, file.getFileName());
+                lastModifiedTimeEpoch);
 
-        log("## includeFile('" + documentId + "', " +
-                (lastModifiedTimeInMilliSince1970OrNull == null
-                        ? "" : ("" + new Date(lastModifiedTimeInMilliSince1970OrNull)))
-                + ", mime = " + mimeType
-                + ", len = " + file.getUncompressedSize() + ")");
+        if (debug) {
+            log("## includeFile('" + documentId + "', " +
+                    (lastModifiedTimeInMilliSince1970OrNull == null
+                            ? "" : ("" + new Date(lastModifiedTimeInMilliSince1970OrNull)))
+                    + ", mime = " + mimeType
+                    + ", len = " + uncompressedSize + ")");
+        }
 
         includeResult(result, filenameWithoutPath, documentId, mimeType, lastModifiedTimeInMilliSince1970OrNull,
-                orNull(file.getUncompressedSize()), flags);
+                orNull(uncompressedSize), flags);
     }
 
     void includeResult(MatrixCursor result, String filenameWithoutPath, String documentId,
@@ -529,7 +1196,7 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     @Override
     public String getDocumentType(final String documentId) {
         String mime = getDocumentTypeImpl(documentId);
-        log("getDocumentType('" + documentId + "') => " + mime);
+        if (debug) log("getDocumentType('" + documentId + "') => " + mime);
         return mime;
     }
 
@@ -537,10 +1204,15 @@ public class ZipReadStorageProvider extends DocumentsProvider {
         if (ZipReadStorageProvider.isMissingReadPermission(getContext(), "getDocumentType")) {
             return null;
         }
+        return getMimeTypeFromName(documentId);
+    }
+
+    @NonNull
+    static String getMimeTypeFromName(@NonNull String fileName) {
         // From FileProvider.getType(Uri)
-        final int lastDot = documentId.lastIndexOf('.');
+        final int lastDot = fileName.lastIndexOf('.');
         if (lastDot >= 0) {
-            final String extension = documentId.substring(lastDot + 1);
+            final String extension = fileName.substring(lastDot + 1);
             final String mime = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension);
             if (mime != null) {
                 return mime;
@@ -556,7 +1228,7 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     @Override
     public void deleteDocument(final String documentId) {
-        log("not implemented deleteDocument('" + documentId + "')");
+        if (debug) log("not implemented deleteDocument('" + documentId + "')");
 
         return;
     }
@@ -574,7 +1246,7 @@ public class ZipReadStorageProvider extends DocumentsProvider {
      */
     @Override
     public String renameDocument(final String documentId, final String displayName) throws FileNotFoundException {
-        log("not implemented renameDocument('" + documentId + "')");
+        if (debug) log("not implemented renameDocument('" + documentId + "')");
         return null;
     }
 
@@ -600,16 +1272,195 @@ public class ZipReadStorageProvider extends DocumentsProvider {
     @Override
     public ParcelFileDescriptor openDocument(final String documentId, final String mode,
                                              final CancellationSignal signal) throws FileNotFoundException {
-        queryId++;
-        String dbgMsg = "openDocument('" + documentId + "')";
-        log(dbgMsg);
+        queryId.incrementAndGet();
+        final long start = System.nanoTime();
+        try {
+            String dbgMsg = debug ? "openDocument('" + documentId + "')" : "openDocument";
+            log(dbgMsg);
 
-        if (ZipReadStorageProvider.isMissingReadPermission(getContext(), dbgMsg)) {
-            return null;
+            if (ZipReadStorageProvider.isMissingReadPermission(getContext(), dbgMsg)) {
+                return null;
+            }
+
+            ParcelFileDescriptor result = openDocumentDescriptor(documentId, signal, dbgMsg);
+            if (result != null) addRecentDocument(documentId, dbgMsg);
+            return result;
+        } finally {
+            ProviderMetrics.getInstance().record(ProviderMetrics.OP_OPEN, start);
+            trace(ProviderMetrics.OP_OPEN, start, documentId, mode, null, null);
+        }
+    }
+
+    @Nullable
+    private ParcelFileDescriptor openDocumentDescriptor(final String documentId, final CancellationSignal signal,
+                                                        String dbgMsg) throws FileNotFoundException {
+        // small compressed entries that were opened before need neither the zip nor the inflater
+        String rootId = Zip2SafHelper.getRootId(documentId);
+        EntryContentCache contentCache = Zip2SafHelper.getEntryContentCache(getContext());
+        ZipIndex index = getZipIndex(Zip2SafHelper.getMountInfo(documentId), dbgMsg);
+        int node = (index == null) ? ZipIndex.NOT_FOUND : index.find(Zip2SafHelper.getZipPath(documentId));
+        if (index != null && node == ZipIndex.NOT_FOUND) {
+            ZipArchive.Entry entry = findEntry(Zip2SafHelper.getMountInfo(documentId), index,
+                    Zip2SafHelper.getZipPath(documentId), dbgMsg);
+            if (entry != null && entry.archive.isNested()) return openNestedDescriptor(entry, signal, dbgMsg);
+        }
+        String contentKey = null;
+        if (node != ZipIndex.NOT_FOUND && index.getMethod(node) != ZipEntryInfo.METHOD_STORED
+                && contentCache.isCacheable(index.getSize(node))) {
+            contentKey = EntryContentCache.getKey(documentId, index.getCrc(node), index.getSize(node));
+            ParcelFileDescriptor cached = openCachedDescriptor(contentCache, rootId, contentKey, signal, dbgMsg);
+            if (cached != null) return cached;
+        }
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ParcelFileDescriptor seekable = openSeekableDescriptor(documentId, dbgMsg);
+            if (seekable != null) return seekable;
         }
 
         InputStream is = openZipEntryInputStream(documentId, dbgMsg);
-        return createPipeDescriptor(is, dbgMsg);
+        if (is == null) throw new FileNotFoundException(dbgMsg);
+        if (contentKey != null) {
+            try {
+                is = contentCache.wrap(rootId, contentKey, index.getSize(node), is);
+            } catch (IOException ioException) {
+                if (debug) log(dbgMsg + " not cached: " + ioException.getMessage());
+            }
+        }
+        return createPipeDescriptor(is, signal, dbgMsg);
+    }
+
+    /**
+     * Entries of nested zips: STORED ones seekable (Android-8 ff), else through the pipe.
+     */
+    @NonNull
+    private ParcelFileDescriptor openNestedDescriptor(@NonNull ZipArchive.Entry entry, @Nullable CancellationSignal signal,
+                                                      String dbgMsg) throws FileNotFoundException {
+        ZipIndex index = entry.archive.index;
+        if (!ZipEntryReader.canOpen(index, entry.node)) throw new FileNotFoundException(dbgMsg);
+
+        RandomAccessInput input = null;
+        try {
+            input = entry.archive.openInput();
+            ParcelFileDescriptor result;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    && index.getMethod(entry.node) == ZipEntryInfo.METHOD_STORED) {
+                if (debug) log(dbgMsg + " seekable in nested zip " + entry.archive.id);
+                result = RandomAccessProxyCallback.open(getContext(),
+                        ZipEntryReader.openStored(input, index, entry.node), dbgMsg);
+            } else {
+                result = createPipeDescriptor(ZipEntryReader.open(input, index, entry.node), signal, dbgMsg);
+            }
+            if (result == null) throw new FileNotFoundException(dbgMsg);
+            return result;
+        } catch (IOException ioException) {
+            closeSilently(input, dbgMsg + " nested");
+            if (ioException instanceof FileNotFoundException) throw (FileNotFoundException) ioException;
+            throw new FileNotFoundException(dbgMsg + " " + ioException.getMessage());
+        }
+    }
+
+    /**
+     * Memory hits are served through the pipe, disk hits as seekable file.
+     *
+     * @return null if contentKey is not in the {@link EntryContentCache}
+     */
+    @Nullable
+    private ParcelFileDescriptor openCachedDescriptor(@NonNull EntryContentCache contentCache, @NonNull String rootId,
+                                                      @NonNull String contentKey, @Nullable CancellationSignal signal,
+                                                      String dbgMsg) throws FileNotFoundException {
+        ProviderMetrics metrics = ProviderMetrics.getInstance();
+        byte[] bytes = contentCache.getBytes(contentKey);
+        if (bytes != null) {
+            if (debug) log(dbgMsg + " from memory cache");
+            metrics.cacheHit(ProviderMetrics.CACHE_CONTENT);
+            return createPipeDescriptor(new ByteArrayInputStream(bytes), signal, dbgMsg);
+        }
+        File file = contentCache.getFile(rootId, contentKey);
+        if (file != null) {
+            if (debug) log(dbgMsg + " from disk cache " + file.getAbsolutePath());
+            metrics.cacheHit(ProviderMetrics.CACHE_CONTENT);
+            // served by the kernel: this is all we learn about the bytes
+            metrics.addBytesServed(file.length());
+            return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        }
+        metrics.cacheMiss(ProviderMetrics.CACHE_CONTENT);
+        return null;
+    }
+
+    /**
+     * Uncompressed (STORED) zip entries are served without copy as seekable file descriptor
+     * so that clients can lseek (i.e. scrub videos).
+     *
+     * Large DEFLATED entries are seekable, too: seeks continue inflating at the nearest
+     * checkpoint of {@link InflateCheckpointCache}. Small DEFLATED entries use the faster native
+     * inflater of the pipe.
+     *
+     * @return null if the entry cannot be served seekable or if the zip does not support positioned reads.
+     */
+    @Nullable
+    @RequiresApi(Build.VERSION_CODES.O)
+    private ParcelFileDescriptor openSeekableDescriptor(final String documentId, String dbgMsg) {
+        MountInfo mountInfo = Zip2SafHelper.getMountInfo(documentId);
+        ZipIndex index = getZipIndex(mountInfo, dbgMsg);
+        if (index == null) return null;
+        int node = index.find(Zip2SafHelper.getZipPath(documentId));
+        if (!ZipEntryReader.canOpen(index, node)) return null;
+        boolean stored = index.getMethod(node) == ZipEntryInfo.METHOD_STORED;
+        if (!stored && index.getSize(node) < InflateCheckpoints.MIN_SPACING) return null;
+
+        RandomAccessInput input = null;
+        try {
+            input = openRandomAccessInput(mountInfo);
+            RandomAccessInput content;
+            if (stored) {
+                content = ZipEntryReader.openStored(input, index, node);
+            } else {
+                String key = documentId + ":" + index.getCrc(node) + ":" + index.getLocalHeaderOffset(node);
+                content = ZipEntryReader.openDeflated(input, index, node,
+                        InflateCheckpointCache.getInstance().get(key, index.getSize(node)));
+            }
+            ParcelFileDescriptor result = RandomAccessProxyCallback.open(getContext(), content, dbgMsg);
+            if (debug) log(dbgMsg + " seekable");
+            return result;
+        } catch (IOException ioException) {
+            if (debug) log(dbgMsg + " not seekable: " + ioException.getMessage());
+            closeSilently(input, dbgMsg + " seekable");
+        }
+        return null;
+    }
+
+    /**
+     * Every caller gets its own cursor because a cursor has a position and is closed by the caller.
+     */
+    @NonNull
+    private static MatrixCursor copyOf(@NonNull MatrixCursor shared) {
+        synchronized (shared) {
+            String[] columns = shared.getColumnNames();
+            MatrixCursor result = new MatrixCursor(columns, shared.getCount());
+            Object[] row = new Object[columns.length];
+            for (int position = 0; shared.moveToPosition(position); position++) {
+                for (int column = 0; column < columns.length; column++) {
+                    switch (shared.getType(column)) {
+                        case Cursor.FIELD_TYPE_INTEGER:
+                            row[column] = shared.getLong(column);
+                            break;
+                        case Cursor.FIELD_TYPE_FLOAT:
+                            row[column] = shared.getDouble(column);
+                            break;
+                        case Cursor.FIELD_TYPE_BLOB:
+                            row[column] = shared.getBlob(column);
+                            break;
+                        case Cursor.FIELD_TYPE_STRING:
+                            row[column] = shared.getString(column);
+                            break;
+                        default:
+                            row[column] = null;
+                    }
+                }
+                result.addRow(row);
+            }
+            return result;
+        }
     }
 
     /**
@@ -639,53 +1490,39 @@ public class ZipReadStorageProvider extends DocumentsProvider {
 
     // https://stackoverflow.com/questions/18212152/transfer-inputstream-to-another-service-across-process-boundaries-with-parcelf
     @Nullable
-    protected ParcelFileDescriptor createPipeDescriptor(InputStream is, String dbgContext) {
+    protected ParcelFileDescriptor createPipeDescriptor(InputStream is, @Nullable CancellationSignal signal,
+                                                        final String dbgContext) {
         OutputStream os = null;
+        ParcelFileDescriptor[] pfd = null;
         try {
-            ParcelFileDescriptor[] pfd = ParcelFileDescriptor.createPipe();//  inputStreamService.inputStream();
+            pfd = ParcelFileDescriptor.createPipe();//  inputStreamService.inputStream();
             os = new ParcelFileDescriptor.AutoCloseOutputStream(pfd[1]); // write side of pipe
 
-            new TransferThread(is, os, dbgContext).start();
+            final ProviderMetrics metrics = ProviderMetrics.getInstance();
+            metrics.transferStarted();
+            final TransferExecutor.Transfer transfer;
+            try {
+                transfer = TransferExecutor.getInstance().submit(is, os,
+                        (finished, bytes, error) -> {
+                            metrics.transferFinished();
+                            metrics.addBytesServed(bytes);
+                            if (error != null) Log.e(TAG, dbgContext, error);
+                        });
+            } catch (IOException tooManyTransfers) {
+                metrics.transferFinished();
+                throw tooManyTransfers;
+            }
+            if (signal != null) signal.setOnCancelListener(transfer::cancel);
             return pfd[0]; // read side of pipe
         } catch (IOException e) {
             Log.e(TAG, dbgContext + " createPipeDescriptor", e);
             closeSilently(is, dbgContext + " inputStream");
             closeSilently(os, dbgContext + " outputStream");
+            if (pfd != null) closeSilently(pfd[0], dbgContext + " pipe");
         }
         return null;
     }
 
-    static class TransferThread extends Thread {
-        protected final InputStream in;
-        protected final OutputStream out;
-        private final String dbgContext;
-
-        TransferThread(InputStream in, OutputStream out, String dbgContext) {
-            super("TransferThread " + dbgContext);
-            this.in = in;
-            this.out = out;
-            this.dbgContext = dbgContext;
-            setDaemon(true);
-        }
-
-        @Override
-        public void run() {
-            int len;
-            byte[] buf = new byte[1024];
-            try {
-                while ((len = in.read(buf)) > 0) {
-                    out.write(buf, 0, len);
-                }
-            } catch (IOException ioException) {
-                Log.e(TAG, dbgContext, ioException);
-
-            } finally {
-                closeSilently(in, dbgContext + " inputStream");
-                closeSilently(out, dbgContext + " outputStream");
-            }
-        }
-    }
-
     /**
      * Implement this to initialize your content provider on startup. This method is called for
      * all registered content providers on the application main thread at application launch time.
@@ -705,6 +1542,262 @@ public class ZipReadStorageProvider extends DocumentsProvider {
         return true;
     }
 
+    /**
+     * "adb shell dumpsys activity provider de.k3b.android.zip2saf/.ZipReadStorageProvider" shows the {@link ProviderMetrics}.
+     * With argument "reset" the metrics start again from zero.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        ProviderMetrics metrics = ProviderMetrics.getInstance();
+        metrics.dump(writer);
+        List<String> arguments = (args != null) ? Arrays.asList(args) : Collections.<String>emptyList();
+        if (arguments.contains("reset")) {
+            metrics.reset();
+            writer.println("reset");
+        }
+        if (arguments.contains("trace-on")) startTrace(Zip2SafHelper.getTraceFile(getContext()));
+        if (arguments.contains("trace-off")) stopTrace();
+
+        TraceWriter trace = traceWriter;
+        if (trace != null) {
+            writer.println("trace " + (trace.isRecording() ? "recording " : "full ") + trace.getCount()
+                    + " calls to " + trace.getFile());
+        }
+    }
+
+    /** records all following provider calls into traceFile. See {@link TraceWriter} */
+    public static synchronized void startTrace(@NonNull File traceFile) {
+        stopTrace();
+        try {
+            traceWriter = new TraceWriter(traceFile, MAX_TRACE_BYTES);
+        } catch (IOException ex) {
+            Log.w(TAG, "cannot record trace to " + traceFile, ex);
+        }
+    }
+
+    public static synchronized void stopTrace() {
+        TraceWriter trace = traceWriter;
+        traceWriter = null;
+        if (trace != null) closeSilently(trace, "stopTrace");
+    }
+
+    private static void trace(int operation, long startNanos, String documentId, String argument,
+                              String[] projection, int[] sizeHint) {
+        TraceWriter trace = traceWriter;
+        if (trace != null) trace.add(operation, startNanos, documentId, argument, projection, sizeHint);
+    }
+
+    /**
+     * @return the index of the zip of mountInfo. Memory mapped from the persisted index file if it
+     * still matches the zip file. Else created from the zip central directory
+     * or, if the zip uri is not seekable, from scanning all local file headers once.
+     */
+    @Nullable
+    ZipIndex getZipIndex(@Nullable MountInfo mountInfo, String dbgContext) {
+        if (mountInfo == null) return null;
+        ZipIndex index = getCachedZipIndex(mountInfo);
+        countCache(ProviderMetrics.CACHE_INDEX, index != null);
+        if (index == null) {
+            ZipIndexProgress progress = startZipIndexLoad(mountInfo, dbgContext);
+            progress.await(Long.MAX_VALUE);
+            index = progress.getResult();
+        }
+        return index;
+    }
+
+    /**
+     * Loads or creates the index of mountInfo in a background thread unless this is already running.
+     *
+     * @return progress of the load that can be used to wait for the result or to show the entries found so far
+     */
+    @NonNull
+    private ZipIndexProgress startZipIndexLoad(@NonNull final MountInfo mountInfo, final String dbgContext) {
+        final String zipId = mountInfo.zipId;
+        synchronized (indexLoads) {
+            ZipIndexProgress running = indexLoads.get(zipId);
+            if (running != null) return running;
+
+            final ZipIndexProgress progress = new ZipIndexProgress(this::notifyIndexProgress, PROGRESS_NOTIFY_MILLIS);
+            indexLoads.put(zipId, progress);
+            Thread thread = new Thread(() -> {
+                ZipIndex index = null;
+                try {
+                    index = loadOrCreateZipIndex(mountInfo, progress, dbgContext);
+                } catch (RuntimeException ex) {
+                    Log.e(TAG, dbgContext + "-startZipIndexLoad(" + zipId + ") " + ex.getMessage(), ex);
+                } finally {
+                    // from now on the index is in the ZipIndexRepository
+                    synchronized (indexLoads) {
+                        indexLoads.remove(zipId);
+                    }
+                    progress.finish(index);
+                }
+            }, "ZipIndex-" + zipId);
+            thread.setDaemon(true);
+            thread.start();
+            return progress;
+        }
+    }
+
+    /** @return the index in memory or null if there is none or if the zip has changed meanwhile */
+    @Nullable
+    private ZipIndex getCachedZipIndex(@NonNull MountInfo mountInfo) {
+        ZipIndexRepository indexRepository = ZipIndexRepository.getInstance();
+        boolean cached = indexRepository.get(mountInfo.zipId) != null;
+        ZipIndex index = indexRepository.get(mountInfo.zipId,
+                () -> Zip2SafHelper.getSourceStamp(getContext(), mountInfo));
+        if (cached && index == null) {
+            if (debug) log("getCachedZipIndex(" + mountInfo.zipId + "): zip has changed");
+            invalidateZipCaches(mountInfo);
+        }
+        return index;
+    }
+
+    /** to be called when the zip of mountInfo has changed */
+    private void invalidateZipCaches(@NonNull MountInfo mountInfo) {
+        // it would read the changed zip at the offsets of the outdated index
+        cancelContentIndexer(mountInfo.zipId);
+        Zip2SafHelper.clearThumbCache(getContext(), mountInfo.zipId);
+        Zip2SafHelper.getEntryContentCache(getContext()).invalidate(mountInfo.zipId);
+        Zip2SafHelper.getNestedArchiveCache(getContext()).invalidate(mountInfo.zipId);
+        InflateCheckpointCache.getInstance().remove(mountInfo.zipId);
+    }
+
+    @Nullable
+    private ZipIndex loadOrCreateZipIndex(@NonNull MountInfo mountInfo, @NonNull ZipIndexProgress progress,
+                                          String dbgContext) {
+        ZipIndexRepository indexRepository = ZipIndexRepository.getInstance();
+        ZipIndex index = indexRepository.get(mountInfo.zipId);
+        if (index == null) {
+            String stamp = Zip2SafHelper.getSourceStamp(getContext(), mountInfo);
+            index = loadZipIndex(mountInfo, stamp, dbgContext);
+            if (index == null) {
+                if (mountInfo.indexStamp != null && !mountInfo.indexStamp.equals(stamp)) {
+                    // zip has changed since the last index was created
+                    invalidateZipCaches(mountInfo);
+                }
+                index = createZipIndex(mountInfo, progress, dbgContext);
+                if (index != null && stamp != null) {
+                    index = saveZipIndex(mountInfo, index, stamp, dbgContext);
+                }
+            }
+            if (index != null) indexRepository.put(mountInfo.zipId, index, stamp);
+        }
+        return index;
+    }
+
+    /**
+     * @param zipPath inside the zip of mountInfo. May go through nested zips.
+     * @return entry of zipPath or null if not found
+     */
+    @Nullable
+    private ZipArchive.Entry findEntry(@NonNull MountInfo mountInfo, @NonNull ZipIndex index, String zipPath, String dbgContext) {
+        ZipArchive archive = new ZipArchive(mountInfo.zipId, index, () -> openRandomAccessInput(mountInfo));
+        try {
+            return archive.find(zipPath, Zip2SafHelper.getNestedArchiveCache(getContext()), mountInfo.zipId);
+        } catch (IOException ioException) {
+            Log.w(TAG, dbgContext + "-findEntry(" + zipPath + ") " + ioException.getMessage(), ioException);
+        }
+        return null;
+    }
+
+    /**
+     * @return the persisted index of mountInfo or null if there is none or if the zip file has changed
+     */
+    @Nullable
+    private ZipIndex loadZipIndex(@NonNull MountInfo mountInfo, @Nullable String stamp, String dbgContext) {
+        if (stamp == null || mountInfo.indexFile == null || !stamp.equals(mountInfo.indexStamp)) return null;
+
+        String dbgMsg = dbgContext + "-loadZipIndex(" + mountInfo.indexFile + "): ";
+        try {
+            MappedZipIndex index = ZipIndexFile.open(new File(mountInfo.indexFile));
+            if (stamp.equals(index.getSourceStamp())) {
+                if (debug) log(dbgMsg + index.size() + " items");
+                return index;
+            }
+            if (debug) log(dbgMsg + "outdated");
+        } catch (IOException ioException) {
+            if (debug) log(dbgMsg + ioException.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Persist index so that it survives process death and remember the index file in the mountInfo.
+     *
+     * @return index memory mapped from the new index file or the original index if it cannot be persisted
+     */
+    @NonNull
+    private ZipIndex saveZipIndex(@NonNull MountInfo mountInfo, @NonNull ZipIndex index,
+                                  @NonNull String stamp, String dbgContext) {
+        File file = Zip2SafHelper.getIndexFile(getContext(), mountInfo.zipId);
+        try {
+            ZipIndexFile.write(index, stamp, file);
+            ZipIndex mapped = ZipIndexFile.open(file);
+
+            MountInfo updated = mountInfo.withIndex(file.getAbsolutePath(), stamp);
+            if (Zip2SafHelper.getRepository().update(updated)) {
+                AndroidMountInfoRepositoryHelper.saveMount(getContext().getApplicationContext(), updated);
+            }
+            return mapped;
+        } catch (IOException ioException) {
+            Log.w(TAG, dbgContext + "-saveZipIndex(" + file + ") " + ioException.getMessage(), ioException);
+            file.delete();
+        }
+        return index;
+    }
+
+    /**
+     * @param progress receives every entry as soon as it is found so that listings
+     *                 can show them before the whole zip has been scanned.
+     */
+    @Nullable
+    private ZipIndex createZipIndex(@NonNull MountInfo mountInfo, @NonNull ZipIndexProgress progress, String dbgContext) {
+        String dbgMsg = dbgContext + "-createZipIndex(" + mountInfo + "): ";
+        List<ZipEntryInfo> centralDirectory = null;
+        try (RandomAccessInput input = openRandomAccessInput(mountInfo)) {
+            centralDirectory = ZipCentralDirectoryReader.read(input);
+        } catch (IOException ioException) {
+            if (debug) log(dbgMsg + "no central directory: " + ioException.getMessage());
+        }
+        if (centralDirectory != null) {
+            for (ZipEntryInfo entry : centralDirectory) {
+                progress.add(entry);
+            }
+            ZipIndex index = progress.build();
+            if (debug) log(dbgMsg + index.size() + " items from central directory");
+            return index;
+        }
+
+        LocalFileHeader localFileHeader;
+        try (ZipInputStream zipInputStream = getZipInputStream(mountInfo.zipId, mountInfo)) {
+            while ((localFileHeader = zipInputStream.getNextEntry()) != null) {
+                progress.add(Zip2SafHelper.toZipEntryInfo(localFileHeader));
+            }
+            ZipIndex index = progress.build();
+            ProviderMetrics.getInstance().addEntriesScanned(index.size());
+            if (debug) log(dbgMsg + index.size() + " items from local file headers");
+            return index;
+        } catch (IOException ioException) {
+            Log.e(TAG, dbgMsg + ioException.getMessage(), ioException);
+        }
+        return null;
+    }
+
+    /**
+     * @throws IOException if the zip uri cannot be opened as file descriptor
+     */
+    @NonNull
+    private RandomAccessInput openRandomAccessInput(@NonNull MountInfo mountInfo) throws IOException {
+        ParcelFileDescriptor pfd = getContext().getContentResolver()
+                .openFileDescriptor(Uri.parse(mountInfo.uri), "r");
+        if (pfd == null) throw new FileNotFoundException(mountInfo.uri);
+
+        // closing the stream also closes pfd
+        FileInputStream stream = new ParcelFileDescriptor.AutoCloseInputStream(pfd);
+        return new MeteredInput(new FileChannelInput(stream.getChannel(), stream), ProviderMetrics.getInstance());
+    }
+
     @NonNull
     private ZipInputStream getZipInputStream(String documentId, MountInfo mountInfo) throws FileNotFoundException {
         if (mountInfo != null) {
@@ -0,0 +1,235 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Uncompressed content of recently opened zip entries (android independent) so that
+ * opening the same entry again needs neither the zip nor the inflater.
+ *
+ * Small entries are kept in memory, medium entries in a {@link FileLruCache} on disk.
+ * Both tiers have their own byte budget and least recently used eviction.
+ * The cache is filled by {@link #wrap(String, String, long, InputStream)} while the entry is read anyway.
+ */
+public class EntryContentCache {
+    private static final String EXTENSION = ".entry";
+
+    private final long memoryMaxBytes;
+    private final int memoryMaxEntrySize;
+    private final long diskMaxEntrySize;
+
+    /** key to content in access order */
+    private final LinkedHashMap<String, byte[]> KEY2BYTES = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes = 0;
+
+    @NotNull private final FileLruCache disk;
+
+    /**
+     * @param memoryMaxEntrySize entries up to this size are cached in memory
+     * @param diskMaxEntrySize   entries up to this size are cached on disk
+     */
+    public EntryContentCache(long memoryMaxBytes, int memoryMaxEntrySize,
+                             @NotNull File diskRoot, long diskMaxBytes, long diskMaxEntrySize) {
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.memoryMaxEntrySize = memoryMaxEntrySize;
+        this.diskMaxEntrySize = diskMaxEntrySize;
+        this.disk = new FileLruCache(diskRoot, diskMaxBytes, EXTENSION);
+    }
+
+    /**
+     * @param documentId zipId + "/" + zipPath
+     * @param crc        of the zip entry. A changed entry gets a new key.
+     * @param size       uncompressed size of the zip entry
+     */
+    @NotNull public static String getKey(@NotNull String documentId, long crc, long size) {
+        return documentId + ":" + crc + ":" + size;
+    }
+
+    public boolean isCacheable(long size) {
+        return size > 0 && size <= diskMaxEntrySize;
+    }
+
+    /** @return content of key from the memory tier or null */
+    @Nullable public synchronized byte[] getBytes(@NotNull String key) {
+        return KEY2BYTES.get(key);
+    }
+
+    /** @return content of key from the disk tier or null */
+    @Nullable public File getFile(@NotNull String mountId, @NotNull String key) {
+        return disk.get(mountId, key);
+    }
+
+    /**
+     * @param content uncompressed content of the entry of key
+     * @return content that is added to the cache if it is read completely
+     */
+    @NotNull public InputStream wrap(@NotNull String mountId, @NotNull String key, long size,
+                                     @NotNull InputStream content) throws IOException {
+        if (!isCacheable(size)) return content;
+        if (size <= memoryMaxEntrySize) {
+            return new CachingInputStream(content, size, mountId, key, new ByteArrayOutputStream((int) size), null);
+        }
+        File tempFile = disk.createTempFile(mountId);
+        return new CachingInputStream(content, size, mountId, key, new FileOutputStream(tempFile), tempFile);
+    }
+
+    /** to be called when the zip is unmounted or has changed */
+    public void invalidate(@NotNull String mountId) {
+        synchronized (this) {
+            String prefix = mountId + "/";
+            Iterator<Map.Entry<String, byte[]>> entries = KEY2BYTES.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, byte[]> entry = entries.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    memoryBytes -= entry.getValue().length;
+                    entries.remove();
+                }
+            }
+        }
+        disk.invalidate(mountId);
+    }
+
+    public synchronized long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public long getDiskBytes() {
+        return disk.getTotalBytes();
+    }
+
+    private synchronized void putBytes(@NotNull String key, @NotNull byte[] content) {
+        byte[] old = KEY2BYTES.put(key, content);
+        if (old != null) memoryBytes -= old.length;
+        memoryBytes += content.length;
+
+        Iterator<Map.Entry<String, byte[]>> eldestFirst = KEY2BYTES.entrySet().iterator();
+        while (memoryBytes > memoryMaxBytes && eldestFirst.hasNext()) {
+            Map.Entry<String, byte[]> entry = eldestFirst.next();
+            if (!entry.getKey().equals(key)) {
+                memoryBytes -= entry.getValue().length;
+                eldestFirst.remove();
+            }
+        }
+    }
+
+    /** copies everything that is read into sink. Committed to the cache on close if complete */
+    private class CachingInputStream extends FilterInputStream {
+        private final long size;
+        @NotNull private final String mountId;
+        @NotNull private final String key;
+        @NotNull private final OutputStream sink;
+        @Nullable private final File tempFile;
+        private long count = 0;
+        private boolean complete = false;
+        private boolean broken = false;
+        private boolean closed = false;
+
+        CachingInputStream(@NotNull InputStream in, long size, @NotNull String mountId, @NotNull String key,
+                           @NotNull OutputStream sink, @Nullable File tempFile) {
+            super(in);
+            this.size = size;
+            this.mountId = mountId;
+            this.key = key;
+            this.sink = sink;
+            this.tempFile = tempFile;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result < 0) {
+                complete = true;
+            } else {
+                copy(new byte[]{(byte) result}, 0, 1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int len) throws IOException {
+            int result = super.read(buffer, offset, len);
+            if (result < 0) {
+                complete = true;
+            } else {
+                copy(buffer, offset, result);
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes are not copied: cannot be cached any more
+            broken = true;
+            return super.skip(n);
+        }
+
+        private void copy(byte[] buffer, int offset, int len) {
+            if (broken) return;
+            try {
+                sink.write(buffer, offset, len);
+                count += len;
+            } catch (IOException ioException) {
+                // i.e. disk full: still deliver the content
+                broken = true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                super.close();
+            } finally {
+                commit();
+            }
+        }
+
+        private void commit() {
+            boolean ok = complete && !broken && count == size;
+            try {
+                sink.close();
+                if (ok) {
+                    if (tempFile == null) {
+                        putBytes(key, ((ByteArrayOutputStream) sink).toByteArray());
+                    } else {
+                        disk.put(mountId, key, tempFile);
+                    }
+                }
+            } catch (IOException ioException) {
+                ok = false;
+            }
+            if (!ok && tempFile != null) tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.cache;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Content addressed files (android independent) with a global byte budget
+ * and least recently used eviction.
+ *
+ * Layout: root/mountId/sha1(key)extension. The key should contain everything that changes if the
+ * zip entry changes (crc, size) so outdated content is never found again.
+ * Last modified of a file is its last access so the lru order survives process restarts.
+ */
+public class FileLruCache {
+    private static final String TEMP_EXTENSION = ".tmp";
+
+    @NotNull private final File root;
+    private final long maxBytes;
+    @NotNull private final String extension;
+
+    /** cached file to its size in access order */
+    private final LinkedHashMap<File, Long> FILE2SIZE = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes = 0;
+    private boolean loaded = false;
+
+    public FileLruCache(@NotNull File root, long maxBytes, @NotNull String extension) {
+        this.root = root;
+        this.maxBytes = maxBytes;
+        this.extension = extension;
+    }
+
+    /** @return dir of all files of the zip mountId */
+    @NotNull public File getDir(@NotNull String mountId) {
+        File dir = new File(root, mountId);
+        dir.mkdirs();
+        return dir;
+    }
+
+    /** @return the file of key or null if it is not in the cache */
+    @Nullable public synchronized File get(@NotNull String mountId, @NotNull String key) {
+        load();
+        File file = getFile(mountId, key);
+        Long size = FILE2SIZE.get(file);
+        if (size == null) return null;
+        if (!file.exists()) {
+            // deleted by someone else (i.e. android cleaning the cache dir)
+            FILE2SIZE.remove(file);
+            totalBytes -= size;
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return file;
+    }
+
+    /** @return new file where content can be written to before it is {@link #put(String, String, File)} */
+    @NotNull public synchronized File createTempFile(@NotNull String mountId) throws IOException {
+        load(); // so that the new file is not deleted as left over
+        return File.createTempFile("content", TEMP_EXTENSION, getDir(mountId));
+    }
+
+    /**
+     * Moves the written tempFile into the cache and evicts the least recently used files
+     * if the cache is too big.
+     *
+     * @return the cached file of key
+     */
+    @NotNull public synchronized File put(@NotNull String mountId, @NotNull String key, @NotNull File tempFile) throws IOException {
+        load();
+        File file = getFile(mountId, key);
+        Long oldSize = FILE2SIZE.remove(file);
+        if (oldSize != null) totalBytes -= oldSize;
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Cannot rename " + tempFile + " to " + file);
+        }
+        long size = file.length();
+        FILE2SIZE.put(file, size);
+        totalBytes += size;
+        trim(file);
+        return file;
+    }
+
+    /**
+     * Removes all files of the zip mountId, i.e. because the zip was unmounted or changed.
+     *
+     * @return number of deleted files
+     */
+    public synchronized int invalidate(@NotNull String mountId) {
+        File dir = new File(root, mountId);
+        Iterator<Map.Entry<File, Long>> entries = FILE2SIZE.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<File, Long> entry = entries.next();
+            if (dir.equals(entry.getKey().getParentFile())) {
+                totalBytes -= entry.getValue();
+                entries.remove();
+            }
+        }
+
+        int delCount = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.delete()) delCount++;
+            }
+        }
+        if (dir.delete()) delCount++;
+        return delCount;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getTotalBytes() {
+        load();
+        return totalBytes;
+    }
+
+    @NotNull private File getFile(@NotNull String mountId, @NotNull String key) {
+        return new File(new File(root, mountId), sha1(key) + extension);
+    }
+
+    /** reads the existing files of a previous process on first use */
+    private void load() {
+        if (loaded) return;
+        loaded = true;
+
+        List<File> existing = new ArrayList<>();
+        File[] dirs = root.listFiles();
+        if (dirs != null) {
+            for (File dir : dirs) {
+                File[] files = dir.listFiles();
+                if (files == null) continue;
+                for (File file : files) {
+                    if (file.getName().endsWith(extension)) {
+                        existing.add(file);
+                    } else if (file.getName().endsWith(TEMP_EXTENSION)) {
+                        // left over from a crash while creating content
+                        file.delete();
+                    }
+                }
+            }
+        }
+
+        final Map<File, Long> lastModified = new LinkedHashMap<>();
+        for (File file : existing) lastModified.put(file, file.lastModified());
+        Collections.sort(existing, (a, b) -> Long.compare(lastModified.get(a), lastModified.get(b)));
+        for (File file : existing) {
+            long size = file.length();
+            FILE2SIZE.put(file, size);
+            totalBytes += size;
+        }
+        trim(null);
+    }
+
+    private void trim(@Nullable File keep) {
+        Iterator<Map.Entry<File, Long>> eldestFirst = FILE2SIZE.entrySet().iterator();
+        while (totalBytes > maxBytes && eldestFirst.hasNext()) {
+            Map.Entry<File, Long> entry = eldestFirst.next();
+            if (!entry.getKey().equals(keep)) {
+                // an open AssetFileDescriptor of the deleted file stays valid
+                entry.getKey().delete();
+                totalBytes -= entry.getValue();
+                eldestFirst.remove();
+            }
+        }
+    }
+
+    @NotNull private static String sha1(@NotNull String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder result = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                result.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.concurrent;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request coalescing (android independent): concurrent calls with the same key share
+ * one in-flight computation and all receive its result.
+ *
+ * The first caller computes in its own thread. Later callers wait for it and may
+ * detach early via {@link CancelCheck} without aborting the computation for the others.
+ * Once the computation is finished the next call with the same key computes again.
+ *
+ * @param <V> type of the result. Must be safe to be used by several callers at the same time.
+ */
+public class SingleFlight<V> {
+    /** how often a waiting caller checks if it was canceled */
+    private static final long CANCEL_POLL_MILLIS = 50;
+
+    public interface Computation<V> {
+        V compute();
+    }
+
+    public interface CancelCheck {
+        boolean isCanceled();
+    }
+
+    private final ConcurrentHashMap<String, FutureTask<V>> KEY2FLIGHT = new ConcurrentHashMap<>();
+    /** number of calls that received the result of another caller */
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    /**
+     * @param cancel if not null a waiting caller gives up when cancel becomes true.
+     * @return the result of computation or of an identical concurrent computation.
+     * @throws CancellationException if the caller was canceled while waiting.
+     */
+    public V execute(@NotNull String key, @NotNull final Computation<V> computation,
+                     @Nullable CancelCheck cancel) {
+        FutureTask<V> flight = new FutureTask<>(computation::compute);
+        FutureTask<V> existing = KEY2FLIGHT.putIfAbsent(key, flight);
+        if (existing == null) {
+            try {
+                flight.run();
+            } finally {
+                KEY2FLIGHT.remove(key, flight);
+            }
+            return getResult(flight, key, null);
+        }
+        sharedCount.incrementAndGet();
+        return getResult(existing, key, cancel);
+    }
+
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    private static <V> V getResult(@NotNull FutureTask<V> flight, String key, @Nullable CancelCheck cancel) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (cancel == null) return flight.get();
+                    return flight.get(CANCEL_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException timeout) {
+                    if (cancel.isCanceled()) throw new CancellationException(key);
+                } catch (InterruptedException interruptedException) {
+                    interrupted = true;
+                    if (cancel != null && cancel.isCanceled()) throw new CancellationException(key);
+                }
+            }
+        } catch (ExecutionException executionException) {
+            Throwable cause = executionException.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(key, cause);
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.concurrent;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies InputStreams to OutputStreams (i.e. zip entry content into a pipe) on a bounded
+ * thread pool (android independent) instead of one new thread per transfer.
+ *
+ * The number of threads and waiting transfers is limited: if both are exhausted a new transfer is
+ * rejected. A client that does not read its pipe blocks a thread until the pipe is closed or the
+ * transfer is canceled.
+ *
+ * Every pool thread reuses one big buffer. A transfer starts with small chunks for a fast first
+ * byte and doubles the chunk size while the source keeps delivering full chunks.
+ */
+public class TransferExecutor {
+    private static final int MAX_THREADS = 8;
+    private static final int MAX_QUEUED = 32;
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final int MIN_CHUNK_SIZE = 8 * 1024;
+    private static final int MAX_CHUNK_SIZE = 256 * 1024;
+
+    private static TransferExecutor instance = null;
+
+    /** called on the transfer thread when a transfer has finished */
+    public interface Callback {
+        /** @param error null if successful or canceled */
+        void onFinished(@NotNull Transfer transfer, long bytes, @Nullable IOException error);
+    }
+
+    private static final int STATE_QUEUED = 0;
+    private static final int STATE_RUNNING = 1;
+    private static final int STATE_CANCELED = 2;
+
+    /** handle to cancel a submitted transfer */
+    public class Transfer implements Runnable {
+        @NotNull private final InputStream in;
+        @NotNull private final OutputStream out;
+        @Nullable private final Callback callback;
+        private final AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+        private volatile boolean canceled = false;
+
+        private Transfer(@NotNull InputStream in, @NotNull OutputStream out, @Nullable Callback callback) {
+            this.in = in;
+            this.out = out;
+            this.callback = callback;
+        }
+
+        /**
+         * Stops the transfer. The output is closed from the calling thread so that a transfer that is
+         * blocked writing into a pipe that nobody reads wakes up with an IOException.
+         * The input is closed by the transfer thread because it may be reading it right now.
+         */
+        public void cancel() {
+            canceled = true;
+            if (state.compareAndSet(STATE_QUEUED, STATE_CANCELED)) {
+                // never started: nobody else uses the streams
+                executor.remove(this);
+                finish(0, null);
+            } else {
+                closeSilently(out);
+            }
+        }
+
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(STATE_QUEUED, STATE_RUNNING)) return;
+            activeCount.incrementAndGet();
+            long bytes = 0;
+            IOException error = null;
+            try {
+                byte[] buffer = BUFFER.get();
+                int chunkSize = MIN_CHUNK_SIZE;
+                int len;
+                while (!canceled && (len = in.read(buffer, 0, chunkSize)) > 0) {
+                    out.write(buffer, 0, len);
+                    bytes += len;
+                    transferredBytes.addAndGet(len);
+                    if (len == chunkSize && chunkSize < MAX_CHUNK_SIZE) chunkSize *= 2;
+                }
+            } catch (IOException ioException) {
+                // i.e. broken pipe after the reader has closed
+                if (!canceled) error = ioException;
+            } finally {
+                activeCount.decrementAndGet();
+                finish(bytes, error);
+            }
+        }
+
+        private void finish(long bytes, @Nullable IOException error) {
+            closeSilently(in);
+            closeSilently(out);
+            if (callback != null) callback.onFinished(this, bytes, error);
+        }
+    }
+
+    /** one reusable buffer per pool thread */
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[MAX_CHUNK_SIZE];
+        }
+    };
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final AtomicLong transferredBytes = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public TransferExecutor(int maxThreads) {
+        this(maxThreads, MAX_QUEUED);
+    }
+
+    /** @param maxQueued number of transfers that may wait for a free thread */
+    public TransferExecutor(int maxThreads, int maxQueued) {
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(maxQueued), new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable runnable) {
+                Thread thread = new Thread(runnable, "TransferThread-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /** singleton */
+    @NotNull public static synchronized TransferExecutor getInstance() {
+        if (instance == null) {
+            instance = new TransferExecutor(MAX_THREADS);
+        }
+        return instance;
+    }
+
+    /**
+     * copies in to out and closes both when finished or canceled.
+     *
+     * @throws IOException if all threads are busy and too many transfers are waiting.
+     * The streams are not closed then.
+     */
+    @NotNull public Transfer submit(@NotNull InputStream in, @NotNull OutputStream out, @Nullable Callback callback)
+            throws IOException {
+        Transfer transfer = new Transfer(in, out, callback);
+        try {
+            executor.execute(transfer);
+        } catch (RejectedExecutionException rejected) {
+            rejectedCount.incrementAndGet();
+            throw new IOException("too many open transfers", rejected);
+        }
+        return transfer;
+    }
+
+    /** @return number of transfers that are copying right now */
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    /** @return number of transfers waiting for a free thread */
+    public int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /** @return number of transfers that were rejected because too many were waiting */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /** @return number of bytes copied by all transfers so far */
+    public long getTransferredBytes() {
+        return transferredBytes.get();
+    }
+
+    private static void closeSilently(@NotNull Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignore) {
+            // nothing to do
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.data;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Calendar;
+
+/**
+ * Document ids of the storage provider (android independent): "zipId/pathInsideZip".
+ * Directories end with "/".
+ */
+public class DocumentIds {
+    public static final String PATH_DELIMITER = "/";
+
+    private static final long millisecsSince2100;
+
+    static {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        // 2100-02-01
+        cal.set(2100, 1, 1);
+        millisecsSince2100 = cal.getTimeInMillis();
+    }
+
+    private DocumentIds() {
+    }
+
+    @NotNull public static String getDocumentId(String zipId, String fileName) {
+        return zipId + PATH_DELIMITER + fileName;
+    }
+
+    /**
+     * @return zipID without pathInsideZip. null if error
+     */
+    @Nullable public static String getRootId(String documentId) {
+        if ((documentId == null) || (documentId.isEmpty())) return null;
+
+        if (documentId.startsWith(PATH_DELIMITER)) return getRootId(documentId.substring(1));
+
+        int end = documentId.indexOf(PATH_DELIMITER);
+        return (end >= 0) ? documentId.substring(0, end) : documentId;
+    }
+
+    /**
+     * @return pathInsideZip without zipID. "" if root
+     */
+    @NotNull public static String getZipPath(String documentId) {
+        if ((documentId != null) && (!documentId.isEmpty())) {
+            if (documentId.startsWith(PATH_DELIMITER)) return getZipPath(documentId.substring(1));
+            int begin = documentId.indexOf(PATH_DELIMITER) + 1;
+
+            if (begin > 1 && documentId.length() > begin) {
+                return documentId.substring(begin);
+            }
+        }
+        return "";
+    }
+
+    /**
+     * @return parentDocumentId ending with "/". "" if null or empty
+     */
+    @NotNull public static String getDirectoryID(@Nullable String parentDocumentId) {
+        if (parentDocumentId == null) return "";
+        if (parentDocumentId.length() > 0 && !parentDocumentId.endsWith(PATH_DELIMITER)) {
+            return parentDocumentId + PATH_DELIMITER;
+        }
+        return parentDocumentId;
+    }
+
+    /**
+     * @return zipPath without zipParentDir or null, if zipPath is not below zipParentDir.
+     */
+    @Nullable public static String getRelPath(String zipPath, String zipParentDir) {
+        if (zipPath != null && zipPath.startsWith(zipParentDir)) return zipPath.substring(zipParentDir.length());
+        return null;
+    }
+
+    /**
+     * @return milliSecs since 1970 as required by Document.COLUMN_LAST_MODIFIED. 0 if unknown
+     */
+    public static long getTimeInMilliSince1970(long timeInSecsSince1970) {
+        // assume Secs Since 1970-01-01
+        if (timeInSecsSince1970 == 0) {
+            return 0;
+        }
+
+        long result = timeInSecsSince1970 * 1000;
+
+        if (result > millisecsSince2100) {
+            // if calculated time is bigger than 2100-01-01 assume that
+            // input time timeInSecsSince1970 was already in milliSecs since 1970
+            return timeInSecsSince1970;
+        }
+
+        return result;
+    }
+}
@@ -35,12 +35,30 @@ public class MountInfo  {
 
     @Nullable public final String password;
 
+    /** full path to the persisted zip index file or null if there is none yet */
+    @Nullable public final String indexFile;
+
+    /** size and last modified of the zip file when {@link #indexFile} was created */
+    @Nullable public final String indexStamp;
+
     public static final MountInfo EMPTY = new MountInfo("","",null);
 
     public MountInfo(@NotNull String zipId, @NotNull String uri, @Nullable String password) {
+        this(zipId, uri, password, null, null);
+    }
+
+    public MountInfo(@NotNull String zipId, @NotNull String uri, @Nullable String password,
+                     @Nullable String indexFile, @Nullable String indexStamp) {
         this.zipId = zipId;
         this.uri = uri;
         this.password = password;
+        this.indexFile = indexFile;
+        this.indexStamp = indexStamp;
+    }
+
+    /** @return copy of this with a different persisted zip index */
+    @NotNull public MountInfo withIndex(@Nullable String indexFile, @Nullable String indexStamp) {
+        return new MountInfo(zipId, uri, password, indexFile, indexStamp);
     }
 
     @Override
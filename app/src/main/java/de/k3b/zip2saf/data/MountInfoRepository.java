@@ -28,20 +28,47 @@ import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Type;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * JSon based (android independent) in memory Repository implementation for {@link MountInfo} items.
+ *
+ * Thread safe: readers (i.e. the binder threads of the provider) work on an immutable snapshot
+ * without any lock. Every change creates a new snapshot (copy on write) that is published atomically.
  */
 public class MountInfoRepository {
     private static Gson gson = setPrettyPrinting(false);
     private static final Type LIST_TYPE = new TypeToken<ArrayList<MountInfo>>() {}.getType();
-    private static MountInfoRepository instance = null;
+    private static volatile MountInfoRepository instance = null;
+    private static volatile Loader loader = null;
     @NotNull private static String createNewItemName = "[[add]]";
 
-    private final List<MountInfo> ITEMS;
-    private final HashMap<String, MountInfo> ID2MOUNT;
+    /** loads the persisted mounts on first use of {@link #getInstance()}. Called from any thread */
+    public interface Loader {
+        @Nullable List<MountInfo> load();
+    }
+
+    /** immutable content of the repository */
+    private static class Snapshot {
+        @NotNull final List<MountInfo> items;
+        @NotNull final Map<String, MountInfo> id2mount;
+
+        /** @param items must not be modified after this call */
+        Snapshot(@NotNull List<MountInfo> items) {
+            this.items = Collections.unmodifiableList(items);
+            HashMap<String, MountInfo> id2mount = new HashMap<>();
+            for (MountInfo item : items) {
+                id2mount.put(item.zipId, item);
+            }
+            this.id2mount = id2mount;
+        }
+    }
+
+    /** changed only while holding the lock of this */
+    @NotNull private volatile Snapshot snapshot;
 
     /**
      * Workaround to avoid dependency to android(-string-resources)
@@ -50,13 +77,29 @@ public class MountInfoRepository {
         MountInfoRepository.createNewItemName = createNewItemName;
     }
 
-    /** singleton */
+    /**
+     * Instead of loading at startup the mounts are loaded by loader when the singleton is used
+     * for the first time, i.e. in a binder thread of the provider.
+     */
+    public static void setLoader(@Nullable Loader loader) {
+        MountInfoRepository.loader = loader;
+    }
+
+    /** singleton. Loaded on first use. See {@link #setLoader(Loader)} */
     @NotNull public static MountInfoRepository getInstance() {
-        if (instance == null) {
-            instance = new MountInfoRepository(new ArrayList<>());
-            // DemoDataGenerator.addDemoItems(instance, 25);
+        MountInfoRepository result = instance;
+        if (result == null) {
+            synchronized (MountInfoRepository.class) {
+                result = instance;
+                if (result == null) {
+                    Loader loader = MountInfoRepository.loader;
+                    result = new MountInfoRepository((loader != null) ? loader.load() : null);
+                    // DemoDataGenerator.addDemoItems(result, 25);
+                    instance = result;
+                }
+            }
         }
-        return instance;
+        return result;
     }
 
     public static Gson setPrettyPrinting(boolean prettyPrinting) {
@@ -68,17 +111,16 @@ public class MountInfoRepository {
         return gson;
     }
 
-    protected MountInfoRepository(@NotNull List<MountInfo> items) {
-        ITEMS = items;
-        ID2MOUNT = new HashMap<>();
-        for (MountInfo item : ITEMS) {
-            ID2MOUNT.put(item.zipId, item);
-        }
-        instance = this;
+    protected MountInfoRepository(@Nullable List<MountInfo> items) {
+        snapshot = new Snapshot(copy(items));
 
         fixCreateNewItem();
     }
 
+    @NotNull private static List<MountInfo> copy(@Nullable List<MountInfo> items) {
+        return (items == null) ? new ArrayList<>() : new ArrayList<>(items);
+    }
+
     protected static class DemoDataGenerator {
         private static void addDemoItems(MountInfoRepository repository, int count) {
             // Add some sample items.
@@ -102,48 +144,95 @@ public class MountInfoRepository {
         }
     }
 
-    public void add(@NotNull MountInfo item) {
+    public synchronized void add(@NotNull MountInfo item) {
+        List<MountInfo> items = copy(snapshot.items);
         if (isSpecialItem(item)) {
-            ITEMS.add(0,item);
+            items.add(0,item);
         } else {
-            ITEMS.add(item);
+            items.add(item);
         }
-        ID2MOUNT.put(item.zipId, item);
+        snapshot = new Snapshot(items);
     }
 
     /**
+     * Adds item if there is no item with the same {@link MountInfo#zipId} yet.
+     * @return false if already there
+     */
+    public synchronized boolean addIfAbsent(@NotNull MountInfo item) {
+        if (getById(item.zipId) != null) return false;
+        add(item);
+        return true;
+    }
+
+    /**
+     * removes the item with the same {@link MountInfo#zipId} as item.
+     * item may be an outdated instance that has been replaced by {@link #update(MountInfo)}.
      * @return true if successfull removed. false if not found
      */
-    public boolean remove(@NotNull MountInfo item) {
-        boolean result = ITEMS.remove(item);
-        ID2MOUNT.remove(item.zipId);
-        return result;
+    public synchronized boolean remove(@NotNull MountInfo item) {
+        List<MountInfo> items = copy(snapshot.items);
+        for (int position = 0; position < items.size(); position++) {
+            if (items.get(position).zipId.equals(item.zipId)) {
+                items.remove(position);
+                snapshot = new Snapshot(items);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * replace the item with the same {@link MountInfo#zipId} by item.
+     * @return true if successfull replaced. false if not found
+     */
+    public synchronized boolean update(@NotNull MountInfo item) {
+        Snapshot current = snapshot;
+        MountInfo old = current.id2mount.get(item.zipId);
+        int position = (old == null) ? -1 : current.items.indexOf(old);
+        if (position < 0) return false;
+        List<MountInfo> items = copy(current.items);
+        items.set(position, item);
+        snapshot = new Snapshot(items);
+        return true;
+    }
+
+    /** replaces the complete content by the items of jsonData. See {@link #toString()} */
+    public void reload(String jsonData) {
+        reload(gson.<List<MountInfo>>fromJson(jsonData, LIST_TYPE));
+    }
+
+    /** replaces the complete content by items. See {@link MountInfoStore} */
+    public synchronized void reload(@Nullable List<MountInfo> items) {
+        snapshot = new Snapshot(copy(items));
+        fixCreateNewItem();
     }
 
     @Nullable public MountInfo getById(String s) {
         if (s == null) return null;
-        return ID2MOUNT.get(s);
+        return snapshot.id2mount.get(s);
     }
 
+    /** @return unmodifiable snapshot that does not change when the repository changes */
     @NotNull public List<MountInfo> getAll() {
-        return ITEMS;
+        return snapshot.items;
     }
 
     @Nullable public MountInfo getByPosition(int position) {
-        if (position < 0 || position >= getCount()) {
+        List<MountInfo> items = snapshot.items;
+        if (position < 0 || position >= items.size()) {
             return null;
         }
-        return ITEMS.get(position);
+        return items.get(position);
     }
 
     public int getCount() {
-        return ITEMS.size();
+        return snapshot.items.size();
     }
 
     /**
      * make shure that first item in repository is always "[[add]]" in the correct translation.
      */
-    protected boolean fixCreateNewItem() {
+    protected synchronized boolean fixCreateNewItem() {
         MountInfo first = getByPosition(0);
         boolean mustAdd = (first == null || !isSpecialItem(first));
         if (first != null && isSpecialItem(first) && 0 != first.zipId.compareTo(createNewItemName) ) {
@@ -164,7 +253,7 @@ public class MountInfoRepository {
     /** persistance to json string */
     @Override
     @NotNull public String toString() {
-        return gson.toJson(ITEMS);
+        return gson.toJson(snapshot.items);
     }
 
     /** persistance to json string */
@@ -172,8 +261,8 @@ public class MountInfoRepository {
         return gson.toJson(item);
     }
 
-    /** persistance from json string */
+    /** persistance from json string. Creates a new repository. See {@link #reload(String)} to change the singleton */
     @NotNull public static MountInfoRepository fromString(String jsonData) {
-        return new MountInfoRepository(gson.fromJson(jsonData, LIST_TYPE));
+        return new MountInfoRepository(gson.<List<MountInfo>>fromJson(jsonData, LIST_TYPE));
     }
 }
\ No newline at end of file
@@ -0,0 +1,194 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * File based persistence of the mounted zips (android independent) as append only change log,
+ * so that mount and eject write one line instead of the complete list.
+ *
+ * The log is compacted to one line per mount after {@link #COMPACT_AFTER_FACTOR} * mounts changes.
+ * Compaction writes a temp file that replaces the log by rename, so a crash leaves either
+ * the old or the new log. An incomplete last line of a crash while appending is ignored.
+ */
+public class MountInfoStore {
+    static final int COMPACT_AFTER_FACTOR = 4;
+    /** few mounts: do not compact after every change */
+    private static final int MIN_CHANGES_BEFORE_COMPACT = 32;
+
+    private static final String MOUNT = "M";
+    private static final String EJECT = "E";
+    private static final String DELIMITER = "\t";
+
+    private static final Gson gson = new Gson();
+
+    @NotNull private final File file;
+
+    /** zipId -> mount in mount order. Loaded on demand */
+    private Map<String, MountInfo> id2mount = null;
+    private int changesSinceCompact = 0;
+    /** true if the last line is incomplete: appending to it would corrupt the next change, too */
+    private boolean mustCompact = false;
+
+    public MountInfoStore(@NotNull File file) {
+        this.file = file;
+    }
+
+    /** @return false if nothing was saved yet */
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /** @return all saved mounts in mount order */
+    @NotNull public synchronized List<MountInfo> getAll() {
+        load();
+        return new ArrayList<>(id2mount.values());
+    }
+
+    /** remember item as new mount or as update of the mount with the same {@link MountInfo#zipId} */
+    public synchronized void put(@NotNull MountInfo item) throws IOException {
+        load();
+        id2mount.put(item.zipId, item);
+        append(MOUNT + DELIMITER + gson.toJson(item));
+    }
+
+    /** forget the mount of zipId */
+    public synchronized void remove(@NotNull String zipId) throws IOException {
+        load();
+        if (id2mount.remove(zipId) == null) return;
+        if (zipId.indexOf('\n') >= 0 || zipId.indexOf('\r') >= 0) {
+            // cannot be written as one log line
+            compact();
+        } else {
+            append(EJECT + DELIMITER + zipId);
+        }
+    }
+
+    /** replace all saved mounts by items */
+    public synchronized void save(@NotNull Collection<MountInfo> items) throws IOException {
+        id2mount = new LinkedHashMap<>();
+        for (MountInfo item : items) {
+            id2mount.put(item.zipId, item);
+        }
+        compact();
+    }
+
+    private void append(@NotNull String line) throws IOException {
+        if (mustCompact || ++changesSinceCompact >= Math.max(MIN_CHANGES_BEFORE_COMPACT, COMPACT_AFTER_FACTOR * id2mount.size())) {
+            compact();
+        } else {
+            try (FileOutputStream stream = new FileOutputStream(file, true);
+                 Writer out = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+                out.write(line + "\n");
+                out.flush();
+                stream.getFD().sync();
+            }
+        }
+    }
+
+    private void load() {
+        if (id2mount != null) return;
+        id2mount = new LinkedHashMap<>();
+        if (!file.exists()) return;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            boolean complete = endsWithNewLine(file);
+            String line = in.readLine();
+            while (line != null) {
+                String next = in.readLine();
+                // the last line without "\n" is incomplete: i.e. a truncated zipId must not eject another mount
+                if (next != null || complete) {
+                    String[] fields = line.split(DELIMITER, 2);
+                    if (fields.length == 2) {
+                        if (MOUNT.equals(fields[0])) {
+                            MountInfo item = parse(fields[1]);
+                            if (item != null) id2mount.put(item.zipId, item);
+                        } else if (EJECT.equals(fields[0])) {
+                            id2mount.remove(fields[1]);
+                        }
+                        changesSinceCompact++;
+                    }
+                }
+                line = next;
+            }
+            mustCompact = !complete;
+        } catch (IOException ignore) {
+            // use what could be read
+            mustCompact = true;
+        }
+    }
+
+    private static boolean endsWithNewLine(@NotNull File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length == 0) return true;
+            in.seek(length - 1);
+            return in.read() == '\n';
+        }
+    }
+
+    private static MountInfo parse(@NotNull String json) {
+        try {
+            MountInfo item = gson.fromJson(json, MountInfo.class);
+            // null if line was not completely written
+            return (item != null && item.zipId != null) ? item : null;
+        } catch (JsonParseException ignore) {
+            return null;
+        }
+    }
+
+    /** replace the log by one line per mount */
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             Writer out = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            for (MountInfo item : id2mount.values()) {
+                out.write(MOUNT + DELIMITER + gson.toJson(item) + "\n");
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot compact " + file);
+        }
+        changesSinceCompact = 0;
+        mustCompact = false;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds the words of all text entries of a zip to a {@link ContentSearchIndex} (android independent).
+ *
+ * Continues after the last node that is already in the index. Every {@link #SEGMENT_BYTES}
+ * of text a segment is persisted so that little work is lost if the process is killed.
+ * Run it on a background thread: nothing here blocks queries on the {@link ContentSearchIndex}.
+ */
+public class ContentIndexer implements Runnable {
+    /** text bytes per persisted segment */
+    static final long SEGMENT_BYTES = 4 * 1024 * 1024;
+    /** only the beginning of huge entries is indexed */
+    static final long MAX_ENTRY_CHARS = 32 * 1024 * 1024;
+
+    /** access to the zip entries */
+    public interface Source {
+        /** @return true if node is a text entry that should be indexed */
+        boolean isText(int node);
+
+        /** @return uncompressed content of node or null if it cannot be read */
+        @Nullable InputStream open(int node) throws IOException;
+    }
+
+    @NotNull private final ZipIndex index;
+    @NotNull private final ContentSearchIndex target;
+    @NotNull private final Source source;
+    private volatile boolean canceled = false;
+    @Nullable private volatile IOException error = null;
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    private Map<String, ContentSearchIndex.Postings> words = new HashMap<>();
+    private final StringBuilder word = new StringBuilder(ContentSearchIndex.MAX_WORD_LENGTH + 1);
+    private final char[] buffer = new char[16 * 1024];
+
+    public ContentIndexer(@NotNull ZipIndex index, @NotNull ContentSearchIndex target, @NotNull Source source) {
+        this.index = index;
+        this.target = target;
+        this.source = source;
+    }
+
+    /** stops before the next entry. Entries of the current segment have to be read again on the next run. */
+    public void cancel() {
+        canceled = true;
+    }
+
+    public boolean isCanceled() {
+        return canceled;
+    }
+
+    /**
+     * waits until {@link #run()} has returned, i.e. after {@link #cancel()} before the index file is deleted.
+     * @return false if still running after millis
+     */
+    public boolean awaitFinished(long millis) throws InterruptedException {
+        return finished.await(millis, TimeUnit.MILLISECONDS);
+    }
+
+    /** @return null or the reason why the index could not be persisted */
+    @Nullable public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public void run() {
+        try {
+            runIndexer();
+        } finally {
+            finished.countDown();
+        }
+    }
+
+    private void runIndexer() {
+        if (target.isComplete()) return;
+        int size = index.size();
+        long segmentChars = 0;
+        try {
+            for (int node = target.getNextNode(); node < size; node++) {
+                if (canceled) return;
+                if (!index.isDirectory(node) && source.isText(node)) {
+                    segmentChars += addWords(node);
+                }
+                if (segmentChars >= SEGMENT_BYTES) {
+                    if (canceled) return;
+                    target.append(words, node + 1, node + 1 >= size);
+                    words = new HashMap<>();
+                    segmentChars = 0;
+                }
+            }
+            if (!canceled && !target.isComplete()) target.append(words, size, true);
+        } catch (IOException ioException) {
+            error = ioException;
+        }
+    }
+
+    /** @return number of chars read */
+    private long addWords(int node) {
+        long chars = 0;
+        word.setLength(0);
+        try (InputStream in = source.open(node)) {
+            if (in == null) return 0;
+            Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8);
+            int len;
+            while (!canceled && chars < MAX_ENTRY_CHARS && (len = reader.read(buffer)) > 0) {
+                for (int i = 0; i < len; i++) {
+                    char c = buffer[i];
+                    if (Character.isLetterOrDigit(c)) {
+                        // longer words are ignored anyway
+                        if (word.length() <= ContentSearchIndex.MAX_WORD_LENGTH) word.append(c);
+                    } else {
+                        addWord(node);
+                    }
+                }
+                chars += len;
+            }
+            addWord(node);
+        } catch (IOException ignore) {
+            // unreadable entry: index the words found so far
+            addWord(node);
+        }
+        return chars;
+    }
+
+    private void addWord(int node) {
+        if (ContentSearchIndex.isIndexedWordLength(word.length())) {
+            String key = word.toString().toLowerCase(Locale.ROOT);
+            ContentSearchIndex.Postings postings = words.get(key);
+            if (postings == null) {
+                postings = new ContentSearchIndex.Postings();
+                words.put(key, postings);
+            }
+            postings.add(node);
+        }
+        word.setLength(0);
+    }
+}
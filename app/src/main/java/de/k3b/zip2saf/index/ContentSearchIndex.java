@@ -0,0 +1,303 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Inverted index word -> nodes of the text entries of one zip (android independent)
+ * that is persisted next to the {@link ZipIndexFile} and grows while {@link ContentIndexer} runs.
+ *
+ * The file is a header followed by segments. Every segment contains the words of the nodes
+ * up to {@link #getNextNode()} and is protected by a crc. If the process is killed while a segment is
+ * written the incomplete segment is dropped on the next {@link #open(File, String)} and indexing
+ * continues after the last complete segment.
+ */
+public class ContentSearchIndex {
+    static final int MAGIC = 0x5A325357; // "Z2SW"
+    static final int VERSION = 1;
+    static final int SEGMENT_MAGIC = 0x5345474D; // "SEGM"
+
+    /** shorter words are not indexed */
+    public static final int MIN_WORD_LENGTH = 2;
+    /** longer words (i.e. base64 blobs) are not indexed */
+    public static final int MAX_WORD_LENGTH = 48;
+
+    @NotNull private final File file;
+    @NotNull private final String sourceStamp;
+
+    /** word -> ascending nodes */
+    private final Map<String, Postings> word2nodes = new HashMap<>();
+    private int nextNode = 1;
+    private boolean complete = false;
+
+    /** growing list of ascending nodes */
+    static class Postings {
+        int[] nodes = new int[4];
+        int size = 0;
+
+        void add(int node) {
+            if (size > 0 && nodes[size - 1] == node) return;
+            if (size == nodes.length) nodes = Arrays.copyOf(nodes, size * 2);
+            nodes[size++] = node;
+        }
+    }
+
+    private ContentSearchIndex(@NotNull File file, @NotNull String sourceStamp) {
+        this.file = file;
+        this.sourceStamp = sourceStamp;
+    }
+
+    /**
+     * @param sourceStamp see {@link ZipIndexFile#toStamp(long, long)}. If the file was created for a different
+     *                    stamp it is discarded.
+     * @return index with all complete segments of file
+     */
+    @NotNull public static ContentSearchIndex open(@NotNull File file, @NotNull String sourceStamp) throws IOException {
+        ContentSearchIndex result = new ContentSearchIndex(file, sourceStamp);
+        long validLength = result.load();
+        if (validLength == 0) {
+            writeHeader(file, sourceStamp);
+        } else if (validLength < file.length()) {
+            // drop the segment that was interrupted
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        return result;
+    }
+
+    /** @return length of the valid part of the file or 0 if there is no valid header */
+    private long load() throws IOException {
+        if (!file.exists()) return 0;
+        long validLength;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !sourceStamp.equals(in.readUTF())) return 0;
+            validLength = 8 + 2 + utf8Length(sourceStamp);
+            while (true) {
+                byte[] segment = readSegment(in);
+                if (segment == null) break;
+                addSegment(segment);
+                validLength += 12 + segment.length;
+            }
+        } catch (EOFException eof) {
+            return 0;
+        }
+        return validLength;
+    }
+
+    /** @return content of the next complete segment or null if there is none */
+    @Nullable private static byte[] readSegment(DataInputStream in) throws IOException {
+        try {
+            if (in.readInt() != SEGMENT_MAGIC) return null;
+            byte[] segment = new byte[in.readInt()];
+            in.readFully(segment);
+            int crc = in.readInt();
+            return (crc == crc(segment)) ? segment : null;
+        } catch (EOFException | NegativeArraySizeException | OutOfMemoryError incomplete) {
+            return null;
+        }
+    }
+
+    private static void writeHeader(@NotNull File file, @NotNull String sourceStamp) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(sourceStamp);
+        }
+    }
+
+    /**
+     * Persists and adds the words of all nodes before nextNode.
+     *
+     * @param words word -> ascending nodes, all smaller than nextNode
+     * @param complete true if there are no more nodes to be indexed
+     */
+    public void append(@NotNull Map<String, Postings> words, int nextNode, boolean complete) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream segment = new DataOutputStream(buffer);
+        segment.writeInt(nextNode);
+        segment.writeBoolean(complete);
+        segment.writeInt(words.size());
+        for (Map.Entry<String, Postings> entry : words.entrySet()) {
+            Postings postings = entry.getValue();
+            segment.writeUTF(entry.getKey());
+            segment.writeInt(postings.size);
+            int last = 0;
+            for (int i = 0; i < postings.size; i++) {
+                writeVarInt(segment, postings.nodes[i] - last);
+                last = postings.nodes[i];
+            }
+        }
+        segment.flush();
+        byte[] bytes = buffer.toByteArray();
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+            out.writeInt(SEGMENT_MAGIC);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeInt(crc(bytes));
+        }
+        addSegment(bytes);
+    }
+
+    private synchronized void addSegment(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int segmentNextNode = in.readInt();
+        boolean segmentComplete = in.readBoolean();
+        int wordCount = in.readInt();
+        for (int w = 0; w < wordCount; w++) {
+            String word = in.readUTF();
+            Postings postings = word2nodes.get(word);
+            if (postings == null) {
+                postings = new Postings();
+                word2nodes.put(word, postings);
+            }
+            int count = in.readInt();
+            int node = 0;
+            for (int i = 0; i < count; i++) {
+                node += readVarInt(in);
+                postings.add(node);
+            }
+        }
+        nextNode = segmentNextNode;
+        complete = segmentComplete;
+    }
+
+    /** @return first node that has not been indexed yet */
+    public synchronized int getNextNode() {
+        return nextNode;
+    }
+
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    @NotNull public String getSourceStamp() {
+        return sourceStamp;
+    }
+
+    /**
+     * @return ascending nodes that contain all words of query. Only the nodes that have
+     * already been indexed are found.
+     */
+    @NotNull public synchronized int[] search(@NotNull String query, int limit) {
+        List<String> words = new ArrayList<>();
+        tokenize(query, words);
+        if (words.isEmpty() || limit <= 0) return new int[0];
+
+        Postings[] lists = new Postings[words.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = word2nodes.get(words.get(i));
+            if (lists[i] == null) return new int[0];
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] result = Arrays.copyOf(lists[0].nodes, lists[0].size);
+        int count = result.length;
+        for (int l = 1; l < lists.length && count > 0; l++) {
+            count = intersect(result, count, lists[l]);
+        }
+        return Arrays.copyOf(result, Math.min(count, limit));
+    }
+
+    private static int intersect(int[] candidates, int count, Postings postings) {
+        int kept = 0;
+        int p = 0;
+        for (int c = 0; c < count; c++) {
+            int node = candidates[c];
+            while (p < postings.size && postings.nodes[p] < node) p++;
+            if (p < postings.size && postings.nodes[p] == node) candidates[kept++] = node;
+        }
+        return kept;
+    }
+
+    /** adds the words of text to result. Words are letters and digits in lower case. */
+    public static void tokenize(@NotNull CharSequence text, @NotNull List<String> result) {
+        int start = -1;
+        int length = text.length();
+        for (int i = 0; i <= length; i++) {
+            boolean isWordChar = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (isWordChar && start < 0) {
+                start = i;
+            } else if (!isWordChar && start >= 0) {
+                if (isIndexedWordLength(i - start)) {
+                    result.add(text.subSequence(start, i).toString().toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+    }
+
+    static boolean isIndexedWordLength(int length) {
+        return length >= MIN_WORD_LENGTH && length <= MAX_WORD_LENGTH;
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    private static int utf8Length(String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * Seekable uncompressed content of a DEFLATED zip entry (android independent).
+ *
+ * Sequential reads continue inflating where the previous read stopped. Other reads
+ * resume at the nearest {@link InflateCheckpoints.Checkpoint} so a seek costs at most
+ * the inflation of the distance between two checkpoints.
+ *
+ * Closing this also closes the compressed input.
+ */
+public class DeflatedEntryInput implements RandomAccessInput {
+    @NotNull private final RandomAccessInput compressed;
+    private final long length;
+    @NotNull private final InflateCheckpoints checkpoints;
+    @NotNull private final SeekableInflater inflater;
+
+    /**
+     * @param compressed raw deflate data of the entry.
+     * @param length uncompressed size of the entry.
+     */
+    public DeflatedEntryInput(@NotNull RandomAccessInput compressed, long length,
+                              @NotNull InflateCheckpoints checkpoints) {
+        this.compressed = compressed;
+        this.length = length;
+        this.checkpoints = checkpoints;
+        this.inflater = new SeekableInflater(compressed, checkpoints);
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public synchronized int read(long position, byte[] buffer, int offset, int len) throws IOException {
+        if (position >= length) return -1;
+
+        long current = inflater.getTotalOut();
+        InflateCheckpoints.Checkpoint checkpoint = checkpoints.floor(position);
+        if (position < current || (checkpoint != null && checkpoint.out > current)) {
+            inflater.reset(checkpoint);
+        }
+        inflater.skipTo(position);
+
+        int done = 0;
+        len = (int) Math.min(len, length - position);
+        while (done < len) {
+            int read = inflater.inflate(buffer, offset + done, len - done);
+            if (read < 0) break;
+            done += read;
+        }
+        return (done == 0) ? -1 : done;
+    }
+
+    @Override
+    public void close() throws IOException {
+        compressed.close();
+    }
+}
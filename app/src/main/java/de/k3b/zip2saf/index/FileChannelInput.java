@@ -0,0 +1,63 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link RandomAccessInput} on top of a {@link FileChannel}.
+ *
+ * Positioned reads fail with an {@link IOException} if the channel is not seekable (i.e. a pipe).
+ */
+public class FileChannelInput implements RandomAccessInput {
+    @NotNull private final FileChannel channel;
+
+    /** closed together with the channel. I.E. the stream that owns the channel */
+    private final Closeable owner;
+
+    public FileChannelInput(@NotNull FileChannel channel, Closeable owner) {
+        this.channel = channel;
+        this.owner = owner;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int len) throws IOException {
+        return channel.read(ByteBuffer.wrap(buffer, offset, len), position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (owner != null) {
+            owner.close();
+        } else {
+            channel.close();
+        }
+    }
+}
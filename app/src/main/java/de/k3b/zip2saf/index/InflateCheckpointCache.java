@@ -0,0 +1,86 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Side cache (android independent) of the {@link InflateCheckpoints} of recently read
+ * DEFLATED zip entries with a global memory budget and least recently used eviction.
+ */
+public class InflateCheckpointCache {
+    private static final long MAX_BYTES = 32 * 1024 * 1024;
+
+    private static InflateCheckpointCache instance = null;
+
+    /** key (starting with zipId + "/") to checkpoints in access order */
+    private final LinkedHashMap<String, InflateCheckpoints> KEY2CHECKPOINTS = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** singleton */
+    @NotNull public static synchronized InflateCheckpointCache getInstance() {
+        if (instance == null) {
+            instance = new InflateCheckpointCache();
+        }
+        return instance;
+    }
+
+    /**
+     * @param key documentId plus everything that changes if the entry changes (i.e. crc).
+     * @return existing or new empty checkpoints of the entry
+     */
+    @NotNull public synchronized InflateCheckpoints get(@NotNull String key, long uncompressedSize) {
+        InflateCheckpoints result = KEY2CHECKPOINTS.get(key);
+        if (result == null) {
+            result = new InflateCheckpoints(uncompressedSize);
+            KEY2CHECKPOINTS.put(key, result);
+        }
+        trim(result);
+        return result;
+    }
+
+    /** to be called when the zip is unmounted */
+    public synchronized void remove(@NotNull String zipId) {
+        String prefix = zipId + "/";
+        Iterator<String> keys = KEY2CHECKPOINTS.keySet().iterator();
+        while (keys.hasNext()) {
+            if (keys.next().startsWith(prefix)) keys.remove();
+        }
+    }
+
+    /** checkpoints grow after they were added so the budget is checked on every access */
+    private void trim(InflateCheckpoints keep) {
+        long total = 0;
+        for (InflateCheckpoints checkpoints : KEY2CHECKPOINTS.values()) {
+            total += checkpoints.getByteSize();
+        }
+        Iterator<Map.Entry<String, InflateCheckpoints>> eldestFirst = KEY2CHECKPOINTS.entrySet().iterator();
+        while (total > MAX_BYTES && eldestFirst.hasNext()) {
+            InflateCheckpoints checkpoints = eldestFirst.next().getValue();
+            if (checkpoints != keep) {
+                total -= checkpoints.getByteSize();
+                eldestFirst.remove();
+            }
+        }
+    }
+}
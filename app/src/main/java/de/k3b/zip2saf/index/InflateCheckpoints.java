@@ -0,0 +1,106 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inflater state of one DEFLATED zip entry at regular uncompressed offsets (android independent)
+ * so that a seek only has to inflate from the nearest {@link Checkpoint} instead of from the beginning.
+ *
+ * Checkpoints are recorded by {@link SeekableInflater} while the entry is read for the first time.
+ * Thread safe.
+ */
+public class InflateCheckpoints {
+    /** entries smaller than this are not worth checkpoints */
+    public static final long MIN_SPACING = 1024 * 1024;
+    /** limits the memory of one entry to about MAX_CHECKPOINTS * 32 KB */
+    private static final int MAX_CHECKPOINTS = 256;
+
+    /** deflate block boundary: where to continue inflating and the window needed to resolve back references */
+    public static class Checkpoint {
+        /** uncompressed position */
+        public final long out;
+        /** compressed position in bits */
+        public final long bitPosition;
+        /** the last (up to) 32 KB of uncompressed data before out */
+        @NotNull public final byte[] window;
+
+        Checkpoint(long out, long bitPosition, @NotNull byte[] window) {
+            this.out = out;
+            this.bitPosition = bitPosition;
+            this.window = window;
+        }
+    }
+
+    private final long spacing;
+    /** sorted by out */
+    private final List<Checkpoint> checkpoints = new ArrayList<>();
+    private long byteSize = 0;
+
+    /** @param uncompressedSize size of the entry. Used to calculate the distance between checkpoints */
+    public InflateCheckpoints(long uncompressedSize) {
+        this.spacing = Math.max(MIN_SPACING, uncompressedSize / MAX_CHECKPOINTS);
+    }
+
+    /** @return true if a new checkpoint should be recorded at uncompressed position out */
+    public synchronized boolean isWanted(long out) {
+        long last = checkpoints.isEmpty() ? 0 : checkpoints.get(checkpoints.size() - 1).out;
+        return out >= last + spacing;
+    }
+
+    public synchronized void add(long out, long bitPosition, @NotNull byte[] window) {
+        if (isWanted(out)) {
+            checkpoints.add(new Checkpoint(out, bitPosition, window));
+            byteSize += window.length;
+        }
+    }
+
+    /** @return the last checkpoint at or before out or null to inflate from the beginning */
+    @Nullable public synchronized Checkpoint floor(long out) {
+        int low = 0;
+        int high = checkpoints.size() - 1;
+        Checkpoint result = null;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            Checkpoint checkpoint = checkpoints.get(mid);
+            if (checkpoint.out <= out) {
+                result = checkpoint;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /** @return approximate memory used by the checkpoints */
+    public synchronized long getByteSize() {
+        return byteSize;
+    }
+
+    public synchronized int size() {
+        return checkpoints.size();
+    }
+}
@@ -0,0 +1,248 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static de.k3b.zip2saf.index.ZipIndexFile.*;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * {@link ZipIndex} that is used in place from a (memory mapped) buffer
+ * in {@link ZipIndexFile} format (android independent).
+ *
+ * Nothing is deserialized into heap objects except the strings that are asked for.
+ */
+public class MappedZipIndex extends ZipIndex {
+    @NotNull private final ByteBuffer buffer;
+    private final int nodeCount;
+    private final int bucketCount;
+    private final int recordsOffset;
+    private final int childStartOffset;
+    private final int childIdsOffset;
+    private final int sortedNodesOffset;
+    private final int bucketOffsetsOffset;
+    private final int maxPathBytes;
+
+    /**
+     * @throws IOException if buffer does not contain a {@link ZipIndexFile}
+     */
+    public MappedZipIndex(@NotNull ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(POS_MAGIC) != MAGIC
+                || buffer.getInt(POS_VERSION) != VERSION) {
+            throw new IOException("not a zip index file");
+        }
+        nodeCount = buffer.getInt(POS_NODE_COUNT);
+        bucketCount = buffer.getInt(POS_BUCKET_COUNT);
+        recordsOffset = buffer.getInt(POS_RECORDS);
+        childStartOffset = buffer.getInt(POS_CHILD_START);
+        childIdsOffset = buffer.getInt(POS_CHILD_IDS);
+        sortedNodesOffset = buffer.getInt(POS_SORTED_NODES);
+        bucketOffsetsOffset = buffer.getInt(POS_BUCKET_OFFSETS);
+        maxPathBytes = buffer.getInt(POS_MAX_PATH_BYTES);
+    }
+
+    /** @return size and last modified of the zip file when the index was created. See {@link ZipIndexFile#toStamp(long, long)} */
+    public String getSourceStamp() {
+        return toStamp(buffer.getLong(POS_SOURCE_SIZE), buffer.getLong(POS_SOURCE_LAST_MODIFIED));
+    }
+
+    @Override
+    public int size() {
+        return nodeCount;
+    }
+
+    @Override
+    public int find(@NotNull String zipPath) {
+        String key = canonicalize(zipPath);
+        if (key.isEmpty()) return ROOT;
+        byte[] wanted = key.getBytes(StandardCharsets.UTF_8);
+
+        // binary search for the last bucket whose first path is <= wanted
+        byte[] path = new byte[maxPathBytes];
+        int low = 0;
+        int high = bucketCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            int pos = buffer.getInt(bucketOffsetsOffset + 4 * middle);
+            int length = readVarInt(pos);
+            pos += varIntSize(length);
+            if (compare(pos, length, wanted) <= 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        int rank = low * BUCKET_SIZE;
+        int end = Math.min(rank + BUCKET_SIZE, nodeCount);
+        int pos = buffer.getInt(bucketOffsetsOffset + 4 * low);
+        for (; rank < end; rank++) {
+            long next = decodeNext(pos, rank % BUCKET_SIZE == 0, path);
+            pos = (int) (next >>> 32);
+            int length = (int) next;
+            int cmp = compare(path, length, wanted);
+            if (cmp == 0) return buffer.getInt(sortedNodesOffset + 4 * rank);
+            if (cmp > 0) break;
+        }
+        return NOT_FOUND;
+    }
+
+    @Override
+    public int getParent(int node) {
+        return buffer.getInt(record(node) + REC_PARENT);
+    }
+
+    @Override
+    public int getChildCount(int node) {
+        return buffer.getInt(childStartOffset + 4 * (node + 1)) - buffer.getInt(childStartOffset + 4 * node);
+    }
+
+    @Override
+    public int getChild(int node, int position) {
+        return buffer.getInt(childIdsOffset + 4 * (buffer.getInt(childStartOffset + 4 * node) + position));
+    }
+
+    @NotNull
+    @Override
+    public String getName(int node) {
+        byte[] path = new byte[maxPathBytes];
+        int length = decodePath(buffer.getInt(record(node) + REC_RANK), path);
+        int start = length;
+        while (start > 0 && path[start - 1] != '/') start--;
+        return new String(path, start, length - start, StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    @Override
+    public String getPath(int node) {
+        if (node == ROOT) return "";
+        byte[] path = new byte[maxPathBytes];
+        int length = decodePath(buffer.getInt(record(node) + REC_RANK), path);
+        String result = new String(path, 0, length, StandardCharsets.UTF_8);
+        return isDirectory(node) ? result + "/" : result;
+    }
+
+    @Override
+    public boolean isDirectory(int node) {
+        return (buffer.getShort(record(node) + REC_FLAGS) & FLAG_DIRECTORY) != 0;
+    }
+
+    @Override
+    public long getSize(int node) {
+        return buffer.getLong(record(node) + REC_SIZE);
+    }
+
+    @Override
+    public long getCompressedSize(int node) {
+        return buffer.getLong(record(node) + REC_COMPRESSED_SIZE);
+    }
+
+    @Override
+    public long getCrc(int node) {
+        return buffer.getInt(record(node) + REC_CRC) & 0xffffffffL;
+    }
+
+    @Override
+    public long getLastModified(int node) {
+        return buffer.getLong(record(node) + REC_LAST_MODIFIED);
+    }
+
+    @Override
+    public int getMethod(int node) {
+        return buffer.getShort(record(node) + REC_METHOD) & 0xffff;
+    }
+
+    @Override
+    public long getLocalHeaderOffset(int node) {
+        return buffer.getLong(record(node) + REC_LOCAL_HEADER_OFFSET);
+    }
+
+    @Override
+    public boolean isEncrypted(int node) {
+        return (buffer.getShort(record(node) + REC_FLAGS) & FLAG_ENCRYPTED) != 0;
+    }
+
+    private int record(int node) {
+        return recordsOffset + RECORD_SIZE * node;
+    }
+
+    /** @return length of the path with sort position rank copied into path */
+    private int decodePath(int rank, byte[] path) {
+        int bucket = rank / BUCKET_SIZE;
+        int pos = buffer.getInt(bucketOffsetsOffset + 4 * bucket);
+        int length = 0;
+        for (int i = bucket * BUCKET_SIZE; i <= rank; i++) {
+            long next = decodeNext(pos, i == bucket * BUCKET_SIZE, path);
+            pos = (int) (next >>> 32);
+            length = (int) next;
+        }
+        return length;
+    }
+
+    /**
+     * decode one front coded path at pos into path that contains the previous path of the same bucket.
+     *
+     * @return position of the next path in the upper 32 bits and the decoded length in the lower 32 bits
+     */
+    private long decodeNext(int pos, boolean first, byte[] path) {
+        int shared = 0;
+        if (!first) {
+            shared = readVarInt(pos);
+            pos += varIntSize(shared);
+        }
+        int suffix = readVarInt(pos);
+        pos += varIntSize(suffix);
+        for (int i = 0; i < suffix; i++) {
+            path[shared + i] = buffer.get(pos + i);
+        }
+        return ((long) (pos + suffix) << 32) | (shared + suffix);
+    }
+
+    private int readVarInt(int pos) {
+        int result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(pos++);
+            result |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return result;
+    }
+
+    /** compare the length bytes at buffer position pos with wanted */
+    private int compare(int pos, int length, byte[] wanted) {
+        int common = Math.min(length, wanted.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = (buffer.get(pos + i) & 0xff) - (wanted[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return length - wanted.length;
+    }
+
+    private static int compare(byte[] path, int length, byte[] wanted) {
+        return ZipIndexFile.compare(path, length, wanted, wanted.length);
+    }
+}
@@ -0,0 +1,419 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In memory {@link ZipIndex} (android independent).
+ *
+ * Compact path tree: every node has an int parent and an interned name segment,
+ * so a name that appears in many directories (i.e. "thumbs", "index.html") exists only once.
+ * All entry fields are kept in primitive arrays instead of one object per entry.
+ * {@link #find(String)} walks the segments of the path through a (parent, segment) -> node
+ * hash table without creating substrings.
+ *
+ * Children are stored as one int array per index (compressed sparse row):
+ * the children of node n are childIds[childStart[n] .. childStart[n + 1]).
+ */
+public class MemoryZipIndex extends ZipIndex {
+    @NotNull private final SegmentPool segments;
+    @NotNull private final NodeTable nodeTable;
+    @NotNull private final int[] nameIds;
+    @NotNull private final int[] parents;
+    @NotNull private final boolean[] directories;
+    @NotNull private final long[] sizes;
+    @NotNull private final long[] compressedSizes;
+    @NotNull private final long[] crcs;
+    @NotNull private final long[] lastModifieds;
+    @NotNull private final int[] methods;
+    @NotNull private final long[] localHeaderOffsets;
+    @NotNull private final boolean[] encrypteds;
+    @NotNull private final int[] childStart;
+    @NotNull private final int[] childIds;
+
+    private MemoryZipIndex(@NotNull Builder builder, boolean copyTables) {
+        int count = builder.count;
+        segments = copyTables ? builder.segments.copy() : builder.segments;
+        nodeTable = copyTables ? builder.nodeTable.copy() : builder.nodeTable;
+        nameIds = Arrays.copyOf(builder.nameIds, count);
+        parents = Arrays.copyOf(builder.parents, count);
+        directories = Arrays.copyOf(builder.directories, count);
+        sizes = Arrays.copyOf(builder.sizes, count);
+        compressedSizes = Arrays.copyOf(builder.compressedSizes, count);
+        crcs = Arrays.copyOf(builder.crcs, count);
+        lastModifieds = Arrays.copyOf(builder.lastModifieds, count);
+        methods = Arrays.copyOf(builder.methods, count);
+        localHeaderOffsets = Arrays.copyOf(builder.localHeaderOffsets, count);
+        encrypteds = Arrays.copyOf(builder.encrypteds, count);
+        childStart = new int[count + 1];
+        childIds = new int[Math.max(0, count - 1)];
+
+        for (int node = 1; node < count; node++) {
+            childStart[parents[node] + 1]++;
+        }
+        for (int node = 0; node < count; node++) {
+            childStart[node + 1] += childStart[node];
+        }
+        int[] fill = new int[count];
+        for (int node = 1; node < count; node++) {
+            int parent = parents[node];
+            childIds[childStart[parent] + fill[parent]++] = node;
+        }
+    }
+
+    @NotNull public static MemoryZipIndex create(@NotNull List<ZipEntryInfo> entries) {
+        Builder builder = new Builder();
+        for (ZipEntryInfo entry : entries) {
+            builder.add(entry);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int size() {
+        return nameIds.length;
+    }
+
+    @Override
+    public int find(@NotNull String zipPath) {
+        int node = ROOT;
+        int start = 0;
+        int length = zipPath.length();
+        while (start < length && node != NOT_FOUND) {
+            int end = zipPath.indexOf('/', start);
+            if (end < 0) end = length;
+            if (end > start) {
+                int nameId = segments.find(zipPath, start, end);
+                node = (nameId < 0) ? NOT_FOUND : nodeTable.get(node, nameId);
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    @Override
+    public int getParent(int node) {
+        return parents[node];
+    }
+
+    @Override
+    public int getChildCount(int node) {
+        return childStart[node + 1] - childStart[node];
+    }
+
+    @Override
+    public int getChild(int node, int position) {
+        return childIds[childStart[node] + position];
+    }
+
+    @NotNull
+    @Override
+    public String getName(int node) {
+        return segments.get(nameIds[node]);
+    }
+
+    @Override
+    public boolean isDirectory(int node) {
+        return directories[node];
+    }
+
+    @Override
+    public long getSize(int node) {
+        return sizes[node];
+    }
+
+    @Override
+    public long getCompressedSize(int node) {
+        return compressedSizes[node];
+    }
+
+    @Override
+    public long getCrc(int node) {
+        return crcs[node];
+    }
+
+    @Override
+    public long getLastModified(int node) {
+        return lastModifieds[node];
+    }
+
+    @Override
+    public int getMethod(int node) {
+        return methods[node];
+    }
+
+    @Override
+    public long getLocalHeaderOffset(int node) {
+        return localHeaderOffsets[node];
+    }
+
+    @Override
+    public boolean isEncrypted(int node) {
+        return encrypteds[node];
+    }
+
+    /** @return number of different names. Less than {@link #size()} if names repeat. */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    /** Collects {@link ZipEntryInfo}s in archive order and creates the directory tree */
+    public static class Builder {
+        private final SegmentPool segments = new SegmentPool();
+        private final NodeTable nodeTable = new NodeTable();
+        private int count = 0;
+        private int[] nameIds = new int[64];
+        private int[] parents = new int[64];
+        private boolean[] directories = new boolean[64];
+        /** false for {@link #ROOT} and for implied directories */
+        private boolean[] hasEntry = new boolean[64];
+        private long[] sizes = new long[64];
+        private long[] compressedSizes = new long[64];
+        private long[] crcs = new long[64];
+        private long[] lastModifieds = new long[64];
+        private int[] methods = new int[64];
+        private long[] localHeaderOffsets = new long[64];
+        private boolean[] encrypteds = new boolean[64];
+
+        public Builder() {
+            createNode(segments.intern("", 0, 0), NOT_FOUND, true);
+        }
+
+        /** duplicate entries are ignored: the first one wins */
+        @NotNull public Builder add(@NotNull ZipEntryInfo entry) {
+            String path = entry.fileName;
+            int length = path.length();
+            int node = ROOT;
+            int start = 0;
+            boolean created = false;
+            while (start < length) {
+                int end = path.indexOf('/', start);
+                if (end < 0) end = length;
+                if (end > start) {
+                    int nameId = segments.intern(path, start, end);
+                    int child = nodeTable.get(node, nameId);
+                    created = (child == NOT_FOUND);
+                    if (created) {
+                        // intermediate segments are implied directories
+                        child = createNode(nameId, node, true);
+                        nodeTable.put(node, nameId, child);
+                    }
+                    node = child;
+                }
+                start = end + 1;
+            }
+            if (node == ROOT) return this;
+
+            if (created) {
+                directories[node] = entry.isDirectory();
+                setEntry(node, entry);
+            } else if (!hasEntry[node] && entry.isDirectory()) {
+                // implied directory gets its own entry
+                setEntry(node, entry);
+            }
+            return this;
+        }
+
+        @NotNull public MemoryZipIndex build() {
+            return new MemoryZipIndex(this, false);
+        }
+
+        /** @return index of the entries added so far. The builder can still be used afterwards. */
+        @NotNull public MemoryZipIndex snapshot() {
+            return new MemoryZipIndex(this, true);
+        }
+
+        /** @return number of nodes so far */
+        public int size() {
+            return count;
+        }
+
+        private void setEntry(int node, @NotNull ZipEntryInfo entry) {
+            hasEntry[node] = true;
+            sizes[node] = entry.uncompressedSize;
+            compressedSizes[node] = entry.compressedSize;
+            crcs[node] = entry.crc;
+            lastModifieds[node] = entry.lastModified;
+            methods[node] = entry.method;
+            localHeaderOffsets[node] = entry.localHeaderOffset;
+            encrypteds[node] = entry.encrypted;
+        }
+
+        private int createNode(int nameId, int parent, boolean isDirectory) {
+            if (count == nameIds.length) grow();
+            nameIds[count] = nameId;
+            parents[count] = parent;
+            directories[count] = isDirectory;
+            methods[count] = ZipEntryInfo.METHOD_STORED;
+            localHeaderOffsets[count] = ZipEntryInfo.OFFSET_UNKNOWN;
+            return count++;
+        }
+
+        private void grow() {
+            int capacity = nameIds.length * 2;
+            nameIds = Arrays.copyOf(nameIds, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            directories = Arrays.copyOf(directories, capacity);
+            hasEntry = Arrays.copyOf(hasEntry, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+            crcs = Arrays.copyOf(crcs, capacity);
+            lastModifieds = Arrays.copyOf(lastModifieds, capacity);
+            methods = Arrays.copyOf(methods, capacity);
+            localHeaderOffsets = Arrays.copyOf(localHeaderOffsets, capacity);
+            encrypteds = Arrays.copyOf(encrypteds, capacity);
+        }
+    }
+
+    /** interned name segments. Lookup of a part of a string without creating a substring. */
+    static class SegmentPool {
+        private String[] segments = new String[64];
+        private int count = 0;
+        /** open addressing: segment id + 1 or 0 if empty */
+        private int[] table = new int[128];
+
+        int size() {
+            return count;
+        }
+
+        @NotNull SegmentPool copy() {
+            SegmentPool result = new SegmentPool();
+            result.segments = Arrays.copyOf(segments, segments.length);
+            result.count = count;
+            result.table = Arrays.copyOf(table, table.length);
+            return result;
+        }
+
+        @NotNull String get(int id) {
+            return segments[id];
+        }
+
+        /** @return id of s[start, end) or -1 if unknown */
+        int find(@NotNull String s, int start, int end) {
+            int mask = table.length - 1;
+            for (int slot = hash(s, start, end) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                String candidate = segments[table[slot] - 1];
+                if (candidate.length() == end - start && candidate.regionMatches(0, s, start, end - start)) {
+                    return table[slot] - 1;
+                }
+            }
+            return -1;
+        }
+
+        /** @return id of s[start, end). Added if unknown */
+        int intern(@NotNull String s, int start, int end) {
+            int id = find(s, start, end);
+            if (id >= 0) return id;
+
+            if (count == segments.length) segments = Arrays.copyOf(segments, count * 2);
+            segments[count] = s.substring(start, end);
+            if ((count + 1) * 2 > table.length) rehash(table.length * 2);
+            insert(count);
+            return count++;
+        }
+
+        private void insert(int id) {
+            String segment = segments[id];
+            int mask = table.length - 1;
+            int slot = hash(segment, 0, segment.length()) & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int id = 0; id < count; id++) insert(id);
+        }
+
+        /** same as {@link String#hashCode()} of the substring, spread */
+        private static int hash(String s, int start, int end) {
+            int h = 0;
+            for (int i = start; i < end; i++) h = 31 * h + s.charAt(i);
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /** (parent node, name segment id) -> child node */
+    static class NodeTable {
+        private static final long EMPTY = -1;
+        private long[] keys = newKeys(128);
+        private int[] values = new int[128];
+        private int count = 0;
+
+        @NotNull NodeTable copy() {
+            NodeTable result = new NodeTable();
+            result.keys = Arrays.copyOf(keys, keys.length);
+            result.values = Arrays.copyOf(values, values.length);
+            result.count = count;
+            return result;
+        }
+
+        int get(int parent, int nameId) {
+            long key = toKey(parent, nameId);
+            int mask = keys.length - 1;
+            for (int slot = hash(key) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return values[slot];
+            }
+            return NOT_FOUND;
+        }
+
+        void put(int parent, int nameId, int node) {
+            if ((count + 1) * 2 > keys.length) rehash(keys.length * 2);
+            insert(toKey(parent, nameId), node);
+            count++;
+        }
+
+        private void insert(long key, int node) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            values[slot] = node;
+        }
+
+        private void rehash(int capacity) {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = newKeys(capacity);
+            values = new int[capacity];
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldKeys[slot] != EMPTY) insert(oldKeys[slot], oldValues[slot]);
+            }
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] result = new long[capacity];
+            Arrays.fill(result, EMPTY);
+            return result;
+        }
+
+        private static long toKey(int parent, int nameId) {
+            return ((long) parent << 32) | (nameId & 0xffffffffL);
+        }
+
+        private static int hash(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+}
@@ -0,0 +1,314 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Case insensitive substring search over the names of all entries of a {@link ZipIndex}
+ * (android independent) that never reads the zip itself.
+ *
+ * Every name is split into trigrams ("abcd" -> "abc", "bcd"). For every trigram there is
+ * a sorted list of the nodes whose name contains it, stored as varint encoded deltas.
+ * A query is answered by intersecting the lists of its trigrams and verifying the few candidates.
+ *
+ * For queries shorter than a trigram there are lists of all single chars and char pairs and
+ * of the first char and first char pair of every name, so they are answered without reading any name.
+ */
+public class NameSearchIndex {
+    private static final int GRAM = 3;
+    /** key bits above the chars: gram length, plus GRAM for the grams at the start of a name */
+    private static final int KIND_SHIFT = 48;
+    private static final long EMPTY = -1;
+    private static final int MIN_CAPACITY = 1 << 12;
+
+    @NotNull private final ZipIndex index;
+
+    /** open addressing hash table: trigram key -> posting list */
+    private final long[] keys;
+    private final int[] counts;
+    private final int[] offsets;
+    /** all posting lists */
+    private final byte[] postings;
+
+    private NameSearchIndex(@NotNull ZipIndex index, long[] keys, int[] counts, int[] offsets, byte[] postings) {
+        this.index = index;
+        this.keys = keys;
+        this.counts = counts;
+        this.offsets = offsets;
+        this.postings = postings;
+    }
+
+    /** two passes over all names so that no name has to be kept in memory */
+    @NotNull public static NameSearchIndex create(@NotNull ZipIndex index) {
+        int capacity = MIN_CAPACITY;
+        NameSearchIndex result;
+        while ((result = create(index, capacity)) == null) {
+            capacity *= 2;
+        }
+        return result;
+    }
+
+    /** @return null if there are more grams than capacity / 2 */
+    @Nullable private static NameSearchIndex create(@NotNull ZipIndex index, int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        int[] counts = new int[capacity];
+        int[] offsets = new int[capacity + 1];
+        int[] lastNode = new int[capacity];
+        int used = 0;
+        long[] nameKeys = new long[64];
+
+        // pass 1: find all grams and the byte size of their posting lists
+        int size = index.size();
+        for (int node = 1; node < size; node++) {
+            String name = normalize(index.getName(node));
+            nameKeys = ensureCapacity(nameKeys, name);
+            int keyCount = getKeys(name, nameKeys);
+            for (int i = 0; i < keyCount; i++) {
+                long key = nameKeys[i];
+                int slot = find(keys, key);
+                if (keys[slot] == EMPTY) {
+                    if (++used * 2 > capacity) return null;
+                    keys[slot] = key;
+                }
+                if (lastNode[slot] != node) {
+                    counts[slot]++;
+                    offsets[slot + 1] += varIntSize(node - lastNode[slot]);
+                    lastNode[slot] = node;
+                }
+            }
+        }
+        for (int slot = 0; slot < capacity; slot++) {
+            offsets[slot + 1] += offsets[slot];
+        }
+
+        // pass 2: write the posting lists
+        byte[] postings = new byte[offsets[capacity]];
+        int[] pos = Arrays.copyOf(offsets, capacity);
+        Arrays.fill(lastNode, 0);
+        for (int node = 1; node < size; node++) {
+            String name = normalize(index.getName(node));
+            nameKeys = ensureCapacity(nameKeys, name);
+            int keyCount = getKeys(name, nameKeys);
+            for (int i = 0; i < keyCount; i++) {
+                int slot = find(keys, nameKeys[i]);
+                if (lastNode[slot] != node) {
+                    pos[slot] = writeVarInt(postings, pos[slot], node - lastNode[slot]);
+                    lastNode[slot] = node;
+                }
+            }
+        }
+        return new NameSearchIndex(index, keys, counts, offsets, postings);
+    }
+
+    /** @return true if this was created from index */
+    public boolean isFor(@NotNull ZipIndex index) {
+        return this.index == index;
+    }
+
+    /**
+     * @param query case insensitive part of the name
+     * @param limit max number of results
+     * @return nodes whose name contains query. Names that start with query come first.
+     */
+    @NotNull public int[] search(@NotNull String query, int limit) {
+        String q = normalize(query);
+        if (q.isEmpty() || limit <= 0) return new int[0];
+
+        if (q.length() < GRAM) return searchShort(q, limit);
+
+        List<Integer> prefixMatches = new ArrayList<>();
+        List<Integer> otherMatches = new ArrayList<>();
+        for (int node : getCandidates(q)) {
+            addIfMatches(node, q, prefixMatches, otherMatches);
+            if (prefixMatches.size() >= limit) break;
+        }
+
+        int count = Math.min(limit, prefixMatches.size() + otherMatches.size());
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = (i < prefixMatches.size()) ? prefixMatches.get(i) : otherMatches.get(i - prefixMatches.size());
+        }
+        return result;
+    }
+
+    /** q has less chars than a trigram: its posting lists are exact, no name has to be verified */
+    @NotNull private int[] searchShort(String q, int limit) {
+        int[] prefixMatches = decode(find(keys, toKey(q, 0, q.length(), true)), limit);
+        int slot = find(keys, toKey(q, 0, q.length(), false));
+        // every prefix match is also in the list of slot
+        int[] result = Arrays.copyOf(prefixMatches, Math.min(limit, counts[slot]));
+        int count = prefixMatches.length;
+
+        int pos = offsets[slot];
+        int node = 0;
+        for (int i = 0; i < counts[slot] && count < limit; i++) {
+            long value = readVarInt(postings, pos);
+            node += (int) value;
+            pos = (int) (value >>> 32);
+            if (Arrays.binarySearch(prefixMatches, node) < 0) result[count++] = node;
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private void addIfMatches(int node, String q, List<Integer> prefixMatches, List<Integer> otherMatches) {
+        String name = normalize(index.getName(node));
+        if (name.startsWith(q)) {
+            prefixMatches.add(node);
+        } else if (name.contains(q)) {
+            otherMatches.add(node);
+        }
+    }
+
+    /** @return nodes that contain all trigrams of q */
+    @NotNull private int[] getCandidates(String q) {
+        int gramCount = q.length() - GRAM + 1;
+        int[] slots = new int[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            int slot = find(keys, toKey(q, i, GRAM, false));
+            if (keys[slot] == EMPTY) return new int[0];
+            slots[i] = slot;
+        }
+        // intersect the shortest lists first
+        Integer[] order = new Integer[gramCount];
+        for (int i = 0; i < gramCount; i++) order[i] = slots[i];
+        Arrays.sort(order, (a, b) -> Integer.compare(counts[a], counts[b]));
+
+        int[] candidates = decode(order[0]);
+        int candidateCount = candidates.length;
+        for (int i = 1; i < gramCount && candidateCount > 0; i++) {
+            int slot = order[i];
+            if (slot == order[i - 1]) continue; // same trigram twice in q
+            candidateCount = intersect(candidates, candidateCount, slot);
+        }
+        return Arrays.copyOf(candidates, candidateCount);
+    }
+
+    private int[] decode(int slot) {
+        return decode(slot, Integer.MAX_VALUE);
+    }
+
+    /** @return the first max nodes of the posting list of slot */
+    private int[] decode(int slot, int max) {
+        int[] result = new int[Math.min(counts[slot], max)];
+        int pos = offsets[slot];
+        int node = 0;
+        for (int i = 0; i < result.length; i++) {
+            long value = readVarInt(postings, pos);
+            node += (int) value;
+            pos = (int) (value >>> 32);
+            result[i] = node;
+        }
+        return result;
+    }
+
+    /** keeps the candidates that are also in the posting list of slot */
+    private int intersect(int[] candidates, int candidateCount, int slot) {
+        int pos = offsets[slot];
+        int end = offsets[slot + 1];
+        int node = 0;
+        int kept = 0;
+        int c = 0;
+        while (c < candidateCount && pos < end) {
+            long value = readVarInt(postings, pos);
+            node += (int) value;
+            pos = (int) (value >>> 32);
+            while (c < candidateCount && candidates[c] < node) c++;
+            if (c < candidateCount && candidates[c] == node) candidates[kept++] = candidates[c++];
+        }
+        return kept;
+    }
+
+    @NotNull private static String normalize(@NotNull String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /** @param atStart true: key of a gram that starts a name */
+    private static long toKey(String s, int start, int length, boolean atStart) {
+        long key = 0;
+        for (int i = 0; i < length; i++) {
+            key = key << 16 | s.charAt(start + i);
+        }
+        return key | (long) (atStart ? length + GRAM : length) << KIND_SHIFT;
+    }
+
+    /** @return number of keys of all grams of name that were written to result */
+    private static int getKeys(String name, long[] result) {
+        int count = 0;
+        for (int length = 1; length <= GRAM; length++) {
+            for (int i = 0; i + length <= name.length(); i++) {
+                result[count++] = toKey(name, i, length, false);
+            }
+            if (length < GRAM && length <= name.length()) {
+                result[count++] = toKey(name, 0, length, true);
+            }
+        }
+        return count;
+    }
+
+    private static long[] ensureCapacity(long[] keys, String name) {
+        int needed = GRAM * name.length() + GRAM - 1;
+        return (keys.length >= needed) ? keys : new long[needed];
+    }
+
+    private static int find(long[] keys, long key) {
+        int mask = keys.length - 1;
+        int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+        while (keys[slot] != EMPTY && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static int varIntSize(int value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) size++;
+        return size;
+    }
+
+    private static int writeVarInt(byte[] buffer, int pos, int value) {
+        while ((value & ~0x7f) != 0) {
+            buffer[pos++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        buffer[pos++] = (byte) value;
+        return pos;
+    }
+
+    /** @return value | next pos << 32 */
+    private static long readVarInt(byte[] buffer, int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer[pos++];
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (value & 0xffffffffL) | ((long) pos << 32);
+    }
+}
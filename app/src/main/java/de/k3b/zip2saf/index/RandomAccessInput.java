@@ -0,0 +1,38 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * (android independent) source of a zip file that supports positioned reads.
+ */
+public interface RandomAccessInput extends Closeable {
+    /** @return total number of bytes in the source */
+    long length() throws IOException;
+
+    /**
+     * Read up to len bytes starting at position without changing any shared file position.
+     *
+     * @return number of bytes read or -1 if position is at or behind the end of the source.
+     */
+    int read(long position, byte[] buffer, int offset, int len) throws IOException;
+}
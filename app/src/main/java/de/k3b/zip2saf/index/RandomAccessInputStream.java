@@ -0,0 +1,71 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * {@link InputStream} that reads the byte range [start, start + length) of a {@link RandomAccessInput}.
+ *
+ * Closing this stream does not close the underlying {@link RandomAccessInput}.
+ */
+public class RandomAccessInputStream extends InputStream {
+    @NotNull private final RandomAccessInput input;
+    private long position;
+    private final long end;
+
+    public RandomAccessInputStream(@NotNull RandomAccessInput input, long start, long length) {
+        this.input = input;
+        this.position = start;
+        this.end = start + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        int len = read(one, 0, 1);
+        return (len <= 0) ? -1 : (one[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int len) throws IOException {
+        if (len == 0) return 0;
+        long remaining = end - position;
+        if (remaining <= 0) return -1;
+        int result = input.read(position, buffer, offset, (int) Math.min(len, remaining));
+        if (result > 0) position += result;
+        return result;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = Math.max(0, Math.min(n, end - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, end - position));
+    }
+}
@@ -0,0 +1,58 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * {@link RandomAccessInput} on the byte range [start, start + length) of another
+ * {@link RandomAccessInput}. I.E. the content of a STORED zip entry.
+ *
+ * Closing the window also closes the underlying input.
+ */
+public class RandomAccessInputWindow implements RandomAccessInput {
+    @NotNull private final RandomAccessInput input;
+    private final long start;
+    private final long length;
+
+    public RandomAccessInputWindow(@NotNull RandomAccessInput input, long start, long length) {
+        this.input = input;
+        this.start = start;
+        this.length = length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int len) throws IOException {
+        if (position >= length) return -1;
+        return input.read(start + position, buffer, offset, (int) Math.min(len, length - position));
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
@@ -0,0 +1,461 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.zip.ZipException;
+
+/**
+ * Raw deflate decoder (android independent) that, unlike {@link java.util.zip.Inflater},
+ * knows the bit position of every deflate block and can resume decoding at a
+ * {@link InflateCheckpoints.Checkpoint}. See zlib/examples/zran.c for the idea.
+ *
+ * Not thread safe.
+ */
+public class SeekableInflater {
+    static final int WINDOW_SIZE = 32 * 1024;
+    private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BITS = 15;
+    private static final int FAST_BITS = 9;
+    private static final int FAST_MASK = (1 << FAST_BITS) - 1;
+    /** zero bytes that may be appended at the end of input so that {@link #decode(Huffman)} can peek */
+    private static final int MAX_PADDING = 4;
+
+    private static final int MODE_HEADER = 0;
+    private static final int MODE_STORED = 1;
+    private static final int MODE_CODES = 2;
+    private static final int MODE_DONE = 3;
+
+    private static final short[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31,
+            35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final byte[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2,
+            3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DIST_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193,
+            257, 385, 513, 769, 1025, 1537, 2049, 3073, 4097, 6145, 8193, 12289, 16385, 24577};
+    private static final byte[] DIST_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6,
+            7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+    /** order of the code length code lengths in a dynamic block header */
+    private static final byte[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+
+    private static final Huffman FIXED_LITERALS;
+    private static final Huffman FIXED_DISTANCES;
+
+    static {
+        byte[] lengths = new byte[288 + 30];
+        for (int i = 0; i < 288; i++) {
+            lengths[i] = (byte) (i < 144 ? 8 : i < 256 ? 9 : i < 280 ? 7 : 8);
+        }
+        for (int i = 288; i < lengths.length; i++) {
+            lengths[i] = 5;
+        }
+        try {
+            FIXED_LITERALS = new Huffman(lengths, 0, 288);
+            FIXED_DISTANCES = new Huffman(lengths, 288, 30);
+        } catch (ZipException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull private final RandomAccessInput in;
+    @Nullable private final InflateCheckpoints checkpoints;
+
+    private final byte[] inBuffer = new byte[BUFFER_SIZE];
+    /** position of inBuffer[0] in in */
+    private long inBufferStart;
+    private int inBufferLength;
+    private int inPos;
+    private int padding;
+    private long bitBuffer;
+    private int bitCount;
+    /** bits of the first byte that belong to the block before the checkpoint */
+    private int pendingDrop;
+
+    private final byte[] window = new byte[WINDOW_SIZE];
+    private int windowPos;
+    private long totalOut;
+
+    private int mode;
+    private boolean lastBlock;
+    private int storedLeft;
+    private Huffman literals;
+    private Huffman distances;
+    /** pending back reference that did not fit into the previous output buffer */
+    private int copyLength;
+    private int copyDistance;
+
+    private final byte[] lengths = new byte[288 + 32];
+
+    /**
+     * @param in compressed raw deflate data, i.e. the content of a DEFLATED zip entry.
+     * @param checkpoints if not null new checkpoints are recorded while inflating.
+     */
+    public SeekableInflater(@NotNull RandomAccessInput in, @Nullable InflateCheckpoints checkpoints) {
+        this.in = in;
+        this.checkpoints = checkpoints;
+        reset(null);
+    }
+
+    /** continue inflating at checkpoint or at the beginning if checkpoint is null */
+    public void reset(@Nullable InflateCheckpoints.Checkpoint checkpoint) {
+        long bitPosition = (checkpoint == null) ? 0 : checkpoint.bitPosition;
+        inBufferStart = bitPosition >>> 3;
+        inBufferLength = 0;
+        inPos = 0;
+        padding = 0;
+        bitBuffer = 0;
+        bitCount = 0;
+        pendingDrop = (int) (bitPosition & 7);
+
+        totalOut = (checkpoint == null) ? 0 : checkpoint.out;
+        windowPos = 0;
+        if (checkpoint != null) {
+            System.arraycopy(checkpoint.window, 0, window, 0, checkpoint.window.length);
+            windowPos = checkpoint.window.length & WINDOW_MASK;
+        }
+
+        mode = MODE_HEADER;
+        lastBlock = false;
+        storedLeft = 0;
+        literals = null;
+        distances = null;
+        copyLength = 0;
+    }
+
+    /** @return number of uncompressed bytes produced so far */
+    public long getTotalOut() {
+        return totalOut;
+    }
+
+    /** skips uncompressed bytes until {@link #getTotalOut()} is out */
+    public void skipTo(long out) throws IOException {
+        byte[] scratch = null;
+        while (totalOut < out) {
+            if (scratch == null) scratch = new byte[(int) Math.min(BUFFER_SIZE, out - totalOut)];
+            if (inflate(scratch, 0, (int) Math.min(scratch.length, out - totalOut)) < 0) {
+                throw new EOFException("cannot skip to " + out + ": deflated content ends at " + totalOut);
+            }
+        }
+    }
+
+    /** @return number of bytes inflated into out or -1 at the end of the deflate stream */
+    public int inflate(byte[] out, int offset, int len) throws IOException {
+        if (pendingDrop > 0) {
+            bits(pendingDrop);
+            pendingDrop = 0;
+        }
+        final int start = offset;
+        final int end = offset + len;
+        while (offset < end) {
+            if (copyLength > 0) {
+                offset = copyMatch(out, offset, end);
+                continue;
+            }
+            switch (mode) {
+                case MODE_HEADER:
+                    if (lastBlock) {
+                        mode = MODE_DONE;
+                    } else {
+                        if (checkpoints != null && checkpoints.isWanted(totalOut)) {
+                            checkpoints.add(totalOut, getBitPosition(), getWindow());
+                        }
+                        readBlockHeader();
+                    }
+                    break;
+                case MODE_STORED:
+                    if (storedLeft == 0) {
+                        mode = MODE_HEADER;
+                    } else {
+                        offset = copyStored(out, offset, end);
+                    }
+                    break;
+                case MODE_CODES:
+                    offset = inflateCodes(out, offset, end);
+                    break;
+                default: // MODE_DONE
+                    return (offset == start) ? -1 : offset - start;
+            }
+        }
+        return offset - start;
+    }
+
+    /** position of the next unread bit of the compressed input */
+    private long getBitPosition() {
+        return (inBufferStart + inPos + padding) * 8 - bitCount;
+    }
+
+    /** @return the last (up to) {@link #WINDOW_SIZE} uncompressed bytes in natural order */
+    private byte[] getWindow() {
+        int size = (int) Math.min(totalOut, WINDOW_SIZE);
+        byte[] result = new byte[size];
+        int first = (windowPos - size) & WINDOW_MASK;
+        int tail = Math.min(size, WINDOW_SIZE - first);
+        System.arraycopy(window, first, result, 0, tail);
+        System.arraycopy(window, 0, result, tail, size - tail);
+        return result;
+    }
+
+    private void readBlockHeader() throws IOException {
+        lastBlock = bits(1) != 0;
+        int type = bits(2);
+        if (type == 0) {
+            bits(bitCount & 7); // skip to byte boundary
+            int length = bits(16);
+            if ((length ^ 0xffff) != bits(16)) throw new ZipException("invalid stored block length");
+            storedLeft = length;
+            mode = MODE_STORED;
+        } else if (type == 1) {
+            literals = FIXED_LITERALS;
+            distances = FIXED_DISTANCES;
+            mode = MODE_CODES;
+        } else if (type == 2) {
+            readDynamicTables();
+            mode = MODE_CODES;
+        } else {
+            throw new ZipException("invalid deflate block type");
+        }
+    }
+
+    private void readDynamicTables() throws IOException {
+        int literalCount = bits(5) + 257;
+        int distanceCount = bits(5) + 1;
+        int codeCount = bits(4) + 4;
+        if (literalCount > 286 || distanceCount > 30) throw new ZipException("invalid deflate code counts");
+
+        for (int i = 0; i < 19; i++) {
+            lengths[CODE_LENGTH_ORDER[i]] = (byte) ((i < codeCount) ? bits(3) : 0);
+        }
+        Huffman codeLengths = new Huffman(lengths, 0, 19);
+
+        int total = literalCount + distanceCount;
+        int index = 0;
+        while (index < total) {
+            int symbol = decode(codeLengths);
+            if (symbol < 16) {
+                lengths[index++] = (byte) symbol;
+            } else {
+                byte length = 0;
+                int repeat;
+                if (symbol == 16) {
+                    if (index == 0) throw new ZipException("invalid deflate code length repeat");
+                    length = lengths[index - 1];
+                    repeat = 3 + bits(2);
+                } else if (symbol == 17) {
+                    repeat = 3 + bits(3);
+                } else {
+                    repeat = 11 + bits(7);
+                }
+                if (index + repeat > total) throw new ZipException("too many deflate code lengths");
+                while (repeat-- > 0) lengths[index++] = length;
+            }
+        }
+        if (lengths[256] == 0) throw new ZipException("deflate block without end code");
+        literals = new Huffman(lengths, 0, literalCount);
+        distances = new Huffman(lengths, literalCount, distanceCount);
+    }
+
+    private int copyStored(byte[] out, int offset, int end) throws IOException {
+        int count = Math.min(storedLeft, end - offset);
+        int done = 0;
+        while (done < count) {
+            if (bitCount >= 8) {
+                // bytes that are already in the bit buffer
+                out[offset + done++] = window[windowPos] = (byte) bits(8);
+                windowPos = (windowPos + 1) & WINDOW_MASK;
+            } else {
+                if (inPos == inBufferLength) fill();
+                if (inBufferLength == 0) throw new EOFException("truncated stored deflate block");
+                int chunk = Math.min(count - done, inBufferLength - inPos);
+                System.arraycopy(inBuffer, inPos, out, offset + done, chunk);
+                for (int i = 0; i < chunk; i++) {
+                    window[windowPos] = inBuffer[inPos + i];
+                    windowPos = (windowPos + 1) & WINDOW_MASK;
+                }
+                inPos += chunk;
+                done += chunk;
+            }
+        }
+        storedLeft -= count;
+        totalOut += count;
+        return offset + count;
+    }
+
+    private int inflateCodes(byte[] out, int offset, int end) throws IOException {
+        final byte[] window = this.window;
+        int windowPos = this.windowPos;
+        final int start = offset;
+        try {
+            while (offset < end) {
+                int symbol = decode(literals);
+                if (symbol < 256) {
+                    out[offset++] = window[windowPos] = (byte) symbol;
+                    windowPos = (windowPos + 1) & WINDOW_MASK;
+                } else if (symbol == 256) {
+                    mode = MODE_HEADER;
+                    break;
+                } else {
+                    symbol -= 257;
+                    if (symbol >= LENGTH_BASE.length) throw new ZipException("invalid deflate length code");
+                    int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+                    symbol = decode(distances);
+                    if (symbol >= DIST_BASE.length) throw new ZipException("invalid deflate distance code");
+                    int distance = DIST_BASE[symbol] + bits(DIST_EXTRA[symbol]);
+                    if (distance > totalOut + (offset - start)) throw new ZipException("deflate distance too far back");
+
+                    int count = Math.min(length, end - offset);
+                    for (int i = 0; i < count; i++) {
+                        out[offset++] = window[windowPos] = window[(windowPos - distance) & WINDOW_MASK];
+                        windowPos = (windowPos + 1) & WINDOW_MASK;
+                    }
+                    copyLength = length - count;
+                    copyDistance = distance;
+                    if (copyLength > 0) break;
+                }
+            }
+        } finally {
+            this.windowPos = windowPos;
+            totalOut += offset - start;
+        }
+        return offset;
+    }
+
+    /** continues a back reference that did not fit into the previous output buffer */
+    private int copyMatch(byte[] out, int offset, int end) {
+        int count = Math.min(copyLength, end - offset);
+        for (int i = 0; i < count; i++) {
+            out[offset++] = window[windowPos] = window[(windowPos - copyDistance) & WINDOW_MASK];
+            windowPos = (windowPos + 1) & WINDOW_MASK;
+        }
+        copyLength -= count;
+        totalOut += count;
+        return offset;
+    }
+
+    private int decode(Huffman huffman) throws IOException {
+        need(MAX_BITS);
+        int entry = huffman.fast[(int) bitBuffer & FAST_MASK];
+        if (entry != 0) {
+            drop(entry & 0xf);
+            return entry >>> 4;
+        }
+
+        // canonical decoding bit by bit as in zlib/contrib/puff
+        long bits = bitBuffer;
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int len = 1; len <= MAX_BITS; len++) {
+            code |= (int) bits & 1;
+            bits >>>= 1;
+            int count = huffman.count[len];
+            if (code - count < first) {
+                drop(len);
+                return huffman.symbols[index + (code - first)];
+            }
+            index += count;
+            first = (first + count) << 1;
+            code <<= 1;
+        }
+        throw new ZipException("invalid deflate huffman code");
+    }
+
+    private int bits(int count) throws IOException {
+        if (count == 0) return 0;
+        need(count);
+        int result = (int) (bitBuffer & ((1L << count) - 1));
+        drop(count);
+        return result;
+    }
+
+    private void need(int count) throws IOException {
+        while (bitCount < count) {
+            if (inPos == inBufferLength) fill();
+            int b;
+            if (inPos < inBufferLength) {
+                b = inBuffer[inPos++] & 0xff;
+            } else if (padding < MAX_PADDING) {
+                padding++;
+                b = 0;
+            } else {
+                throw new EOFException("truncated deflate data");
+            }
+            bitBuffer |= (long) b << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private void drop(int count) throws EOFException {
+        bitBuffer >>>= count;
+        bitCount -= count;
+        if (padding != 0 && bitCount < padding * 8) throw new EOFException("truncated deflate data");
+    }
+
+    private void fill() throws IOException {
+        inBufferStart += inBufferLength;
+        inPos = 0;
+        inBufferLength = Math.max(0, in.read(inBufferStart, inBuffer, 0, inBuffer.length));
+    }
+
+    /** canonical huffman code with a lookup table for codes up to {@link #FAST_BITS} */
+    private static class Huffman {
+        final short[] count = new short[MAX_BITS + 1];
+        final short[] symbols;
+        /** indexed by the next FAST_BITS input bits: symbol << 4 | code length or 0 */
+        final int[] fast = new int[1 << FAST_BITS];
+
+        Huffman(byte[] lengths, int offset, int n) throws ZipException {
+            symbols = new short[n];
+            for (int i = 0; i < n; i++) {
+                count[lengths[offset + i]]++;
+            }
+            int left = 1;
+            for (int len = 1; len <= MAX_BITS; len++) {
+                left = (left << 1) - count[len];
+                if (left < 0) throw new ZipException("over-subscribed deflate huffman code");
+            }
+
+            short[] next = new short[MAX_BITS + 1];
+            for (int len = 1; len < MAX_BITS; len++) {
+                next[len + 1] = (short) (next[len] + count[len]);
+            }
+            for (int symbol = 0; symbol < n; symbol++) {
+                int len = lengths[offset + symbol];
+                if (len != 0) symbols[next[len]++] = (short) symbol;
+            }
+
+            int code = 0;
+            int index = 0;
+            for (int len = 1; len <= FAST_BITS; len++) {
+                for (int i = 0; i < count[len]; i++) {
+                    int entry = (symbols[index++] << 4) | len;
+                    for (int j = Integer.reverse(code) >>> (32 - len); j < fast.length; j += 1 << len) {
+                        fast[j] = entry;
+                    }
+                    code++;
+                }
+                code <<= 1;
+            }
+        }
+    }
+}
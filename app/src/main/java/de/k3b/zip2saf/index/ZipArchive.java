@@ -0,0 +1,180 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import de.k3b.zip2saf.cache.FileLruCache;
+
+/**
+ * A zip file with its {@link ZipIndex} (android independent): either the mounted zip or a zip
+ * that is an entry of another {@link ZipArchive}. Nested zips are browsed like directories.
+ *
+ * A STORED nested zip is read through a {@link RandomAccessInputWindow} into its parent.
+ * A DEFLATED nested zip is uncompressed once into a {@link FileLruCache}.
+ * The indexes of nested zips are kept in the {@link ZipIndexRepository} so the parent
+ * is neither rescanned nor inflated again on every listing.
+ */
+public class ZipArchive {
+    private static final String ZIP_EXTENSION = ".zip";
+
+    /** opens the content of the zip */
+    public interface InputOpener {
+        @NotNull RandomAccessInput open() throws IOException;
+    }
+
+    /** node of a (nested) zip file */
+    public static class Entry {
+        @NotNull public final ZipArchive archive;
+        public final int node;
+
+        Entry(@NotNull ZipArchive archive, int node) {
+            this.archive = archive;
+            this.node = node;
+        }
+    }
+
+    /** document id of the zip file: the zipId of the mount or the document id of the nested zip entry */
+    @NotNull public final String id;
+    @NotNull public final ZipIndex index;
+    @NotNull private final InputOpener opener;
+
+    public ZipArchive(@NotNull String id, @NotNull ZipIndex index, @NotNull InputOpener opener) {
+        this.id = id;
+        this.index = index;
+        this.opener = opener;
+    }
+
+    @NotNull public RandomAccessInput openInput() throws IOException {
+        return opener.open();
+    }
+
+    /** @return true if this is inside another zip */
+    public boolean isNested() {
+        return id.indexOf('/') >= 0;
+    }
+
+    /** @return true if node is a zip file that can be browsed like a directory */
+    public static boolean isNestedArchive(@NotNull ZipIndex index, int node) {
+        return ZipEntryReader.canOpen(index, node) && hasZipExtension(index.getName(node));
+    }
+
+    /** same as {@link #isNestedArchive(ZipIndex, int)} for a caller that already has the name of node */
+    public static boolean isNestedArchive(@NotNull ZipIndex index, int node, @NotNull String name) {
+        return hasZipExtension(name) && ZipEntryReader.canOpen(index, node);
+    }
+
+    private static boolean hasZipExtension(@NotNull String name) {
+        int length = ZIP_EXTENSION.length();
+        return name.regionMatches(true, name.length() - length, ZIP_EXTENSION, 0, length);
+    }
+
+    /**
+     * @param zipPath path inside this zip that may go through nested zips, i.e. "backup/inner.zip/dir/file.txt".
+     *                A nested zip with trailing "/" means its root dir.
+     * @param spoolCache where DEFLATED nested zips are uncompressed to.
+     * @param mountId of the outermost zip for the spoolCache
+     * @return the entry or null if not found
+     */
+    @Nullable public Entry find(@NotNull String zipPath, @NotNull FileLruCache spoolCache, @NotNull String mountId)
+            throws IOException {
+        ZipArchive archive = this;
+        String rest = zipPath;
+        while (true) {
+            int node = archive.index.find(rest);
+            if (node != ZipIndex.NOT_FOUND && !(rest.endsWith("/") && isNestedArchive(archive.index, node))) {
+                return new Entry(archive, node);
+            }
+
+            // find the first nested zip on the path
+            ZipArchive nested = null;
+            for (int slash = rest.indexOf('/'); nested == null && slash >= 0; slash = rest.indexOf('/', slash + 1)) {
+                String prefix = rest.substring(0, slash);
+                int prefixNode = archive.index.find(prefix);
+                if (prefixNode == ZipIndex.NOT_FOUND) return null;
+                if (isNestedArchive(archive.index, prefixNode)) {
+                    nested = archive.openNested(prefix, prefixNode, spoolCache, mountId);
+                    if (nested == null) return null;
+                    rest = rest.substring(slash + 1);
+                }
+            }
+            if (nested == null) return null;
+            archive = nested;
+        }
+    }
+
+    /** @return the zip in node or null if it is too big for the spoolCache */
+    @Nullable private ZipArchive openNested(@NotNull String zipPath, int node, @NotNull FileLruCache spoolCache,
+                                            @NotNull String mountId) throws IOException {
+        String nestedId = id + "/" + zipPath;
+        // crc so that a changed parent is never mixed up with an outdated nested index
+        String key = nestedId + ":" + index.getCrc(node) + ":" + index.getSize(node);
+
+        InputOpener nestedOpener;
+        if (index.getMethod(node) == ZipEntryInfo.METHOD_STORED) {
+            nestedOpener = () -> ZipEntryReader.openStored(openInput(), index, node);
+        } else {
+            File spooled = spool(key, node, spoolCache, mountId);
+            if (spooled == null) return null;
+            nestedOpener = () -> {
+                FileInputStream stream = new FileInputStream(spooled);
+                return new FileChannelInput(stream.getChannel(), stream);
+            };
+        }
+
+        ZipIndexRepository repository = ZipIndexRepository.getInstance();
+        ZipIndex nestedIndex = repository.get(key);
+        if (nestedIndex == null) {
+            try (RandomAccessInput input = nestedOpener.open()) {
+                nestedIndex = MemoryZipIndex.create(ZipCentralDirectoryReader.read(input));
+            }
+            repository.put(key, nestedIndex);
+        }
+        return new ZipArchive(nestedId, nestedIndex, nestedOpener);
+    }
+
+    /** @return uncompressed content of node in the spoolCache or null if it is too big */
+    @Nullable private File spool(@NotNull String key, int node, @NotNull FileLruCache spoolCache,
+                                 @NotNull String mountId) throws IOException {
+        File file = spoolCache.get(mountId, key);
+        if (file != null) return file;
+        if (index.getSize(node) > spoolCache.getMaxBytes() / 2) return null;
+
+        File temp = spoolCache.createTempFile(mountId);
+        try (InputStream in = ZipEntryReader.open(openInput(), index, node);
+             OutputStream out = new FileOutputStream(temp)) {
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buffer)) > 0) out.write(buffer, 0, len);
+        } catch (IOException ioException) {
+            temp.delete();
+            throw ioException;
+        }
+        return spoolCache.put(mountId, key, temp);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+
+/**
+ * Reads all {@link ZipEntryInfo}s from the central directory at the end of a zip file
+ * without touching the (compressed) content of the entries (android independent).
+ *
+ * Supports zip64 and zip files with prepended data (i.e. self extracting archives).
+ */
+public class ZipCentralDirectoryReader {
+    private static final int SIG_END_OF_CENTRAL_DIR = 0x06054b50;
+    private static final int SIG_ZIP64_END_OF_CENTRAL_DIR = 0x06064b50;
+    private static final int SIG_ZIP64_LOCATOR = 0x07064b50;
+    private static final int SIG_CENTRAL_FILE_HEADER = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIR_SIZE = 22;
+    private static final int ZIP64_LOCATOR_SIZE = 20;
+    private static final int CENTRAL_FILE_HEADER_SIZE = 46;
+    private static final int MAX_COMMENT_SIZE = 0xffff;
+
+    private static final int EXTRA_ZIP64 = 0x0001;
+    private static final int FLAG_ENCRYPTED = 0x0001;
+    private static final long MAGIC_32 = 0xffffffffL;
+    private static final int MAGIC_16 = 0xffff;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @NotNull private final RandomAccessInput input;
+
+    /** reused for dos time conversion */
+    private final Calendar calendar = Calendar.getInstance();
+
+    private ZipCentralDirectoryReader(@NotNull RandomAccessInput input) {
+        this.input = input;
+    }
+
+    /**
+     * @return all entries in central directory order.
+     * @throws IOException if input is not seekable or not a zip file.
+     */
+    @NotNull public static List<ZipEntryInfo> read(@NotNull RandomAccessInput input) throws IOException {
+        return new ZipCentralDirectoryReader(input).readEntries();
+    }
+
+    @NotNull private List<ZipEntryInfo> readEntries() throws IOException {
+        long fileLength = input.length();
+        long eocdPos = findEndOfCentralDir(fileLength);
+        byte[] eocd = readFully(eocdPos, END_OF_CENTRAL_DIR_SIZE);
+
+        long entryCount = getShort(eocd, 10);
+        long cdSize = getInt(eocd, 12);
+        long cdOffset = getInt(eocd, 16);
+        // distance between declared and real position if data was prepended to the zip
+        long delta = 0;
+
+        if (entryCount == MAGIC_16 || cdSize == MAGIC_32 || cdOffset == MAGIC_32) {
+            long locatorPos = eocdPos - ZIP64_LOCATOR_SIZE;
+            byte[] locator = (locatorPos >= 0) ? readFully(locatorPos, ZIP64_LOCATOR_SIZE) : null;
+            if (locator == null || getInt(locator, 0) != SIG_ZIP64_LOCATOR) {
+                throw new IOException("zip64 end of central directory locator not found");
+            }
+            byte[] zip64Eocd = readFully(getLong(locator, 8), 56);
+            if (getInt(zip64Eocd, 0) != SIG_ZIP64_END_OF_CENTRAL_DIR) {
+                throw new IOException("zip64 end of central directory not found");
+            }
+            entryCount = getLong(zip64Eocd, 32);
+            cdSize = getLong(zip64Eocd, 40);
+            cdOffset = getLong(zip64Eocd, 48);
+        } else {
+            delta = eocdPos - cdSize - cdOffset;
+            if (delta < 0) throw new IOException("invalid central directory offset " + cdOffset);
+        }
+
+        List<ZipEntryInfo> result = new ArrayList<>((int) Math.min(entryCount, 1 << 20));
+        InputStream cd = new BufferedInputStream(
+                new RandomAccessInputStream(input, cdOffset + delta, cdSize), BUFFER_SIZE);
+        byte[] header = new byte[CENTRAL_FILE_HEADER_SIZE];
+        byte[] variable = new byte[1024];
+        for (long i = 0; i < entryCount; i++) {
+            readFully(cd, header, CENTRAL_FILE_HEADER_SIZE);
+            if (getInt(header, 0) != SIG_CENTRAL_FILE_HEADER) {
+                throw new IOException("invalid central directory entry #" + i);
+            }
+            int flags = getShort(header, 8);
+            int method = getShort(header, 10);
+            long dosTime = getInt(header, 12);
+            long crc = getInt(header, 16);
+            long compressedSize = getInt(header, 20);
+            long uncompressedSize = getInt(header, 24);
+            int nameLength = getShort(header, 28);
+            int extraLength = getShort(header, 30);
+            int commentLength = getShort(header, 32);
+            long localHeaderOffset = getInt(header, 42);
+
+            int variableLength = nameLength + extraLength + commentLength;
+            if (variable.length < variableLength) variable = new byte[variableLength];
+            readFully(cd, variable, variableLength);
+
+            // same as zip4j: file names are always interpreted as utf-8
+            String fileName = new String(variable, 0, nameLength, StandardCharsets.UTF_8);
+
+            if (uncompressedSize == MAGIC_32 || compressedSize == MAGIC_32 || localHeaderOffset == MAGIC_32) {
+                int pos = nameLength;
+                int extraEnd = nameLength + extraLength;
+                while (pos + 4 <= extraEnd) {
+                    int id = getShort(variable, pos);
+                    int size = getShort(variable, pos + 2);
+                    if (id == EXTRA_ZIP64) {
+                        int field = pos + 4;
+                        if (uncompressedSize == MAGIC_32) {
+                            uncompressedSize = getLong(variable, field);
+                            field += 8;
+                        }
+                        if (compressedSize == MAGIC_32) {
+                            compressedSize = getLong(variable, field);
+                            field += 8;
+                        }
+                        if (localHeaderOffset == MAGIC_32) {
+                            localHeaderOffset = getLong(variable, field);
+                        }
+                        break;
+                    }
+                    pos += 4 + size;
+                }
+            }
+
+            result.add(new ZipEntryInfo(fileName, uncompressedSize, compressedSize, crc,
+                    dosToMillis(dosTime), method, localHeaderOffset + delta,
+                    (flags & FLAG_ENCRYPTED) != 0));
+        }
+        return result;
+    }
+
+    private long findEndOfCentralDir(long fileLength) throws IOException {
+        if (fileLength < END_OF_CENTRAL_DIR_SIZE) throw new IOException("not a zip file: too small");
+
+        int tailLength = (int) Math.min(fileLength, END_OF_CENTRAL_DIR_SIZE + MAX_COMMENT_SIZE);
+        long tailStart = fileLength - tailLength;
+        byte[] tail = readFully(tailStart, tailLength);
+        for (int i = tailLength - END_OF_CENTRAL_DIR_SIZE; i >= 0; i--) {
+            if (getInt(tail, i) == SIG_END_OF_CENTRAL_DIR) {
+                return tailStart + i;
+            }
+        }
+        throw new IOException("not a zip file: no end of central directory");
+    }
+
+    private byte[] readFully(long position, int len) throws IOException {
+        byte[] result = new byte[len];
+        int done = 0;
+        while (done < len) {
+            int read = input.read(position + done, result, done, len - done);
+            if (read <= 0) throw new EOFException("unexpected end of zip at " + (position + done));
+            done += read;
+        }
+        return result;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer, int len) throws IOException {
+        int done = 0;
+        while (done < len) {
+            int read = in.read(buffer, done, len - done);
+            if (read <= 0) throw new EOFException("unexpected end of central directory");
+            done += read;
+        }
+    }
+
+    /** @return millisecs since 1970 in local time or 0 if dosTime is not set */
+    long dosToMillis(long dosTime) {
+        if (dosTime == 0) return 0;
+        calendar.clear();
+        calendar.set((int) (((dosTime >> 25) & 0x7f) + 1980),
+                (int) (((dosTime >> 21) & 0x0f) - 1),
+                (int) ((dosTime >> 16) & 0x1f),
+                (int) ((dosTime >> 11) & 0x1f),
+                (int) ((dosTime >> 5) & 0x3f),
+                (int) ((dosTime << 1) & 0x3e));
+        return calendar.getTimeInMillis();
+    }
+
+    static int getShort(byte[] b, int off) {
+        return (b[off] & 0xff) | ((b[off + 1] & 0xff) << 8);
+    }
+
+    static long getInt(byte[] b, int off) {
+        return (getShort(b, off) | ((long) getShort(b, off + 2) << 16)) & MAGIC_32;
+    }
+
+    static long getLong(byte[] b, int off) {
+        return getInt(b, off) | (getInt(b, off + 4) << 32);
+    }
+}
@@ -0,0 +1,68 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Metadata of one zip entry as found in the zip central directory (android independent).
+ */
+public class ZipEntryInfo {
+    public static final int METHOD_STORED = 0;
+    public static final int METHOD_DEFLATED = 8;
+
+    /** value of {@link #localHeaderOffset} if the entry was not found via the central directory */
+    public static final long OFFSET_UNKNOWN = -1;
+
+    /** full path inside zip. Directories end with "/". I.E. "path/to/file.ext" */
+    @NotNull public final String fileName;
+    public final long uncompressedSize;
+    public final long compressedSize;
+    public final long crc;
+    /** millisecs since 1970 or 0 if unknown */
+    public final long lastModified;
+    /** {@link #METHOD_STORED}, {@link #METHOD_DEFLATED}, ... */
+    public final int method;
+    /** position of the local file header inside the zip or {@link #OFFSET_UNKNOWN} */
+    public final long localHeaderOffset;
+    public final boolean encrypted;
+
+    public ZipEntryInfo(@NotNull String fileName, long uncompressedSize, long compressedSize,
+                        long crc, long lastModified, int method, long localHeaderOffset,
+                        boolean encrypted) {
+        this.fileName = fileName;
+        this.uncompressedSize = uncompressedSize;
+        this.compressedSize = compressedSize;
+        this.crc = crc;
+        this.lastModified = lastModified;
+        this.method = method;
+        this.localHeaderOffset = localHeaderOffset;
+        this.encrypted = encrypted;
+    }
+
+    public boolean isDirectory() {
+        return fileName.endsWith("/");
+    }
+
+    @Override
+    @NotNull public String toString() {
+        return fileName + "[" + uncompressedSize + "@" + localHeaderOffset + "]";
+    }
+}
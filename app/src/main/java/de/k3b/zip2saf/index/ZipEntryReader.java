@@ -0,0 +1,206 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the content of one zip entry by jumping directly to its local file header
+ * instead of scanning the zip from the beginning (android independent).
+ */
+public class ZipEntryReader {
+    private static final int SIG_LOCAL_FILE_HEADER = 0x04034b50;
+    private static final int LOCAL_FILE_HEADER_SIZE = 30;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ZipEntryReader() {
+    }
+
+    /**
+     * @return true if the content of node can be read directly: known position,
+     * not encrypted and {@link ZipEntryInfo#METHOD_STORED} or {@link ZipEntryInfo#METHOD_DEFLATED}.
+     */
+    public static boolean canOpen(@NotNull ZipIndex index, int node) {
+        if (node == ZipIndex.NOT_FOUND || index.isDirectory(node) || index.isEncrypted(node)
+                || index.getLocalHeaderOffset(node) == ZipEntryInfo.OFFSET_UNKNOWN) {
+            return false;
+        }
+        int method = index.getMethod(node);
+        return method == ZipEntryInfo.METHOD_STORED || method == ZipEntryInfo.METHOD_DEFLATED;
+    }
+
+    /**
+     * @return position of the first (compressed) content byte of the entry that has its
+     * local file header at localHeaderOffset.
+     * @throws IOException if there is no local file header at localHeaderOffset
+     */
+    public static long getDataOffset(@NotNull RandomAccessInput input, long localHeaderOffset) throws IOException {
+        byte[] header = new byte[LOCAL_FILE_HEADER_SIZE];
+        int done = 0;
+        while (done < header.length) {
+            int read = input.read(localHeaderOffset + done, header, done, header.length - done);
+            if (read <= 0) throw new EOFException("no local file header at " + localHeaderOffset);
+            done += read;
+        }
+        if (ZipCentralDirectoryReader.getInt(header, 0) != SIG_LOCAL_FILE_HEADER) {
+            throw new IOException("no local file header at " + localHeaderOffset);
+        }
+        int nameLength = ZipCentralDirectoryReader.getShort(header, 26);
+        int extraLength = ZipCentralDirectoryReader.getShort(header, 28);
+        return localHeaderOffset + LOCAL_FILE_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * Precondition {@link #canOpen(ZipIndex, int)}.
+     *
+     * @return uncompressed content of node. Closing the result also closes input.
+     * Reading throws a {@link ZipException} at the end if the content does not match the crc of the index.
+     */
+    @NotNull public static InputStream open(@NotNull RandomAccessInput input, @NotNull ZipIndex index, int node)
+            throws IOException {
+        long dataOffset = getDataOffset(input, index.getLocalHeaderOffset(node));
+        InputStream compressed = new RandomAccessInputStream(input, dataOffset, index.getCompressedSize(node));
+        InputStream content = (index.getMethod(node) == ZipEntryInfo.METHOD_STORED)
+                ? new BufferedInputStream(compressed, BUFFER_SIZE)
+                : new RawInflaterInputStream(compressed);
+        return new EntryInputStream(new CrcCheckInputStream(content, index.getCrc(node), index.getPath(node)), input);
+    }
+
+    /**
+     * Precondition {@link #canOpen(ZipIndex, int)} and {@link ZipEntryInfo#METHOD_STORED}.
+     *
+     * @return seekable uncompressed content of node without any copy. Closing the result also closes input.
+     */
+    @NotNull public static RandomAccessInput openStored(@NotNull RandomAccessInput input, @NotNull ZipIndex index, int node)
+            throws IOException {
+        long dataOffset = getDataOffset(input, index.getLocalHeaderOffset(node));
+        return new RandomAccessInputWindow(input, dataOffset, index.getSize(node));
+    }
+
+    /**
+     * Precondition {@link #canOpen(ZipIndex, int)} and {@link ZipEntryInfo#METHOD_DEFLATED}.
+     *
+     * @param checkpoints of this entry. See {@link InflateCheckpointCache}.
+     * @return seekable uncompressed content of node. Closing the result also closes input.
+     */
+    @NotNull public static RandomAccessInput openDeflated(@NotNull RandomAccessInput input, @NotNull ZipIndex index, int node,
+                                                          @NotNull InflateCheckpoints checkpoints)
+            throws IOException {
+        long dataOffset = getDataOffset(input, index.getLocalHeaderOffset(node));
+        return new DeflatedEntryInput(new RandomAccessInputWindow(input, dataOffset, index.getCompressedSize(node)),
+                index.getSize(node), checkpoints);
+    }
+
+    /** closes the {@link RandomAccessInput} together with the stream */
+    private static class EntryInputStream extends FilterInputStream {
+        private final RandomAccessInput owner;
+
+        EntryInputStream(InputStream in, RandomAccessInput owner) {
+            super(in);
+            this.owner = owner;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                owner.close();
+            }
+        }
+    }
+
+    /** like zip4j's ZipInputStream: a corrupt entry is detected when its end is reached */
+    private static class CrcCheckInputStream extends CheckedInputStream {
+        private final long expectedCrc;
+        private final String path;
+
+        CrcCheckInputStream(InputStream in, long expectedCrc, String path) {
+            super(in, new CRC32());
+            this.expectedCrc = expectedCrc & 0xffffffffL;
+            this.path = path;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result == -1) checkCrc();
+            return result;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int result = super.read(buf, off, len);
+            if (result == -1) checkCrc();
+            return result;
+        }
+
+        private void checkCrc() throws ZipException {
+            long crc = getChecksum().getValue();
+            if (crc != expectedCrc) {
+                throw new ZipException("invalid entry crc of '" + path + "' (expected 0x"
+                        + Long.toHexString(expectedCrc) + " but got 0x" + Long.toHexString(crc) + ")");
+            }
+        }
+    }
+
+    /** inflates zip entry content that has no zlib header */
+    private static class RawInflaterInputStream extends InflaterInputStream {
+        private boolean eof = false;
+        private boolean closed = false;
+
+        RawInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), BUFFER_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) throw new EOFException("Unexpected end of zip entry");
+            len = in.read(buf, 0, buf.length);
+            if (len == -1) {
+                // like java.util.zip.ZipFile: the inflater may need one dummy byte after the end
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                inf.end();
+                super.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Directory tree of all entries of one zip file (android independent).
+ *
+ * Every file or directory is a node addressed by an int node id. {@link #ROOT} is the zip root.
+ * Directories that have no entry of their own in the zip (i.e. "dir/" for "dir/file.ext")
+ * are included as implied directory nodes.
+ */
+public abstract class ZipIndex {
+    public static final int ROOT = 0;
+    public static final int NOT_FOUND = -1;
+
+    /** @return number of nodes including {@link #ROOT} */
+    public abstract int size();
+
+    /**
+     * @param zipPath path inside zip with or without trailing "/". "" is {@link #ROOT}
+     * @return node id or {@link #NOT_FOUND}
+     */
+    public abstract int find(@NotNull String zipPath);
+
+    /** @return parent node id or {@link #NOT_FOUND} for {@link #ROOT} */
+    public abstract int getParent(int node);
+
+    public abstract int getChildCount(int node);
+
+    /** @return node id of child number position of node */
+    public abstract int getChild(int node, int position);
+
+    /** @return last path segment without "/". "" for {@link #ROOT} */
+    @NotNull public abstract String getName(int node);
+
+    public abstract boolean isDirectory(int node);
+
+    /** @return uncompressed size or 0 if unknown */
+    public abstract long getSize(int node);
+
+    public abstract long getCompressedSize(int node);
+
+    public abstract long getCrc(int node);
+
+    /** @return millisecs since 1970 or 0 if unknown */
+    public abstract long getLastModified(int node);
+
+    /** @return {@link ZipEntryInfo#METHOD_STORED}, {@link ZipEntryInfo#METHOD_DEFLATED}, ... */
+    public abstract int getMethod(int node);
+
+    /** @return position of local file header or {@link ZipEntryInfo#OFFSET_UNKNOWN} */
+    public abstract long getLocalHeaderOffset(int node);
+
+    public abstract boolean isEncrypted(int node);
+
+    /**
+     * @return full path inside zip as used in zip entries. Directories end with "/". "" for {@link #ROOT}
+     */
+    @NotNull public String getPath(int node) {
+        if (node == ROOT) return "";
+        StringBuilder result = new StringBuilder();
+        if (isDirectory(node)) result.append('/');
+        int current = node;
+        while (current != ROOT && current != NOT_FOUND) {
+            result.insert(0, getName(current));
+            current = getParent(current);
+            if (current != ROOT) result.insert(0, '/');
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return true if node is a child, grandchild, ... of ancestor
+     */
+    public boolean isDescendant(int ancestor, int node) {
+        if (ancestor == NOT_FOUND || node == NOT_FOUND) return false;
+        int current = getParent(node);
+        while (current != NOT_FOUND) {
+            if (current == ancestor) return true;
+            current = getParent(current);
+        }
+        return false;
+    }
+
+    /** @return path without leading, trailing or duplicate "/" */
+    @NotNull protected static String canonicalize(@NotNull String zipPath) {
+        if (zipPath.startsWith("/") || zipPath.contains("//")) {
+            StringBuilder result = new StringBuilder(zipPath.length());
+            for (String segment : zipPath.split("/")) {
+                if (!segment.isEmpty()) {
+                    if (result.length() > 0) result.append('/');
+                    result.append(segment);
+                }
+            }
+            return result.toString();
+        }
+        int end = zipPath.length();
+        while (end > 0 && zipPath.charAt(end - 1) == '/') end--;
+        return (end == zipPath.length()) ? zipPath : zipPath.substring(0, end);
+    }
+}
@@ -0,0 +1,252 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Compact binary on disk format of a {@link ZipIndex} that is memory mapped
+ * and used in place by {@link MappedZipIndex} (android independent).
+ *
+ * Layout (big endian):
+ * <ul>
+ *     <li>header: magic, version, size + last modified of the zip file, counts and section offsets</li>
+ *     <li>records: one fixed width {@link #RECORD_SIZE} record per node</li>
+ *     <li>children offset table: children of node n are childIds[childStart[n] .. childStart[n + 1])</li>
+ *     <li>sorted nodes: node id of every path in utf-8 byte order</li>
+ *     <li>paths: sorted paths without trailing "/", front coded in buckets of {@link #BUCKET_SIZE}</li>
+ * </ul>
+ */
+public class ZipIndexFile {
+    static final int MAGIC = 0x5A325349; // "Z2SI"
+    static final int VERSION = 1;
+
+    static final int POS_MAGIC = 0;
+    static final int POS_VERSION = 4;
+    static final int POS_SOURCE_SIZE = 8;
+    static final int POS_SOURCE_LAST_MODIFIED = 16;
+    static final int POS_NODE_COUNT = 24;
+    static final int POS_BUCKET_COUNT = 28;
+    static final int POS_RECORDS = 32;
+    static final int POS_CHILD_START = 36;
+    static final int POS_CHILD_IDS = 40;
+    static final int POS_SORTED_NODES = 44;
+    static final int POS_BUCKET_OFFSETS = 48;
+    static final int POS_MAX_PATH_BYTES = 52;
+    static final int HEADER_SIZE = 56;
+
+    static final int REC_PARENT = 0;
+    static final int REC_FLAGS = 4;
+    static final int REC_METHOD = 6;
+    static final int REC_CRC = 8;
+    static final int REC_RANK = 12;
+    static final int REC_SIZE = 16;
+    static final int REC_COMPRESSED_SIZE = 24;
+    static final int REC_LAST_MODIFIED = 32;
+    static final int REC_LOCAL_HEADER_OFFSET = 40;
+    static final int RECORD_SIZE = 48;
+
+    static final int FLAG_DIRECTORY = 1;
+    static final int FLAG_ENCRYPTED = 2;
+
+    static final int BUCKET_SIZE = 16;
+
+    private static final String STAMP_DELIMITER = ":";
+
+    private ZipIndexFile() {
+    }
+
+    /**
+     * Validation stamp of a zip file as stored in {@link de.k3b.zip2saf.data.MountInfo}.
+     *
+     * @return null if size or lastModified are unknown
+     */
+    @Nullable public static String toStamp(long sourceSize, long sourceLastModified) {
+        if (sourceSize <= 0 || sourceLastModified <= 0) return null;
+        return sourceSize + STAMP_DELIMITER + sourceLastModified;
+    }
+
+    /**
+     * Atomically (over)write file with the content of index.
+     *
+     * @param stamp of the zip file as created by {@link #toStamp(long, long)}
+     */
+    public static void write(@NotNull ZipIndex index, @NotNull String stamp,
+                             @NotNull File file) throws IOException {
+        int delimiter = stamp.indexOf(STAMP_DELIMITER);
+        long sourceSize;
+        long sourceLastModified;
+        try {
+            sourceSize = Long.parseLong(stamp.substring(0, delimiter));
+            sourceLastModified = Long.parseLong(stamp.substring(delimiter + 1));
+        } catch (RuntimeException ex) {
+            throw new IOException("invalid stamp " + stamp, ex);
+        }
+
+        int nodeCount = index.size();
+
+        byte[][] paths = new byte[nodeCount][];
+        Integer[] sortedNodes = new Integer[nodeCount];
+        int maxPathBytes = 1;
+        for (int node = 0; node < nodeCount; node++) {
+            paths[node] = ZipIndex.canonicalize(index.getPath(node)).getBytes(StandardCharsets.UTF_8);
+            maxPathBytes = Math.max(maxPathBytes, paths[node].length);
+            sortedNodes[node] = node;
+        }
+        Arrays.sort(sortedNodes, (a, b) -> compare(paths[a], paths[a].length, paths[b], paths[b].length));
+        int[] ranks = new int[nodeCount];
+        for (int rank = 0; rank < nodeCount; rank++) {
+            ranks[sortedNodes[rank]] = rank;
+        }
+
+        int bucketCount = (nodeCount + BUCKET_SIZE - 1) / BUCKET_SIZE;
+        int[] bucketStarts = new int[bucketCount];
+        ByteArrayOutputStream frontCoded = new ByteArrayOutputStream();
+        byte[] previous = null;
+        for (int rank = 0; rank < nodeCount; rank++) {
+            byte[] path = paths[sortedNodes[rank]];
+            if (rank % BUCKET_SIZE == 0) {
+                bucketStarts[rank / BUCKET_SIZE] = frontCoded.size();
+                writeVarInt(frontCoded, path.length);
+                frontCoded.write(path, 0, path.length);
+            } else {
+                int shared = 0;
+                int max = Math.min(previous.length, path.length);
+                while (shared < max && previous[shared] == path[shared]) shared++;
+                writeVarInt(frontCoded, shared);
+                writeVarInt(frontCoded, path.length - shared);
+                frontCoded.write(path, shared, path.length - shared);
+            }
+            previous = path;
+        }
+
+        int recordsOffset = HEADER_SIZE;
+        int childStartOffset = recordsOffset + RECORD_SIZE * nodeCount;
+        int childIdsOffset = childStartOffset + 4 * (nodeCount + 1);
+        int childCount = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            childCount += index.getChildCount(node);
+        }
+        int sortedNodesOffset = childIdsOffset + 4 * childCount;
+        int bucketOffsetsOffset = sortedNodesOffset + 4 * nodeCount;
+        int pathsOffset = bucketOffsetsOffset + 4 * bucketCount;
+
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sourceSize);
+            out.writeLong(sourceLastModified);
+            out.writeInt(nodeCount);
+            out.writeInt(bucketCount);
+            out.writeInt(recordsOffset);
+            out.writeInt(childStartOffset);
+            out.writeInt(childIdsOffset);
+            out.writeInt(sortedNodesOffset);
+            out.writeInt(bucketOffsetsOffset);
+            out.writeInt(maxPathBytes);
+
+            for (int node = 0; node < nodeCount; node++) {
+                out.writeInt(index.getParent(node));
+                out.writeShort((index.isDirectory(node) ? FLAG_DIRECTORY : 0)
+                        | (index.isEncrypted(node) ? FLAG_ENCRYPTED : 0));
+                out.writeShort(index.getMethod(node));
+                out.writeInt((int) index.getCrc(node));
+                out.writeInt(ranks[node]);
+                out.writeLong(index.getSize(node));
+                out.writeLong(index.getCompressedSize(node));
+                out.writeLong(index.getLastModified(node));
+                out.writeLong(index.getLocalHeaderOffset(node));
+            }
+
+            int start = 0;
+            for (int node = 0; node < nodeCount; node++) {
+                out.writeInt(start);
+                start += index.getChildCount(node);
+            }
+            out.writeInt(start);
+            for (int node = 0; node < nodeCount; node++) {
+                int count = index.getChildCount(node);
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(index.getChild(node, i));
+                }
+            }
+
+            for (int rank = 0; rank < nodeCount; rank++) {
+                out.writeInt(sortedNodes[rank]);
+            }
+            for (int bucketStart : bucketStarts) {
+                out.writeInt(pathsOffset + bucketStart);
+            }
+            frontCoded.writeTo(out);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("cannot rename " + temp + " to " + file);
+        }
+    }
+
+    /**
+     * @return index memory mapped from file.
+     * @throws IOException if file does not exist or has a wrong format
+     */
+    @NotNull public static MappedZipIndex open(@NotNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // the mapping stays valid after the file is closed
+            return new MappedZipIndex(raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length()));
+        }
+    }
+
+    /** compare utf-8 bytes unsigned, the same way as the paths are sorted */
+    static int compare(byte[] left, int leftLength, byte[] right, int rightLength) {
+        int common = Math.min(leftLength, rightLength);
+        for (int i = 0; i < common; i++) {
+            int cmp = (left[i] & 0xff) - (right[i] & 0xff);
+            if (cmp != 0) return cmp;
+        }
+        return leftLength - rightLength;
+    }
+
+    static int varIntSize(int value) {
+        int result = 1;
+        while ((value >>>= 7) != 0) result++;
+        return result;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
@@ -0,0 +1,134 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ZipIndex} of one zip that is still being built on another thread (android independent).
+ *
+ * Readers get the entries found so far via {@link #getSnapshot()} instead of waiting for the whole
+ * zip to be scanned. While entries are added the listener is called at most every notifyIntervalMillis,
+ * and once more when the index is complete.
+ */
+public class ZipIndexProgress {
+    /** called on the thread that builds the index */
+    public interface Listener {
+        void onProgress(@NotNull ZipIndexProgress progress);
+    }
+
+    @Nullable private final Listener listener;
+    private final long notifyIntervalMillis;
+    private final MemoryZipIndex.Builder builder = new MemoryZipIndex.Builder();
+    private final CountDownLatch done = new CountDownLatch(1);
+    /** i.e. uris of cursors that show the snapshot */
+    private final Set<String> observers = new HashSet<>();
+
+    private long lastNotified = System.currentTimeMillis();
+    /** guarded by builder */
+    @Nullable private MemoryZipIndex snapshot = null;
+    @Nullable private volatile ZipIndex result = null;
+
+    public ZipIndexProgress() {
+        this(null, 0);
+    }
+
+    public ZipIndexProgress(@Nullable Listener listener, long notifyIntervalMillis) {
+        this.listener = listener;
+        this.notifyIntervalMillis = notifyIntervalMillis;
+    }
+
+    public void add(@NotNull ZipEntryInfo entry) {
+        synchronized (builder) {
+            builder.add(entry);
+        }
+        long now = System.currentTimeMillis();
+        if (listener != null && now - lastNotified >= notifyIntervalMillis) {
+            lastNotified = now;
+            listener.onProgress(this);
+        }
+    }
+
+    /** @return the index of all added entries */
+    @NotNull public MemoryZipIndex build() {
+        synchronized (builder) {
+            return builder.build();
+        }
+    }
+
+    /** @param result the complete index or null if it could not be created */
+    public void finish(@Nullable ZipIndex result) {
+        this.result = result;
+        done.countDown();
+        if (listener != null) listener.onProgress(this);
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /** @return true if the index was finished within timeoutMillis */
+    public boolean await(long timeoutMillis) {
+        try {
+            return done.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignore) {
+            Thread.currentThread().interrupt();
+            return isDone();
+        }
+    }
+
+    /** @return the complete index. null if not done yet or if it could not be created */
+    @Nullable public ZipIndex getResult() {
+        return result;
+    }
+
+    /** @return the complete index if done, else the entries found so far */
+    @NotNull public ZipIndex getSnapshot() {
+        ZipIndex complete = result;
+        if (complete != null) return complete;
+        synchronized (builder) {
+            if (snapshot == null || snapshot.size() != builder.size()) {
+                snapshot = builder.snapshot();
+            }
+            return snapshot;
+        }
+    }
+
+    public void addObserver(@NotNull String observer) {
+        synchronized (observers) {
+            observers.add(observer);
+        }
+    }
+
+    /** @return copy of all observers added so far */
+    @NotNull public List<String> getObservers() {
+        synchronized (observers) {
+            return new ArrayList<>(observers);
+        }
+    }
+}
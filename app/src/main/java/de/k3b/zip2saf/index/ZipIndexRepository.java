@@ -0,0 +1,150 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In memory cache (android independent) of the {@link ZipIndex} of every mounted zip,
+ * so that the zip central directory is read only once per mount.
+ */
+public class ZipIndexRepository {
+    /** a zip that was replaced while its index is cached is detected after at most this time */
+    public static final long STAMP_CHECK_MILLIS = 2000;
+
+    private static ZipIndexRepository instance = null;
+
+    /** returns the current stamp of a zip. See {@link ZipIndexFile#toStamp(long, long)} */
+    public interface StampSource {
+        @Nullable String getStamp();
+    }
+
+    private final long stampCheckMillis;
+
+    /** zipId to index */
+    private final ConcurrentHashMap<String, ZipIndex> ID2INDEX = new ConcurrentHashMap<>();
+    /** zipId to name search index. Created on first search */
+    private final ConcurrentHashMap<String, NameSearchIndex> ID2NAME_INDEX = new ConcurrentHashMap<>();
+    /** zipId to content search index. Loaded by the background indexer */
+    private final ConcurrentHashMap<String, ContentSearchIndex> ID2CONTENT_INDEX = new ConcurrentHashMap<>();
+    /** zipId to stamp of the zip when its index was created */
+    private final ConcurrentHashMap<String, String> ID2STAMP = new ConcurrentHashMap<>();
+    /** zipId to time in millis of the last stamp check */
+    private final ConcurrentHashMap<String, Long> ID2STAMP_CHECKED = new ConcurrentHashMap<>();
+
+    public ZipIndexRepository() {
+        this(STAMP_CHECK_MILLIS);
+    }
+
+    public ZipIndexRepository(long stampCheckMillis) {
+        this.stampCheckMillis = stampCheckMillis;
+    }
+
+    /** singleton */
+    @NotNull public static synchronized ZipIndexRepository getInstance() {
+        if (instance == null) {
+            instance = new ZipIndexRepository();
+        }
+        return instance;
+    }
+
+    @Nullable public ZipIndex get(@Nullable String zipId) {
+        if (zipId == null) return null;
+        return ID2INDEX.get(zipId);
+    }
+
+    /**
+     * Same as {@link #get(String)} but if the zip has changed since the index was created
+     * the index is removed and null is returned.
+     *
+     * @param current is asked at most every stampCheckMillis for the stamp of the zip.
+     */
+    @Nullable public ZipIndex get(@Nullable String zipId, @NotNull StampSource current) {
+        ZipIndex index = get(zipId);
+        String stamp = (index == null) ? null : ID2STAMP.get(zipId);
+        if (stamp == null) return index;
+
+        long now = System.currentTimeMillis();
+        Long checked = ID2STAMP_CHECKED.get(zipId);
+        if (checked != null && now - checked < stampCheckMillis) return index;
+        ID2STAMP_CHECKED.put(zipId, now);
+
+        String currentStamp = current.getStamp();
+        if (currentStamp != null && !currentStamp.equals(stamp)) {
+            // zip was replaced or modified
+            remove(zipId);
+            return null;
+        }
+        return index;
+    }
+
+    public void put(@NotNull String zipId, @NotNull ZipIndex index) {
+        put(zipId, index, null);
+    }
+
+    /** @param stamp of the zip the index was created from. null: the index is never rechecked */
+    public void put(@NotNull String zipId, @NotNull ZipIndex index, @Nullable String stamp) {
+        ID2INDEX.put(zipId, index);
+        if (stamp != null) {
+            ID2STAMP.put(zipId, stamp);
+            ID2STAMP_CHECKED.put(zipId, System.currentTimeMillis());
+        } else {
+            ID2STAMP.remove(zipId);
+            ID2STAMP_CHECKED.remove(zipId);
+        }
+    }
+
+    /** @return the name search index of zipId or null if there is none for the current {@link ZipIndex} */
+    @Nullable public NameSearchIndex getNameSearchIndex(@Nullable String zipId) {
+        ZipIndex index = get(zipId);
+        NameSearchIndex nameIndex = (index == null) ? null : ID2NAME_INDEX.get(zipId);
+        return (nameIndex != null && nameIndex.isFor(index)) ? nameIndex : null;
+    }
+
+    public void putNameSearchIndex(@NotNull String zipId, @NotNull NameSearchIndex nameIndex) {
+        ID2NAME_INDEX.put(zipId, nameIndex);
+    }
+
+    @Nullable public ContentSearchIndex getContentSearchIndex(@Nullable String zipId) {
+        if (zipId == null) return null;
+        return ID2CONTENT_INDEX.get(zipId);
+    }
+
+    public void putContentSearchIndex(@NotNull String zipId, @NotNull ContentSearchIndex contentIndex) {
+        ID2CONTENT_INDEX.put(zipId, contentIndex);
+    }
+
+    /** to be called when the zip is unmounted. Also removes the indexes of the zips nested in zipId. */
+    public void remove(@NotNull String zipId) {
+        ID2INDEX.remove(zipId);
+        Iterator<String> ids = ID2INDEX.keySet().iterator();
+        while (ids.hasNext()) {
+            if (ids.next().startsWith(zipId + "/")) ids.remove();
+        }
+        ID2NAME_INDEX.remove(zipId);
+        ID2CONTENT_INDEX.remove(zipId);
+        ID2STAMP.remove(zipId);
+        ID2STAMP_CHECKED.remove(zipId);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+import de.k3b.zip2saf.index.RandomAccessInput;
+
+/**
+ * {@link RandomAccessInput} that adds all bytes read to {@link ProviderMetrics#addBytesRead(long)}.
+ */
+public class MeteredInput implements RandomAccessInput {
+    @NotNull private final RandomAccessInput input;
+    @NotNull private final ProviderMetrics metrics;
+
+    public MeteredInput(@NotNull RandomAccessInput input, @NotNull ProviderMetrics metrics) {
+        this.input = input;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long length() throws IOException {
+        return input.length();
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int len) throws IOException {
+        int read = input.read(position, buffer, offset, len);
+        if (read > 0) metrics.addBytesRead(read);
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        input.close();
+    }
+}
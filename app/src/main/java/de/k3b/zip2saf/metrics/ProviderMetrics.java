@@ -0,0 +1,221 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free counters of the storage provider (android independent): latency per operation,
+ * bytes read from the zips versus bytes served to clients, zip entries scanned, cache hits
+ * and active transfers.
+ *
+ * Shown in the app and in "adb shell dumpsys activity provider de.k3b.android.zip2saf/.ZipReadStorageProvider".
+ */
+public class ProviderMetrics {
+    public static final int OP_ROOTS = 0;
+    public static final int OP_CHILDREN = 1;
+    public static final int OP_DOCUMENT = 2;
+    public static final int OP_SEARCH = 3;
+    public static final int OP_RECENT = 4;
+    public static final int OP_OPEN = 5;
+    public static final int OP_THUMBNAIL = 6;
+    private static final String[] OP_NAMES = {"roots", "children", "document", "search", "recent", "open", "thumbnail"};
+
+    /** {@link de.k3b.zip2saf.index.ZipIndexRepository} */
+    public static final int CACHE_INDEX = 0;
+    /** {@link de.k3b.zip2saf.cache.EntryContentCache} */
+    public static final int CACHE_CONTENT = 1;
+    /** {@link de.k3b.zip2saf.thumbnail.ThumbnailCache} */
+    public static final int CACHE_THUMBNAIL = 2;
+    private static final String[] CACHE_NAMES = {"index", "content", "thumbnail"};
+
+    private static ProviderMetrics instance = null;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[OP_NAMES.length];
+    private final AtomicLongArray cacheHits = new AtomicLongArray(CACHE_NAMES.length);
+    private final AtomicLongArray cacheMisses = new AtomicLongArray(CACHE_NAMES.length);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final AtomicLong scans = new AtomicLong();
+    private final AtomicLong entriesScanned = new AtomicLong();
+    private final AtomicLong maxEntriesScanned = new AtomicLong();
+    private final AtomicInteger activeTransfers = new AtomicInteger();
+    private volatile long since = System.currentTimeMillis();
+    /** -1 until the first roots query is answered */
+    private final AtomicLong coldStartMillis = new AtomicLong(-1);
+
+    public ProviderMetrics() {
+        for (int op = 0; op < latencies.length; op++) {
+            latencies[op] = new LatencyHistogram();
+        }
+    }
+
+    /** singleton */
+    @NotNull public static synchronized ProviderMetrics getInstance() {
+        if (instance == null) {
+            instance = new ProviderMetrics();
+        }
+        return instance;
+    }
+
+    /** @return i.e. "children" for {@link #OP_CHILDREN} */
+    @NotNull public static String getOperationName(int op) {
+        return OP_NAMES[op];
+    }
+
+    /** @return OP_XXX of name or -1 if unknown */
+    public static int getOperation(String name) {
+        for (int op = 0; op < OP_NAMES.length; op++) {
+            if (OP_NAMES[op].equals(name)) return op;
+        }
+        return -1;
+    }
+
+    /** @return number of OP_XXX */
+    public static int getOperationCount() {
+        return OP_NAMES.length;
+    }
+
+    /** @param startNanos {@link System#nanoTime()} when op started */
+    public void record(int op, long startNanos) {
+        latencies[op].record(System.nanoTime() - startNanos);
+    }
+
+    @NotNull public LatencyHistogram getLatency(int op) {
+        return latencies[op];
+    }
+
+    public void cacheHit(int cache) {
+        cacheHits.incrementAndGet(cache);
+    }
+
+    public void cacheMiss(int cache) {
+        cacheMisses.incrementAndGet(cache);
+    }
+
+    /** @return hits / (hits + misses) or 0 if the cache was never asked */
+    public double getHitRatio(int cache) {
+        long hits = cacheHits.get(cache);
+        long total = hits + cacheMisses.get(cache);
+        return (total == 0) ? 0 : (double) hits / total;
+    }
+
+    /** compressed bytes read from a zip file */
+    public void addBytesRead(long bytes) {
+        bytesRead.addAndGet(bytes);
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    /** uncompressed bytes delivered to a client */
+    public void addBytesServed(long bytes) {
+        bytesServed.addAndGet(bytes);
+    }
+
+    public long getBytesServed() {
+        return bytesServed.get();
+    }
+
+    /** @param entries number of local file headers that one request had to read to find its answer */
+    public void addEntriesScanned(long entries) {
+        scans.incrementAndGet();
+        entriesScanned.addAndGet(entries);
+        long max;
+        while (entries > (max = maxEntriesScanned.get()) && !maxEntriesScanned.compareAndSet(max, entries)) {
+            // another thread has changed max: try again
+        }
+    }
+
+    public long getEntriesScanned() {
+        return entriesScanned.get();
+    }
+
+    public void transferStarted() {
+        activeTransfers.incrementAndGet();
+    }
+
+    public void transferFinished() {
+        activeTransfers.decrementAndGet();
+    }
+
+    public int getActiveTransfers() {
+        return activeTransfers.get();
+    }
+
+    /**
+     * remember the time from process start until the first roots query was answered.
+     * @return true for the first call of this process
+     */
+    public boolean coldStartFinished(long millis) {
+        return coldStartMillis.compareAndSet(-1, millis);
+    }
+
+    /** @return -1 if there was no roots query yet */
+    public long getColdStartMillis() {
+        return coldStartMillis.get();
+    }
+
+    /** Active transfers and cold start are not reset because they are still running or happen once per process */
+    public void reset() {
+        for (LatencyHistogram latency : latencies) {
+            latency.reset();
+        }
+        for (int cache = 0; cache < CACHE_NAMES.length; cache++) {
+            cacheHits.set(cache, 0);
+            cacheMisses.set(cache, 0);
+        }
+        bytesRead.set(0);
+        bytesServed.set(0);
+        scans.set(0);
+        entriesScanned.set(0);
+        maxEntriesScanned.set(0);
+        since = System.currentTimeMillis();
+    }
+
+    public void dump(@NotNull PrintWriter out) {
+        out.printf(Locale.ROOT, "Zip2Saf metrics of the last %d s%n", (System.currentTimeMillis() - since) / 1000);
+        out.println("latency:");
+        for (int op = 0; op < latencies.length; op++) {
+            out.printf(Locale.ROOT, "  %-10s %s%n", OP_NAMES[op], latencies[op]);
+        }
+        out.println("cache:");
+        for (int cache = 0; cache < CACHE_NAMES.length; cache++) {
+            out.printf(Locale.ROOT, "  %-10s hits=%d misses=%d ratio=%.2f%n", CACHE_NAMES[cache],
+                    cacheHits.get(cache), cacheMisses.get(cache), getHitRatio(cache));
+        }
+        out.printf(Locale.ROOT, "bytes read=%d served=%d%n", getBytesRead(), getBytesServed());
+        long scans = this.scans.get();
+        out.printf(Locale.ROOT, "entries scanned=%d in %d scans (mean=%d max=%d)%n", getEntriesScanned(), scans,
+                (scans == 0) ? 0 : getEntriesScanned() / scans, maxEntriesScanned.get());
+        out.printf(Locale.ROOT, "active transfers=%d%n", getActiveTransfers());
+        if (getColdStartMillis() >= 0) {
+            out.printf(Locale.ROOT, "cold start to first roots query=%d ms%n", getColdStartMillis());
+        }
+        out.flush();
+    }
+}
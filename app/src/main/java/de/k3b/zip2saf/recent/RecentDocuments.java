@@ -0,0 +1,180 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.recent;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ranked list of the recently opened entries of one zip (android independent),
+ * persisted as append only access log.
+ *
+ * Every access adds 1 to the score of an entry, and scores halve every {@link #HALF_LIFE_MILLIS}.
+ * So an entry opened often last month can still beat one opened once yesterday.
+ * The score is kept as log2(score at time 0), so the ranking does not depend on
+ * the current time and updates are O(1).
+ *
+ * The log is compacted to one line per entry after {@link #COMPACT_AFTER_FACTOR} * maxEntries accesses.
+ * The rank can also be used to decide which entries are worth keeping in a cache.
+ */
+public class RecentDocuments {
+    public static final long HALF_LIFE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    static final int COMPACT_AFTER_FACTOR = 4;
+
+    private static final String ACCESS = "A";
+    private static final String RANK = "R";
+    private static final String DELIMITER = "\t";
+
+    @NotNull private final File file;
+    private final int maxEntries;
+
+    /** zipPath -> log2(score at time 0). Loaded on demand */
+    private Map<String, Double> path2rank = null;
+    /** sorted by rank descending. Created on demand */
+    private String[] ranked = null;
+    private int accessesSinceCompact = 0;
+
+    public RecentDocuments(@NotNull File file, int maxEntries) {
+        this.file = file;
+        this.maxEntries = maxEntries;
+    }
+
+    /** remember that zipPath was opened at timeMillis */
+    public synchronized void add(@NotNull String zipPath, long timeMillis) throws IOException {
+        if (zipPath.indexOf('\n') >= 0) return;
+        load();
+        addAccess(zipPath, timeMillis);
+        if (++accessesSinceCompact >= COMPACT_AFTER_FACTOR * maxEntries) {
+            compact();
+        } else {
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+                out.write(ACCESS + DELIMITER + timeMillis + DELIMITER + zipPath + "\n");
+            }
+        }
+    }
+
+    /** @return up to limit zip paths, most important first */
+    @NotNull public synchronized List<String> getRecent(int limit) {
+        load();
+        if (ranked == null) {
+            ranked = path2rank.keySet().toArray(new String[0]);
+            Arrays.sort(ranked, (a, b) -> Double.compare(path2rank.get(b), path2rank.get(a)));
+        }
+        return Arrays.asList(ranked).subList(0, Math.min(limit, ranked.length));
+    }
+
+    /** @return bigger is more important. {@link Double#NEGATIVE_INFINITY} if zipPath was never opened. */
+    public synchronized double getRank(@NotNull String zipPath) {
+        load();
+        Double rank = path2rank.get(zipPath);
+        return (rank == null) ? Double.NEGATIVE_INFINITY : rank;
+    }
+
+    private void addAccess(String zipPath, long timeMillis) {
+        double access = (double) timeMillis / HALF_LIFE_MILLIS;
+        Double old = path2rank.get(zipPath);
+        setRank(zipPath, (old == null) ? access : log2SumExp2(old, access));
+    }
+
+    private void setRank(String zipPath, double rank) {
+        path2rank.put(zipPath, rank);
+        ranked = null;
+        if (path2rank.size() > maxEntries) removeLowest();
+    }
+
+    private void removeLowest() {
+        String lowest = null;
+        double lowestRank = Double.POSITIVE_INFINITY;
+        for (Map.Entry<String, Double> entry : path2rank.entrySet()) {
+            if (entry.getValue() < lowestRank) {
+                lowestRank = entry.getValue();
+                lowest = entry.getKey();
+            }
+        }
+        path2rank.remove(lowest);
+    }
+
+    /** @return log2(2^a + 2^b) without overflow */
+    private static double log2SumExp2(double a, double b) {
+        double max = Math.max(a, b);
+        return max + Math.log(1 + Math.pow(2, Math.min(a, b) - max)) / Math.log(2);
+    }
+
+    private void load() {
+        if (path2rank != null) return;
+        path2rank = new HashMap<>();
+        if (!file.exists()) return;
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(DELIMITER, 3);
+                if (fields.length != 3) continue;
+                try {
+                    if (ACCESS.equals(fields[0])) {
+                        addAccess(fields[2], Long.parseLong(fields[1]));
+                        accessesSinceCompact++;
+                    } else if (RANK.equals(fields[0])) {
+                        setRank(fields[2], Double.parseDouble(fields[1]));
+                    }
+                } catch (NumberFormatException ignore) {
+                    // line was not completely written
+                }
+            }
+        } catch (IOException ignore) {
+            // use what could be read
+        }
+    }
+
+    /** replace the log by one line per entry */
+    private void compact() throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Double> entry : path2rank.entrySet()) {
+                out.write(RANK + DELIMITER + entry.getValue() + DELIMITER + entry.getKey() + "\n");
+            }
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot compact " + file);
+        }
+        accessesSinceCompact = 0;
+    }
+
+    /** forget everything */
+    public synchronized void clear() {
+        path2rank = new HashMap<>();
+        ranked = null;
+        accessesSinceCompact = 0;
+        file.delete();
+    }
+}
@@ -0,0 +1,200 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.thumbnail;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Extracts the small jpg preview that cameras embed into the exif data of a jpg (android independent).
+ *
+ * Only the APPn segments at the beginning of the jpg are read, never the image itself.
+ */
+public class ExifThumbnailReader {
+    /** stop searching for exif after this many bytes */
+    public static final int MAX_HEADER_BYTES = 128 * 1024;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_APP0 = 0xE0;
+    private static final int MARKER_APP1 = 0xE1;
+    private static final int MARKER_APP15 = 0xEF;
+    private static final int MARKER_COM = 0xFE;
+
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT = 0x0201;
+    private static final int TAG_JPEG_INTERCHANGE_FORMAT_LENGTH = 0x0202;
+    private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+
+    private ExifThumbnailReader() {
+    }
+
+    /**
+     * @param in stream positioned at the start of a jpg. Only the header is consumed.
+     * @return the embedded jpg thumbnail or null if in is not a jpg or has no exif thumbnail.
+     */
+    @Nullable public static byte[] read(@NotNull InputStream in) throws IOException {
+        if (in.read() != 0xFF || in.read() != MARKER_SOI) return null;
+
+        int consumed = 2;
+        while (consumed < MAX_HEADER_BYTES) {
+            int marker = readMarker(in);
+            if (marker < 0) return null;
+            boolean isApp = marker >= MARKER_APP0 && marker <= MARKER_APP15;
+            if (!isApp && marker != MARKER_COM) return null; // image data starts: no exif
+
+            int length = (readByte(in) << 8 | readByte(in)) - 2;
+            if (length < 0) return null;
+            consumed += 4 + length;
+            if (marker == MARKER_APP1) {
+                byte[] segment = new byte[length];
+                readFully(in, segment);
+                if (startsWith(segment, EXIF_HEADER)) {
+                    return getThumbnail(segment, EXIF_HEADER.length);
+                }
+            } else {
+                skipFully(in, length);
+            }
+        }
+        return null;
+    }
+
+    /** @return {width, height} of a jpg or null if unknown */
+    @Nullable public static int[] getJpegSize(@NotNull byte[] jpeg) {
+        int pos = 2;
+        while (pos + 9 < jpeg.length) {
+            if ((jpeg[pos] & 0xff) != 0xFF) return null;
+            int marker = jpeg[pos + 1] & 0xff;
+            if (marker == 0xFF) {
+                pos++; // fill byte
+                continue;
+            }
+            // SOF0 .. SOF15 except DHT (C4), JPG (C8) and DAC (CC)
+            if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                int height = (jpeg[pos + 5] & 0xff) << 8 | (jpeg[pos + 6] & 0xff);
+                int width = (jpeg[pos + 7] & 0xff) << 8 | (jpeg[pos + 8] & 0xff);
+                return new int[]{width, height};
+            }
+            pos += 2 + ((jpeg[pos + 2] & 0xff) << 8 | (jpeg[pos + 3] & 0xff));
+        }
+        return null;
+    }
+
+    /** @return the jpg of IFD1 of the tiff structure that starts at segment[tiff] */
+    @Nullable private static byte[] getThumbnail(@NotNull byte[] segment, int tiff) {
+        if (segment.length < tiff + 8) return null;
+        boolean littleEndian = segment[tiff] == 'I' && segment[tiff + 1] == 'I';
+        if (!littleEndian && !(segment[tiff] == 'M' && segment[tiff + 1] == 'M')) return null;
+
+        long ifd0 = getInt(segment, tiff + 4, littleEndian);
+        long ifd1 = getNextIfd(segment, tiff, ifd0, littleEndian);
+        // as long: a huge offset must not overflow to a negative position
+        if (ifd1 <= 0 || ifd1 > segment.length - tiff - 2) return null;
+
+        int ifd = (int) (tiff + ifd1);
+        int count = getShort(segment, ifd, littleEndian);
+        long offset = -1;
+        long length = -1;
+        for (int i = 0; i < count; i++) {
+            int entry = ifd + 2 + 12 * i;
+            if (entry + 12 > segment.length) return null;
+            int tag = getShort(segment, entry, littleEndian);
+            if (tag == TAG_JPEG_INTERCHANGE_FORMAT) offset = getInt(segment, entry + 8, littleEndian);
+            if (tag == TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) length = getInt(segment, entry + 8, littleEndian);
+        }
+        if (offset <= 0 || length <= 2 || tiff + offset + length > segment.length) return null;
+
+        int start = (int) (tiff + offset);
+        if ((segment[start] & 0xff) != 0xFF || (segment[start + 1] & 0xff) != MARKER_SOI) return null;
+        byte[] result = new byte[(int) length];
+        System.arraycopy(segment, start, result, 0, result.length);
+        return result;
+    }
+
+    /** @return offset of the ifd after the ifd at offset ifd or 0 if there is none */
+    private static long getNextIfd(@NotNull byte[] segment, int tiff, long ifd, boolean littleEndian) {
+        if (ifd <= 0 || tiff + ifd + 2 > segment.length) return 0;
+        int count = getShort(segment, (int) (tiff + ifd), littleEndian);
+        int next = (int) (tiff + ifd + 2 + 12L * count);
+        if (next + 4 > segment.length) return 0;
+        return getInt(segment, next, littleEndian);
+    }
+
+    private static int getShort(byte[] buffer, int pos, boolean littleEndian) {
+        int b0 = buffer[pos] & 0xff;
+        int b1 = buffer[pos + 1] & 0xff;
+        return littleEndian ? (b1 << 8 | b0) : (b0 << 8 | b1);
+    }
+
+    private static long getInt(byte[] buffer, int pos, boolean littleEndian) {
+        long result = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = buffer[pos + (littleEndian ? 3 - i : i)] & 0xff;
+            result = result << 8 | b;
+        }
+        return result;
+    }
+
+    private static boolean startsWith(byte[] buffer, byte[] prefix) {
+        if (buffer.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    /** @return next marker without fill bytes or -1 if there is no marker */
+    private static int readMarker(InputStream in) throws IOException {
+        if (in.read() != 0xFF) return -1;
+        int marker;
+        while ((marker = in.read()) == 0xFF) {
+            // fill byte
+        }
+        return marker;
+    }
+
+    private static int readByte(InputStream in) throws IOException {
+        int result = in.read();
+        if (result < 0) throw new EOFException();
+        return result;
+    }
+
+    private static void readFully(InputStream in, byte[] buffer) throws IOException {
+        int done = 0;
+        while (done < buffer.length) {
+            int read = in.read(buffer, done, buffer.length - done);
+            if (read < 0) throw new EOFException();
+            done += read;
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                readByte(in);
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.thumbnail;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+
+import de.k3b.zip2saf.cache.FileLruCache;
+
+/**
+ * Content addressed thumbnail files (android independent) with a global byte budget
+ * and least recently used eviction.
+ *
+ * Layout: root/mountId/sha1(key).thumb containing a png or jpg. The key contains everything that changes if the
+ * zip entry changes (crc, size) so an outdated thumbnail is never found again.
+ */
+public class ThumbnailCache extends FileLruCache {
+    private static final String EXTENSION = ".thumb";
+    /** thumbnails are created for sizes 32, 64, 128, ... */
+    private static final int MIN_SIZE_BUCKET = 32;
+
+    public ThumbnailCache(@NotNull File root, long maxBytes) {
+        super(root, maxBytes, EXTENSION);
+    }
+
+    /**
+     * @param documentId zipId + "/" + zipPath
+     * @param crc        of the zip entry or 0 if unknown
+     * @param size       uncompressed size of the zip entry or 0 if unknown
+     * @param sizeBucket see {@link #getSizeBucket(int, int)}
+     */
+    @NotNull public static String getKey(@NotNull String documentId, long crc, long size, int sizeBucket) {
+        return documentId + ":" + crc + ":" + size + ":" + sizeBucket;
+    }
+
+    /** @return size hints of the same power of 2 share the same thumbnail */
+    public static int getSizeBucket(int width, int height) {
+        return Math.max(MIN_SIZE_BUCKET, Integer.highestOneBit(Math.max(width, height)));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.trace;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+/**
+ * One recorded call of the storage provider (android independent). See {@link TraceWriter}.
+ */
+public class TraceRecord {
+    /** {@link ProviderMetrics#OP_CHILDREN}, ... */
+    public final int operation;
+    /** millis since the start of the trace */
+    public final long startMillis;
+    public final long durationMicros;
+    /** document id or root id of roots, search and recent */
+    @Nullable public final String documentId;
+    /** sort order of children, query of search or mode of open */
+    @Nullable public final String argument;
+    @Nullable public final String[] projection;
+    /** thumbnail size hint. 0 if none */
+    public final int sizeX;
+    public final int sizeY;
+
+    public TraceRecord(int operation, long startMillis, long durationMicros, @Nullable String documentId,
+                       @Nullable String argument, @Nullable String[] projection, int sizeX, int sizeY) {
+        this.operation = operation;
+        this.startMillis = startMillis;
+        this.durationMicros = durationMicros;
+        this.documentId = documentId;
+        this.argument = argument;
+        this.projection = projection;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "+" + startMillis + "ms " + ProviderMetrics.getOperationName(operation) + "('" + documentId + "'"
+                + ((argument != null) ? ",'" + argument + "'" : "")
+                + ((sizeX != 0 || sizeY != 0) ? "," + sizeX + "x" + sizeY : "")
+                + ") " + durationMicros + "us";
+    }
+}
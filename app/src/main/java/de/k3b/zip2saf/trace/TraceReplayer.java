@@ -0,0 +1,128 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.trace;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.k3b.zip2saf.metrics.LatencyHistogram;
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+/**
+ * Replays {@link TraceRecord}s recorded by {@link TraceWriter} against a {@link Target}
+ * to get reproducible latency numbers of a real access pattern (android independent).
+ */
+public class TraceReplayer {
+    /** executes one recorded call */
+    public interface Target {
+        void execute(@NotNull TraceRecord record) throws Exception;
+    }
+
+    /** latency per operation of one replay */
+    public static class Result {
+        private final LatencyHistogram[] latencies = new LatencyHistogram[ProviderMetrics.getOperationCount()];
+        private final AtomicLong errors = new AtomicLong();
+        private long elapsedMillis = 0;
+
+        Result() {
+            for (int op = 0; op < latencies.length; op++) latencies[op] = new LatencyHistogram();
+        }
+
+        @NotNull public LatencyHistogram getLatency(int operation) {
+            return latencies[operation];
+        }
+
+        public long getErrorCount() {
+            return errors.get();
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getCount() {
+            long result = 0;
+            for (LatencyHistogram latency : latencies) result += latency.getCount();
+            return result;
+        }
+
+        public void dump(@NotNull PrintWriter out) {
+            out.println("replayed " + getCount() + " calls in " + elapsedMillis + " ms, errors " + errors.get());
+            for (int op = 0; op < latencies.length; op++) {
+                if (latencies[op].getCount() > 0) {
+                    out.println("  " + ProviderMetrics.getOperationName(op) + ": " + latencies[op]);
+                }
+            }
+        }
+    }
+
+    @NotNull private final Target target;
+    private final int threads;
+    private final double speed;
+
+    /**
+     * @param threads number of concurrent callers
+     * @param speed 1 replays with the recorded timing, 2 twice as fast, 0 as fast as possible
+     */
+    public TraceReplayer(@NotNull Target target, int threads, double speed) {
+        this.target = target;
+        this.threads = Math.max(1, threads);
+        this.speed = speed;
+    }
+
+    /** @return when all records are finished */
+    @NotNull public Result replay(@NotNull List<TraceRecord> records) throws InterruptedException {
+        final Result result = new Result();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try {
+            for (final TraceRecord record : records) {
+                if (speed > 0) {
+                    long delayMillis = (long) (record.startMillis / speed) - (System.nanoTime() - start) / 1000000;
+                    if (delayMillis > 0) Thread.sleep(delayMillis);
+                }
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        long callStart = System.nanoTime();
+                        try {
+                            target.execute(record);
+                        } catch (Exception ignore) {
+                            // failing calls are part of the recorded pattern, too
+                            result.errors.incrementAndGet();
+                        }
+                        result.latencies[record.operation].record(System.nanoTime() - callStart);
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+        result.elapsedMillis = (System.nanoTime() - start) / 1000000;
+        return result;
+    }
+}
@@ -0,0 +1,246 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.trace;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+/**
+ * Records provider calls into a compact text file (android independent) so that the access pattern
+ * of a real session (gallery scrolling, bulk copy, ...) can be replayed later with {@link TraceReplayer}.
+ *
+ * One tab separated line per call: start millis, duration micros, operation, document id,
+ * argument, projection, size hint. Recording stops when the file reaches maxBytes.
+ */
+public class TraceWriter implements Closeable {
+    private static final String HEADER = "Z2ST\t1";
+    private static final String NULL = "\\N";
+    /** flush after this many records so that a killed provider process loses little */
+    private static final int FLUSH_INTERVAL = 64;
+
+    @NotNull private final File file;
+    private final long maxBytes;
+    private final long startNanos = System.nanoTime();
+    /** guarded by this */
+    @Nullable private Writer out;
+    private long bytes = 0;
+    private int unflushed = 0;
+    private int count = 0;
+
+    /** starts a new trace file. An existing file is overwritten */
+    public TraceWriter(@NotNull File file, long maxBytes) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        File dir = file.getParentFile();
+        if (dir != null) dir.mkdirs();
+        out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+        write(HEADER + "\t" + System.currentTimeMillis() + "\n");
+    }
+
+    /**
+     * @param startNanos {@link System#nanoTime()} when the call started
+     * @param sizeHint null or {x, y}
+     */
+    public void add(int operation, long startNanos, @Nullable String documentId, @Nullable String argument,
+                    @Nullable String[] projection, @Nullable int[] sizeHint) {
+        long durationMicros = (System.nanoTime() - startNanos) / 1000;
+        StringBuilder line = new StringBuilder(128)
+                .append((startNanos - this.startNanos) / 1000000).append('\t')
+                .append(durationMicros).append('\t')
+                .append(ProviderMetrics.getOperationName(operation)).append('\t');
+        escape(line, documentId).append('\t');
+        escape(line, argument).append('\t');
+        if (projection == null) {
+            line.append(NULL);
+        } else {
+            for (int i = 0; i < projection.length; i++) {
+                if (i > 0) line.append(',');
+                escape(line, projection[i]);
+            }
+        }
+        if (sizeHint != null) line.append('\t').append(sizeHint[0]).append('\t').append(sizeHint[1]);
+        line.append('\n');
+
+        synchronized (this) {
+            if (out == null) return;
+            try {
+                write(line.toString());
+                count++;
+                if (++unflushed >= FLUSH_INTERVAL) flush();
+                if (bytes >= maxBytes) close();
+            } catch (IOException ignore) {
+                // no more recording
+                closeSilently();
+            }
+        }
+    }
+
+    private void write(@NotNull String text) throws IOException {
+        out.write(text);
+        // ascii most of the time
+        bytes += text.length();
+    }
+
+    public synchronized void flush() throws IOException {
+        unflushed = 0;
+        if (out != null) out.flush();
+    }
+
+    /** @return false if recording has stopped because the file is full */
+    public synchronized boolean isRecording() {
+        return out != null;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    @NotNull public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            Writer closing = out;
+            out = null;
+            closing.close();
+        }
+    }
+
+    private void closeSilently() {
+        try {
+            close();
+        } catch (IOException ignore) {
+            // nothing to do
+        }
+    }
+
+    /**
+     * @return all records of a file created by {@link TraceWriter}. The last line is ignored if it is
+     * invalid or incomplete: the writer flushes mid-line, so a killed process leaves a torn last line.
+     */
+    @NotNull public static List<TraceRecord> read(@NotNull File file) throws IOException {
+        List<TraceRecord> result = new ArrayList<>();
+        boolean complete = endsWithNewLine(file);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = in.readLine();
+            if (line == null || !line.startsWith(HEADER + "\t")) throw new IOException("not a trace file " + file);
+            int lineNumber = 1;
+            String next = in.readLine();
+            while ((line = next) != null) {
+                next = in.readLine();
+                lineNumber++;
+                if (line.isEmpty() || (next == null && !complete)) continue;
+                TraceRecord record = parse(line);
+                if (record != null) {
+                    result.add(record);
+                } else if (next != null) {
+                    throw new IOException(file + ":" + lineNumber + " invalid trace record");
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean endsWithNewLine(@NotNull File file) throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            long length = in.length();
+            if (length == 0) return true;
+            in.seek(length - 1);
+            return in.read() == '\n';
+        }
+    }
+
+    @Nullable static TraceRecord parse(@NotNull String line) {
+        String[] fields = line.split("\t", -1);
+        if (fields.length != 6 && fields.length != 8) return null;
+        int operation = ProviderMetrics.getOperation(fields[2]);
+        if (operation < 0) return null;
+        try {
+            String[] projection = null;
+            if (!NULL.equals(fields[5])) {
+                projection = fields[5].split(",", -1);
+                for (int i = 0; i < projection.length; i++) projection[i] = unescape(projection[i]);
+            }
+            return new TraceRecord(operation, Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                    unescape(fields[3]), unescape(fields[4]), projection,
+                    (fields.length == 8) ? Integer.parseInt(fields[6]) : 0,
+                    (fields.length == 8) ? Integer.parseInt(fields[7]) : 0);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    @NotNull private static StringBuilder escape(@NotNull StringBuilder result, @Nullable String value) {
+        if (value == null) return result.append(NULL);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': result.append("\\\\"); break;
+                case '\t': result.append("\\t"); break;
+                case '\n': result.append("\\n"); break;
+                case '\r': result.append("\\r"); break;
+                case ',': result.append("\\c"); break;
+                default: result.append(c);
+            }
+        }
+        return result;
+    }
+
+    @Nullable private static String unescape(@NotNull String value) {
+        if (NULL.equals(value)) return null;
+        if (value.indexOf('\\') < 0) return value;
+        StringBuilder result = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                switch (next) {
+                    case 't': result.append('\t'); break;
+                    case 'n': result.append('\n'); break;
+                    case 'r': result.append('\r'); break;
+                    case 'c': result.append(','); break;
+                    default: result.append(next);
+                }
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,156 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.trace;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+
+import de.k3b.zip2saf.data.DocumentIds;
+import de.k3b.zip2saf.index.FileChannelInput;
+import de.k3b.zip2saf.index.MemoryZipIndex;
+import de.k3b.zip2saf.index.NameSearchIndex;
+import de.k3b.zip2saf.index.RandomAccessInput;
+import de.k3b.zip2saf.index.ZipCentralDirectoryReader;
+import de.k3b.zip2saf.index.ZipEntryReader;
+import de.k3b.zip2saf.index.ZipIndex;
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+/**
+ * {@link TraceReplayer.Target} that executes recorded calls against the android independent
+ * zip index and entry reader, without the android provider, cursors and pipes.
+ * Zip files of the trace are mapped by their zipId (root id) to local files.
+ */
+public class ZipCoreReplayTarget implements TraceReplayer.Target {
+    /** thumbnails are created from the beginning of the image */
+    private static final int THUMBNAIL_BYTES = 256 * 1024;
+    private static final int SEARCH_LIMIT = 500;
+
+    private final Map<String, File> zipFiles = new HashMap<>();
+    /** guarded by itself */
+    private final Map<String, ZipIndex> indexes = new HashMap<>();
+    /** guarded by {@link #indexes} */
+    private final Map<String, NameSearchIndex> searchIndexes = new HashMap<>();
+
+    /** calls of zipId are executed against zipFile */
+    @NotNull public ZipCoreReplayTarget add(@NotNull String zipId, @NotNull File zipFile) {
+        zipFiles.put(zipId, zipFile);
+        return this;
+    }
+
+    @Override
+    public void execute(@NotNull TraceRecord record) throws IOException {
+        String documentId = record.documentId;
+        if (documentId == null) return;
+        String zipId = DocumentIds.getRootId(documentId);
+        switch (record.operation) {
+            case ProviderMetrics.OP_ROOTS:
+            case ProviderMetrics.OP_RECENT:
+                getIndex(zipId);
+                break;
+            case ProviderMetrics.OP_SEARCH:
+                if (record.argument != null) getSearchIndex(zipId).search(record.argument, SEARCH_LIMIT);
+                break;
+            case ProviderMetrics.OP_CHILDREN: {
+                ZipIndex index = getIndex(zipId);
+                int dir = find(index, documentId);
+                int count = index.getChildCount(dir);
+                for (int i = 0; i < count; i++) {
+                    int child = index.getChild(dir, i);
+                    index.getName(child);
+                    index.getSize(child);
+                    index.getLastModified(child);
+                }
+                break;
+            }
+            case ProviderMetrics.OP_DOCUMENT: {
+                ZipIndex index = getIndex(zipId);
+                int node = find(index, documentId);
+                index.getSize(node);
+                index.getLastModified(node);
+                break;
+            }
+            case ProviderMetrics.OP_OPEN:
+                read(zipId, documentId, Long.MAX_VALUE);
+                break;
+            case ProviderMetrics.OP_THUMBNAIL:
+                read(zipId, documentId, THUMBNAIL_BYTES);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operation " + record);
+        }
+    }
+
+    private void read(@NotNull String zipId, @NotNull String documentId, long maxBytes) throws IOException {
+        ZipIndex index = getIndex(zipId);
+        int node = find(index, documentId);
+        if (!ZipEntryReader.canOpen(index, node)) throw new IOException("cannot open " + documentId);
+        byte[] buffer = new byte[64 * 1024];
+        long done = 0;
+        try (InputStream in = ZipEntryReader.open(openInput(zipId), index, node)) {
+            int read;
+            while (done < maxBytes && (read = in.read(buffer)) > 0) done += read;
+        }
+    }
+
+    private static int find(@NotNull ZipIndex index, @NotNull String documentId) throws FileNotFoundException {
+        int node = index.find(DocumentIds.getZipPath(documentId));
+        if (node == ZipIndex.NOT_FOUND) throw new FileNotFoundException(documentId);
+        return node;
+    }
+
+    @NotNull private ZipIndex getIndex(@NotNull String zipId) throws IOException {
+        synchronized (indexes) {
+            ZipIndex result = indexes.get(zipId);
+            if (result == null) {
+                try (RandomAccessInput input = openInput(zipId)) {
+                    result = MemoryZipIndex.create(ZipCentralDirectoryReader.read(input));
+                }
+                indexes.put(zipId, result);
+            }
+            return result;
+        }
+    }
+
+    @NotNull private NameSearchIndex getSearchIndex(@NotNull String zipId) throws IOException {
+        ZipIndex index = getIndex(zipId);
+        synchronized (indexes) {
+            NameSearchIndex result = searchIndexes.get(zipId);
+            if (result == null) {
+                result = NameSearchIndex.create(index);
+                searchIndexes.put(zipId, result);
+            }
+            return result;
+        }
+    }
+
+    @NotNull private RandomAccessInput openInput(@NotNull String zipId) throws IOException {
+        File file = zipFiles.get(zipId);
+        if (file == null) throw new FileNotFoundException("no zip file for " + zipId);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        return new FileChannelInput(raf.getChannel(), raf);
+    }
+}
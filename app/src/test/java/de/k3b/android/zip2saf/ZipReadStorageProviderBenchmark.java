@@ -0,0 +1,291 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.android.zip2saf;
+
+import static org.robolectric.Shadows.shadowOf;
+
+import android.Manifest;
+import android.app.Application;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.graphics.Point;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.ParcelFileDescriptor;
+import android.provider.DocumentsContract;
+import android.provider.DocumentsContract.Document;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import de.k3b.zip2saf.benchmark.CorpusGenerator;
+import de.k3b.zip2saf.benchmark.CorpusGenerator.Shape;
+import de.k3b.zip2saf.data.MountInfo;
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+/**
+ * End-to-end benchmark: drives {@link ZipReadStorageProvider} like DocumentsUI does
+ * (roots, listing every directory, document metadata, reading files, thumbnails) against the
+ * archives of {@link CorpusGenerator} and reports latency percentiles, bytes read from the zip
+ * and peak heap per archive.
+ *
+ * Runs on the plain jvm via robolectric. Skipped unless started with
+ * ./gradlew :app:testDebugUnitTest --tests '*ZipReadStorageProviderBenchmark' -Pzip2saf.benchmark
+ */
+@RunWith(RobolectricTestRunner.class)
+// proxy file descriptors of Android-8 ff need a real device: all content goes through the pipe
+@Config(sdk = Build.VERSION_CODES.N_MR1)
+public class ZipReadStorageProviderBenchmark {
+    private static final int ROOT_QUERIES = 100;
+    private static final int MAX_DIRECTORIES = 200;
+    private static final int MAX_DOCUMENTS = 1000;
+    private static final int MAX_OPENS = 50;
+    private static final int MAX_THUMBNAILS = 20;
+    private static final long LOADING_POLL_MILLIS = 20;
+
+    private Application context;
+    private ZipReadStorageProvider provider;
+    private MountInfo mountInfo = null;
+
+    @Before
+    public void setUp() {
+        Assume.assumeTrue("benchmark not enabled", Boolean.getBoolean("zip2saf.benchmark"));
+        ZipReadStorageProvider.debug = false;
+        context = RuntimeEnvironment.getApplication();
+        shadowOf(context).grantPermissions(Manifest.permission.READ_EXTERNAL_STORAGE);
+        provider = Robolectric.setupContentProvider(ZipReadStorageProvider.class, BuildConfig.DOCUMENTS_AUTHORITY);
+    }
+
+    @After
+    public void tearDown() {
+        if (mountInfo != null) {
+            Zip2SafHelper.getRepository().remove(mountInfo);
+            Zip2SafHelper.clearIndex(context, mountInfo.zipId);
+            Zip2SafHelper.clearThumbCache(context, mountInfo.zipId);
+        }
+    }
+
+    @Test
+    public void flat1M() throws Exception {
+        run(Shape.FLAT_1M, null);
+    }
+
+    @Test
+    public void deepTree() throws Exception {
+        run(Shape.DEEP_TREE, null);
+    }
+
+    @Test
+    public void largeStoredMedia() throws Exception {
+        run(Shape.LARGE_STORED_MEDIA, null);
+    }
+
+    @Test
+    public void zip64() throws Exception {
+        run(Shape.ZIP64, null);
+    }
+
+    @Test
+    public void dataDescriptor() throws Exception {
+        run(Shape.DATA_DESCRIPTOR, null);
+    }
+
+    @Test
+    public void passwordProtected() throws Exception {
+        run(Shape.PASSWORD_PROTECTED, CorpusGenerator.PASSWORD);
+    }
+
+    private void run(Shape shape, String password) throws Exception {
+        File zip = CorpusGenerator.getOrCreate(new File(System.getProperty("zip2saf.corpus", "build/benchmark-corpus")), shape);
+        mountInfo = new MountInfo(zip.getName(), Uri.fromFile(zip).toString(), password);
+        Zip2SafHelper.getRepository().add(mountInfo);
+
+        Scenario scenario = new Scenario(shape.name(), zip.length());
+        ProviderMetrics.getInstance().reset();
+        resetPeakHeap();
+
+        for (int i = 0; i < ROOT_QUERIES; i++) {
+            scenario.time("queryRoots", () -> provider.queryRoots(null));
+        }
+
+        List<String> files = new ArrayList<>();
+        Deque<String> directories = new ArrayDeque<>();
+        directories.add(mountInfo.zipId);
+        int listed = 0;
+        while (!directories.isEmpty() && listed < MAX_DIRECTORIES) {
+            // the first listing includes loading the index
+            String operation = (listed++ == 0) ? "queryChildDocuments (first)" : "queryChildDocuments";
+            try (Cursor children = listCompletely(scenario, operation, directories.removeFirst())) {
+                int idColumn = children.getColumnIndex(Document.COLUMN_DOCUMENT_ID);
+                int mimeColumn = children.getColumnIndex(Document.COLUMN_MIME_TYPE);
+                while (children.moveToNext()) {
+                    String documentId = children.getString(idColumn);
+                    if (Document.MIME_TYPE_DIR.equals(children.getString(mimeColumn))) {
+                        directories.add(documentId);
+                    } else if (files.size() < MAX_DOCUMENTS) {
+                        files.add(documentId);
+                    }
+                }
+            }
+        }
+
+        for (String documentId : files) {
+            scenario.time("queryDocument", () -> provider.queryDocument(documentId, null));
+        }
+        for (String documentId : files.subList(0, Math.min(MAX_OPENS, files.size()))) {
+            scenario.time("openDocument+read", () -> {
+                drain(provider.openDocument(documentId, "r", null));
+                return null;
+            });
+        }
+        int thumbnails = 0;
+        for (String documentId : files) {
+            if (thumbnails >= MAX_THUMBNAILS) break;
+            if (documentId.endsWith(".jpg")) {
+                thumbnails++;
+                scenario.time("openDocumentThumbnail", () -> provider.openDocumentThumbnail(documentId, new Point(256, 256), null));
+            }
+        }
+
+        scenario.report(ProviderMetrics.getInstance(), getPeakHeap());
+    }
+
+    /** @return all children of documentId. Queries again while the provider is still loading */
+    private Cursor listCompletely(Scenario scenario, String operation, String documentId) throws Exception {
+        while (true) {
+            Cursor result = scenario.time(operation, () -> provider.queryChildDocuments(documentId, null, null));
+            Bundle extras = result.getExtras();
+            if (extras == null || !extras.getBoolean(DocumentsContract.EXTRA_LOADING)) return result;
+            result.close();
+            Thread.sleep(LOADING_POLL_MILLIS);
+        }
+    }
+
+    private static long drain(ParcelFileDescriptor pfd) throws IOException {
+        long bytes = 0;
+        try (InputStream in = new ParcelFileDescriptor.AutoCloseInputStream(pfd)) {
+            byte[] buffer = new byte[64 * 1024];
+            int len;
+            while ((len = in.read(buffer)) > 0) bytes += len;
+        }
+        return bytes;
+    }
+
+    private static void resetPeakHeap() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    private static long getPeakHeap() {
+        long result = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) result += pool.getPeakUsage().getUsed();
+        }
+        return result;
+    }
+
+    private interface Operation<T> {
+        T execute() throws Exception;
+    }
+
+    /** latencies of all operations of one archive */
+    private static class Scenario {
+        private final String name;
+        private final long zipSize;
+        private final Map<String, List<Long>> nanos = new LinkedHashMap<>();
+
+        Scenario(String name, long zipSize) {
+            this.name = name;
+            this.zipSize = zipSize;
+        }
+
+        /** closes the result unless it is a cursor that the caller still needs */
+        <T> T time(String operation, Operation<T> op) throws Exception {
+            long start = System.nanoTime();
+            T result = op.execute();
+            long duration = System.nanoTime() - start;
+            List<Long> samples = nanos.get(operation);
+            if (samples == null) {
+                samples = new ArrayList<>();
+                nanos.put(operation, samples);
+            }
+            samples.add(duration);
+            if (result instanceof Closeable && !(result instanceof Cursor && operation.startsWith("queryChildDocuments"))) {
+                ((Closeable) result).close();
+            }
+            return result;
+        }
+
+        void report(ProviderMetrics metrics, long peakHeap) throws IOException {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format(Locale.ROOT, "%s: zip=%d bytes, read from zip=%d bytes, served=%d bytes, peak heap=%d MB%n",
+                    name, zipSize, metrics.getBytesRead(), metrics.getBytesServed(), peakHeap / (1024 * 1024)));
+            text.append(String.format(Locale.ROOT, "  %-28s %7s %10s %10s %10s %10s%n", "operation", "n", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+            for (Map.Entry<String, List<Long>> entry : nanos.entrySet()) {
+                long[] sorted = new long[entry.getValue().size()];
+                for (int i = 0; i < sorted.length; i++) sorted[i] = entry.getValue().get(i);
+                Arrays.sort(sorted);
+                text.append(String.format(Locale.ROOT, "  %-28s %7d %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(), sorted.length,
+                        percentile(sorted, 50), percentile(sorted, 90), percentile(sorted, 99), sorted[sorted.length - 1] / 1e6));
+            }
+            System.out.print(text);
+
+            File file = new File(System.getProperty("zip2saf.report", "build/reports/provider-benchmark.txt"));
+            file.getParentFile().mkdirs();
+            try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+                out.print(text);
+            }
+        }
+
+        /** @return percent percentile in milliseconds */
+        private static double percentile(long[] sorted, int percent) {
+            int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, index)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import net.lingala.zip4j.model.ZipParameters;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import net.lingala.zip4j.model.enums.EncryptionMethod;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Creates the synthetic zip files of the provider benchmark (plain jvm, no android).
+ * Every {@link Shape} stresses a different part of the provider.
+ *
+ * The content is deterministic so that results of different runs can be compared.
+ */
+public class CorpusGenerator {
+    public static final String PASSWORD = "benchmark";
+
+    public enum Shape {
+        /** 1M small entries in few directories: index size and listing of huge directories */
+        FLAT_1M,
+        /** 12 directory levels: path handling and navigation */
+        DEEP_TREE,
+        /** 100 MB STORED videos: seeking and bytes served */
+        LARGE_STORED_MEDIA,
+        /** every entry with zip64 extra fields */
+        ZIP64,
+        /** DEFLATED entries with sizes only in the data descriptor (streaming zip writers) */
+        DATA_DESCRIPTOR,
+        /** encrypted entries that must be read through zip4j */
+        PASSWORD_PROTECTED
+    }
+
+    private static final long DOS_TIME_2022 = (42L << 25) | (1 << 21) | (1 << 16);
+    private static byte[] jpeg = null;
+
+    private CorpusGenerator() {
+    }
+
+    /** @return zip file of shape in dir. Created if it does not exist yet */
+    @NotNull public static File getOrCreate(@NotNull File dir, @NotNull Shape shape) throws IOException {
+        File result = new File(dir, shape.name().toLowerCase(Locale.ROOT) + ".zip");
+        if (result.exists()) return result;
+
+        dir.mkdirs();
+        File temp = new File(dir, result.getName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 1 << 20)) {
+            switch (shape) {
+                case FLAT_1M: writeFlat(out, 1_000_000, 10_000); break;
+                case DEEP_TREE: writeDeepTree(out, 12, 2, 4); break;
+                case LARGE_STORED_MEDIA: writeStoredMedia(out, 4, 100 * 1024 * 1024); break;
+                case ZIP64: writeZip64(out, 10_000); break;
+                case DATA_DESCRIPTOR: writeDataDescriptor(out, 10_000); break;
+                case PASSWORD_PROTECTED: writePasswordProtected(out, 1_000, PASSWORD); break;
+                default: throw new IllegalArgumentException(shape.name());
+            }
+        }
+        if (!temp.renameTo(result)) throw new IOException("cannot create " + result);
+        return result;
+    }
+
+    /** count small jpg entries, filesPerDir in every directory */
+    public static void writeFlat(@NotNull OutputStream out, int count, int filesPerDir) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(out))) {
+            for (int i = 0; i < count; i++) {
+                putStored(zip, String.format(Locale.ROOT, "dir%04d/IMG_%07d.jpg", i / filesPerDir, i), getJpeg());
+            }
+        }
+    }
+
+    /** fanOut^depth directories with filesPerDir entries each */
+    public static void writeDeepTree(@NotNull OutputStream out, int depth, int fanOut, int filesPerDir) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(out))) {
+            writeTree(zip, "", depth, fanOut, filesPerDir);
+        }
+    }
+
+    private static void writeTree(ZipOutputStream zip, String dir, int depth, int fanOut, int filesPerDir) throws IOException {
+        for (int i = 0; i < filesPerDir; i++) {
+            putStored(zip, dir + "IMG_" + i + ".jpg", getJpeg());
+        }
+        if (depth == 0) return;
+        for (int i = 0; i < fanOut; i++) {
+            writeTree(zip, dir + "level" + depth + "_" + i + "/", depth - 1, fanOut, filesPerDir);
+        }
+    }
+
+    /** count STORED entries with size random bytes */
+    public static void writeStoredMedia(@NotNull OutputStream out, int count, int size) throws IOException {
+        Random random = new Random(count);
+        byte[] content = new byte[size];
+        try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(out))) {
+            for (int i = 0; i < count; i++) {
+                random.nextBytes(content);
+                putStored(zip, "video/clip" + i + ".mp4", content);
+            }
+        }
+    }
+
+    /** count DEFLATED text entries. java.util.zip puts crc and sizes into the data descriptor */
+    public static void writeDataDescriptor(@NotNull OutputStream out, int count) throws IOException {
+        try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(out))) {
+            for (int i = 0; i < count; i++) {
+                zip.putNextEntry(new ZipEntry(String.format(Locale.ROOT, "logs/%03d/log%06d.txt", i / 1000, i)));
+                zip.write(getText(i));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /** count encrypted DEFLATED text entries */
+    public static void writePasswordProtected(@NotNull OutputStream out, int count, @NotNull String password) throws IOException {
+        try (net.lingala.zip4j.io.outputstream.ZipOutputStream zip = new net.lingala.zip4j.io.outputstream.ZipOutputStream(
+                new NonClosingOutputStream(out), password.toCharArray())) {
+            for (int i = 0; i < count; i++) {
+                ZipParameters parameters = new ZipParameters();
+                parameters.setCompressionMethod(CompressionMethod.DEFLATE);
+                parameters.setEncryptFiles(true);
+                parameters.setEncryptionMethod(EncryptionMethod.AES);
+                parameters.setFileNameInZip(String.format(Locale.ROOT, "secret/doc%05d.txt", i));
+                zip.putNextEntry(parameters);
+                zip.write(getText(i));
+                zip.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * count STORED text entries where sizes and offsets are only in the zip64 extra fields,
+     * followed by the zip64 end of central directory. java.util.zip uses zip64 only when needed.
+     */
+    public static void writeZip64(@NotNull OutputStream out, int count) throws IOException {
+        LittleEndianOutput zip = new LittleEndianOutput(out);
+        byte[][] names = new byte[count][];
+        long[] crcs = new long[count];
+        long[] sizes = new long[count];
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = String.format(Locale.ROOT, "data/%03d/file%06d.txt", i / 1000, i).getBytes(StandardCharsets.UTF_8);
+            byte[] content = getText(i);
+            CRC32 crc = new CRC32();
+            crc.update(content);
+            crcs[i] = crc.getValue();
+            sizes[i] = content.length;
+            offsets[i] = zip.written;
+
+            zip.int32(0x04034b50);
+            zip.int16(45);
+            zip.int16(0);
+            zip.int16(ZipEntry.STORED);
+            zip.int32(DOS_TIME_2022);
+            zip.int32(crcs[i]);
+            zip.int32(0xffffffffL);
+            zip.int32(0xffffffffL);
+            zip.int16(names[i].length);
+            zip.int16(20);
+            zip.write(names[i]);
+            zip.int16(0x0001);
+            zip.int16(16);
+            zip.int64(sizes[i]);
+            zip.int64(sizes[i]);
+            zip.write(content);
+        }
+
+        long cdOffset = zip.written;
+        for (int i = 0; i < count; i++) {
+            zip.int32(0x02014b50);
+            zip.int16(45);
+            zip.int16(45);
+            zip.int16(0);
+            zip.int16(ZipEntry.STORED);
+            zip.int32(DOS_TIME_2022);
+            zip.int32(crcs[i]);
+            zip.int32(0xffffffffL);
+            zip.int32(0xffffffffL);
+            zip.int16(names[i].length);
+            zip.int16(28);
+            zip.int16(0);
+            zip.int16(0);
+            zip.int16(0);
+            zip.int32(0);
+            zip.int32(0xffffffffL);
+            zip.write(names[i]);
+            zip.int16(0x0001);
+            zip.int16(24);
+            zip.int64(sizes[i]);
+            zip.int64(sizes[i]);
+            zip.int64(offsets[i]);
+        }
+        long cdSize = zip.written - cdOffset;
+
+        long zip64EocdOffset = zip.written;
+        zip.int32(0x06064b50);
+        zip.int64(44);
+        zip.int16(45);
+        zip.int16(45);
+        zip.int32(0);
+        zip.int32(0);
+        zip.int64(count);
+        zip.int64(count);
+        zip.int64(cdSize);
+        zip.int64(cdOffset);
+
+        zip.int32(0x07064b50);
+        zip.int32(0);
+        zip.int64(zip64EocdOffset);
+        zip.int32(1);
+
+        zip.int32(0x06054b50);
+        zip.int16(0xffff);
+        zip.int16(0xffff);
+        zip.int16(0xffff);
+        zip.int16(0xffff);
+        zip.int32(0xffffffffL);
+        zip.int32(0xffffffffL);
+        zip.int16(0);
+        zip.flush();
+    }
+
+    private static void putStored(ZipOutputStream zip, String name, byte[] content) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+        zip.putNextEntry(entry);
+        zip.write(content);
+        zip.closeEntry();
+    }
+
+    @NotNull private static byte[] getText(int i) {
+        StringBuilder result = new StringBuilder();
+        for (int line = 0; line < 20; line++) {
+            result.append("entry ").append(i).append(" line ").append(line).append(": lorem ipsum dolor sit amet\n");
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** @return the same small real jpg for every image entry so that thumbnails can be decoded */
+    @NotNull static synchronized byte[] getJpeg() throws IOException {
+        if (jpeg == null) {
+            BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(Color.ORANGE);
+            graphics.fillRect(40, 40, 240, 160);
+            graphics.dispose();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!ImageIO.write(image, "jpg", out)) throw new IOException("no jpg writer");
+            jpeg = out.toByteArray();
+        }
+        return jpeg;
+    }
+
+    /** closing the zip must not close the file of {@link #getOrCreate(File, Shape)} twice */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    private static class LittleEndianOutput extends FilterOutputStream {
+        long written = 0;
+
+        LittleEndianOutput(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+        }
+
+        void int16(int value) throws IOException {
+            write(value & 0xff);
+            write((value >> 8) & 0xff);
+        }
+
+        void int32(long value) throws IOException {
+            int16((int) (value & 0xffff));
+            int16((int) ((value >> 16) & 0xffff));
+        }
+
+        void int64(long value) throws IOException {
+            int32(value & 0xffffffffL);
+            int32(value >>> 32);
+        }
+    }
+}
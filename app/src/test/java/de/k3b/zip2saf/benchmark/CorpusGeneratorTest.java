@@ -0,0 +1,107 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import de.k3b.zip2saf.index.MemoryZipIndex;
+import de.k3b.zip2saf.index.RandomAccessInput;
+import de.k3b.zip2saf.index.ZipCentralDirectoryReader;
+import de.k3b.zip2saf.index.ZipEntryInfo;
+import de.k3b.zip2saf.index.ZipEntryReader;
+import de.k3b.zip2saf.index.ZipIndex;
+
+public class CorpusGeneratorTest {
+    @Test
+    public void zip64() throws IOException {
+        ByteArrayOutputStream zip = new ByteArrayOutputStream();
+        CorpusGenerator.writeZip64(zip, 3);
+        byte[] bytes = zip.toByteArray();
+        List<ZipEntryInfo> entries = ZipCentralDirectoryReader.read(new ByteArrayInput(bytes));
+
+        assertEquals(3, entries.size());
+        assertEquals("data/000/file000002.txt", entries.get(2).fileName);
+        assertTrue(entries.get(2).localHeaderOffset > 0);
+
+        // sizes of the local file header are in the zip64 extra field, too
+        ZipIndex index = MemoryZipIndex.create(entries);
+        int node = index.find("data/000/file000001.txt");
+        assertTrue(ZipEntryReader.canOpen(index, node));
+        try (InputStream in = ZipEntryReader.open(new ByteArrayInput(bytes), index, node)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int len;
+            while ((len = in.read(buffer)) > 0) content.write(buffer, 0, len);
+            assertTrue(content.toString("UTF-8").startsWith("entry 1 line 0"));
+        }
+    }
+
+    @Test
+    public void shapes() throws IOException {
+        ByteArrayOutputStream flat = new ByteArrayOutputStream();
+        CorpusGenerator.writeFlat(flat, 25, 10);
+        ZipIndex index = MemoryZipIndex.create(ZipCentralDirectoryReader.read(new ByteArrayInput(flat.toByteArray())));
+        assertEquals(3, index.getChildCount(ZipIndex.ROOT));
+        assertEquals(5, index.getChildCount(index.find("dir0002/")));
+
+        ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        CorpusGenerator.writeDeepTree(tree, 3, 2, 1);
+        index = MemoryZipIndex.create(ZipCentralDirectoryReader.read(new ByteArrayInput(tree.toByteArray())));
+        assertNotEquals(ZipIndex.NOT_FOUND, index.find("level3_1/level2_0/level1_1/IMG_0.jpg"));
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        CorpusGenerator.writeDataDescriptor(streamed, 2);
+        List<ZipEntryInfo> entries = ZipCentralDirectoryReader.read(new ByteArrayInput(streamed.toByteArray()));
+        assertEquals(ZipEntryInfo.METHOD_DEFLATED, entries.get(1).method);
+        assertTrue(entries.get(1).uncompressedSize > 0);
+    }
+
+    static class ByteArrayInput implements RandomAccessInput {
+        private final byte[] data;
+
+        ByteArrayInput(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int len) {
+            if (position >= data.length) return -1;
+            int count = (int) Math.min(len, data.length - position);
+            System.arraycopy(data, (int) position, buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
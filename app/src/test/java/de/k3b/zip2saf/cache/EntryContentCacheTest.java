@@ -0,0 +1,103 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.cache;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+public class EntryContentCacheTest {
+    private File root;
+    private EntryContentCache sut;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("EntryContentCacheTest").toFile();
+        sut = new EntryContentCache(250, 100, root, 10000, 1000);
+    }
+
+    @After
+    public void tearDown() {
+        for (File dir : root.listFiles()) {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+        root.delete();
+    }
+
+    private static void readAll(InputStream in) throws IOException {
+        byte[] buffer = new byte[30];
+        while (in.read(buffer) >= 0) {
+            // read everything
+        }
+        in.close();
+    }
+
+    private void cache(String key, int size) throws IOException {
+        readAll(sut.wrap("zip", key, size, new ByteArrayInputStream(new byte[size])));
+    }
+
+    @Test
+    public void memoryAndDiskTier() throws IOException {
+        String small = EntryContentCache.getKey("zip/small.txt", 1, 100);
+        String medium = EntryContentCache.getKey("zip/medium.txt", 2, 500);
+        cache(small, 100);
+        cache(medium, 500);
+
+        assertEquals(100, sut.getBytes(small).length);
+        assertNull(sut.getFile("zip", small));
+        assertNull(sut.getBytes(medium));
+        assertEquals(500, sut.getFile("zip", medium).length());
+        assertNull("changed crc", sut.getBytes(EntryContentCache.getKey("zip/small.txt", 3, 100)));
+
+        sut.invalidate("zip");
+        assertNull(sut.getBytes(small));
+        assertNull(sut.getFile("zip", medium));
+    }
+
+    @Test
+    public void partialReadIsNotCached() throws IOException {
+        InputStream in = sut.wrap("zip", "partial", 100, new ByteArrayInputStream(new byte[100]));
+        in.read(new byte[10]);
+        in.close();
+        assertNull(sut.getBytes("partial"));
+        assertFalse(sut.isCacheable(1001));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsedFromMemory() throws IOException {
+        cache("a", 100);
+        cache("b", 100);
+        sut.getBytes("a");
+        cache("c", 100);
+
+        assertNotNull(sut.getBytes("a"));
+        assertNull(sut.getBytes("b"));
+        assertEquals(200, sut.getMemoryBytes());
+    }
+}
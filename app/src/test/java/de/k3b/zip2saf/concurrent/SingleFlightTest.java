@@ -0,0 +1,100 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.concurrent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class SingleFlightTest {
+    private final SingleFlight<String> sut = new SingleFlight<>();
+    private final AtomicInteger computeCount = new AtomicInteger();
+    private final CountDownLatch computing = new CountDownLatch(1);
+    private final CountDownLatch finish = new CountDownLatch(1);
+
+    /** blocks until finish */
+    private String compute() {
+        computeCount.incrementAndGet();
+        computing.countDown();
+        try {
+            finish.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ignore) {
+        }
+        return "result";
+    }
+
+    private Thread startLeader(AtomicReference<String> result) throws InterruptedException {
+        Thread leader = new Thread(() -> result.set(sut.execute("key", this::compute, null)));
+        leader.start();
+        assertTrue(computing.await(5, TimeUnit.SECONDS));
+        return leader;
+    }
+
+    @Test
+    public void concurrentCallsShareOneComputation() throws InterruptedException {
+        AtomicReference<String> leaderResult = new AtomicReference<>();
+        AtomicReference<String> followerResult = new AtomicReference<>();
+        Thread leader = startLeader(leaderResult);
+        Thread follower = new Thread(() -> followerResult.set(sut.execute("key", this::compute, null)));
+        follower.start();
+        while (sut.getSharedCount() == 0) Thread.sleep(1);
+
+        finish.countDown();
+        leader.join(5000);
+        follower.join(5000);
+        assertEquals("result", leaderResult.get());
+        assertEquals("result", followerResult.get());
+        assertEquals(1, computeCount.get());
+
+        // finished: next call computes again
+        sut.execute("key", this::compute, null);
+        assertEquals(2, computeCount.get());
+    }
+
+    @Test
+    public void canceledCallerDetaches() throws InterruptedException {
+        AtomicReference<String> leaderResult = new AtomicReference<>();
+        Thread leader = startLeader(leaderResult);
+        try {
+            sut.execute("key", this::compute, () -> true);
+            fail("CancellationException expected");
+        } catch (CancellationException expected) {
+            // the computation of the leader continues
+        }
+
+        finish.countDown();
+        leader.join(5000);
+        assertEquals("result", leaderResult.get());
+        assertEquals(1, computeCount.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void exceptionIsPropagated() {
+        sut.execute("key", () -> {
+            throw new IllegalArgumentException();
+        }, null);
+    }
+}
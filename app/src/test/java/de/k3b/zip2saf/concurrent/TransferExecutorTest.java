@@ -0,0 +1,203 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.concurrent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.Pipe;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TransferExecutorTest {
+    private final TransferExecutor sut = new TransferExecutor(2);
+
+    @Test
+    public void transfer() throws Exception {
+        byte[] content = new byte[1000000];
+        new Random(1).nextBytes(content);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        sut.submit(new ByteArrayInputStream(content), out, (transfer, bytes, error) -> {
+            assertNull(error);
+            finished.countDown();
+        });
+
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertArrayEquals(content, out.toByteArray());
+        assertEquals(content.length, sut.getTransferredBytes());
+        assertEquals(0, sut.getActiveCount());
+    }
+
+    @Test
+    public void cancelEndlessTransfer() throws Exception {
+        InputStream endless = new InputStream() {
+            @Override
+            public int read() {
+                return 1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return len;
+            }
+        };
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicLong transferred = new AtomicLong();
+        TransferExecutor.Transfer transfer = sut.submit(endless, new ByteArrayOutputStream() {
+            @Override
+            public void write(byte[] b, int off, int len) {
+                // discard
+            }
+        }, (t, bytes, error) -> {
+            transferred.set(bytes);
+            finished.countDown();
+        });
+        while (sut.getTransferredBytes() == 0) Thread.sleep(1);
+
+        transfer.cancel();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(transfer.isCanceled());
+        assertTrue(transferred.get() > 0);
+    }
+
+    /** endless content of ones */
+    private static final InputStream ENDLESS = new InputStream() {
+        @Override
+        public int read() {
+            return 1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            return len;
+        }
+    };
+
+    /** blocks until release */
+    private static InputStream createBlocking(CountDownLatch release) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+    }
+
+    private static int countTransferThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.isAlive() && thread.getName().startsWith("TransferThread-")) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void busyPoolQueuesNewTransfer() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // both threads are busy
+        sut.submit(createBlocking(release), new ByteArrayOutputStream(), null);
+        sut.submit(createBlocking(release), new ByteArrayOutputStream(), null);
+
+        CountDownLatch finished = new CountDownLatch(1);
+        sut.submit(new ByteArrayInputStream(new byte[10]), new ByteArrayOutputStream(),
+                (t, bytes, error) -> finished.countDown());
+        assertFalse("waits for a pool thread", finished.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(1, sut.getQueuedCount());
+
+        release.countDown();
+        assertTrue("finished when a pool thread is free", finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void manyTransfersKeepThreadCountBounded() throws Exception {
+        TransferExecutor sut = new TransferExecutor(2, 4);
+        int threadsBefore = countTransferThreads();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(6);
+        int rejected = 0;
+        for (int i = 0; i < 500; i++) {
+            try {
+                sut.submit(createBlocking(release), new ByteArrayOutputStream(),
+                        (t, bytes, error) -> finished.countDown());
+            } catch (IOException tooManyTransfers) {
+                rejected++;
+            }
+        }
+
+        assertEquals(494, rejected);
+        assertEquals(494, sut.getRejectedCount());
+        assertTrue(countTransferThreads() - threadsBefore <= 2);
+
+        release.countDown();
+        assertTrue("accepted transfers finished", finished.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void cancelTransferToPipeThatIsNeverRead() throws Exception {
+        List<Pipe> pipes = new ArrayList<>();
+        List<TransferExecutor.Transfer> blocked = new ArrayList<>();
+        CountDownLatch blockedFinished = new CountDownLatch(3);
+        // more never read pipes than pool threads
+        for (int i = 0; i < 3; i++) {
+            Pipe pipe = Pipe.open();
+            pipes.add(pipe);
+            blocked.add(sut.submit(ENDLESS, Channels.newOutputStream(pipe.sink()),
+                    (t, bytes, error) -> {
+                        assertNull(error);
+                        blockedFinished.countDown();
+                    }));
+        }
+        // until the pipes are full
+        long transferred;
+        do {
+            transferred = sut.getTransferredBytes();
+            Thread.sleep(50);
+        } while (transferred != sut.getTransferredBytes());
+
+        CountDownLatch finished = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sut.submit(new ByteArrayInputStream(new byte[10]), out, (t, bytes, error) -> finished.countDown());
+        assertFalse("waits for a pool thread", finished.await(200, TimeUnit.MILLISECONDS));
+
+        for (TransferExecutor.Transfer transfer : blocked) transfer.cancel();
+        assertTrue("blocked writers woke up", blockedFinished.await(5, TimeUnit.SECONDS));
+        assertTrue("later transfer finished", finished.await(5, TimeUnit.SECONDS));
+        assertEquals(10, out.size());
+        assertEquals(0, sut.getActiveCount());
+        for (Pipe pipe : pipes) pipe.source().close();
+    }
+}
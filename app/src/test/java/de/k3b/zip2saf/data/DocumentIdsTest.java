@@ -0,0 +1,44 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.data;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DocumentIdsTest {
+    @Test
+    public void parse() {
+        String documentId = DocumentIds.getDocumentId("my.zip", "dir/file.txt");
+        assertEquals("my.zip/dir/file.txt", documentId);
+        assertEquals("my.zip", DocumentIds.getRootId(documentId));
+        assertEquals("dir/file.txt", DocumentIds.getZipPath(documentId));
+        assertEquals("dir/", DocumentIds.getDirectoryID("dir"));
+        assertEquals("file.txt", DocumentIds.getRelPath("dir/file.txt", "dir/"));
+    }
+
+    @Test
+    public void getTimeInMilliSince1970() {
+        assertEquals(0, DocumentIds.getTimeInMilliSince1970(0));
+        assertEquals(1_650_000_000_000L, DocumentIds.getTimeInMilliSince1970(1_650_000_000L));
+        // already milliseconds
+        assertEquals(1_650_000_000_000L, DocumentIds.getTimeInMilliSince1970(1_650_000_000_000L));
+    }
+}
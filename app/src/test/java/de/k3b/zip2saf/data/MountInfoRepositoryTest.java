@@ -24,6 +24,10 @@ import static org.junit.Assert.*;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class MountInfoRepositoryTest {
     @Test
@@ -55,4 +59,93 @@ public class MountInfoRepositoryTest {
         assertFalse("already repearied", repository.fixCreateNewItem());
     }
 
+    @Test
+    public void snapshotIsNotChangedByUpdates() {
+        MountInfoRepository repository = new MountInfoRepository(new ArrayList<>());
+        List<MountInfo> before = repository.getAll();
+        repository.add(new MountInfo("my_id","my_url","my_password"));
+
+        assertEquals(1, before.size());
+        assertEquals(2, repository.getAll().size());
+        assertTrue(repository.addIfAbsent(new MountInfo("other_id","","")));
+        assertFalse(repository.addIfAbsent(new MountInfo("my_id","","")));
+    }
+
+    @Test
+    public void removeOutdatedInstance() {
+        MountInfoRepository repository = new MountInfoRepository(new ArrayList<>());
+        MountInfo old = new MountInfo("my_id","my_url","my_password");
+        repository.add(old);
+        assertTrue(repository.update(old.withIndex("my_index", "1:1")));
+
+        assertTrue(repository.remove(old));
+        assertNull(repository.getById("my_id"));
+        assertEquals(1, repository.getCount());
+        assertFalse(repository.remove(old));
+    }
+
+    @Test
+    public void concurrentReadAndWrite() throws InterruptedException {
+        final MountInfoRepository repository = new MountInfoRepository(new ArrayList<>());
+        final int writers = 4;
+        final int mountsPerWriter = 500;
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch writersDone = new CountDownLatch(writers);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            threads.add(new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        int count = 0;
+                        for (MountInfo item : repository.getAll()) {
+                            // zip_... are never removed
+                            if (item.zipId.startsWith("zip_")) assertNotNull(repository.getById(item.zipId));
+                            count++;
+                        }
+                        assertTrue(count >= 1);
+                        assertTrue(repository.isSpecialItem(repository.getByPosition(0)));
+                        repository.getByPosition(repository.getCount() - 1);
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            }));
+        }
+        for (int w = 0; w < writers; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                try {
+                    for (int i = 0; i < mountsPerWriter; i++) {
+                        MountInfo temp = new MountInfo("temp_" + writer + "_" + i, "", "");
+                        repository.add(temp);
+                        assertTrue(repository.addIfAbsent(new MountInfo("zip_" + writer + "_" + i, "", "")));
+                        assertTrue(repository.update(new MountInfo("temp_" + writer + "_" + i, "updated", "")));
+                        assertTrue(repository.remove(repository.getById(temp.zipId)));
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                } finally {
+                    writersDone.countDown();
+                }
+            }));
+        }
+
+        for (Thread thread : threads) thread.start();
+        writersDone.await();
+        writing.set(false);
+        for (Thread thread : threads) thread.join();
+
+        assertNull(String.valueOf(error.get()), error.get());
+        // no lost updates
+        assertEquals(1 + writers * mountsPerWriter, repository.getCount());
+        for (int w = 0; w < writers; w++) {
+            for (int i = 0; i < mountsPerWriter; i++) {
+                assertNotNull(repository.getById("zip_" + w + "_" + i));
+                assertNull(repository.getById("temp_" + w + "_" + i));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,134 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.data;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+public class MountInfoStoreTest {
+    private static String getIds(List<MountInfo> items) {
+        StringBuilder result = new StringBuilder();
+        for (MountInfo item : items) result.append(item.zipId).append(' ');
+        return result.toString().trim();
+    }
+
+    @Test
+    public void mountUpdateEject() throws IOException {
+        File file = File.createTempFile("MountInfoStoreTest", ".log");
+        try {
+            MountInfoStore sut = new MountInfoStore(file);
+            sut.put(new MountInfo("a.zip", "uri/a.zip", null));
+            sut.put(new MountInfo("b.zip", "uri/b.zip", "secret"));
+            sut.put(new MountInfo("c.zip", "uri/c.zip", null));
+            sut.put(new MountInfo("a.zip", "uri/a.zip", null, "a.idx", "123:456"));
+            sut.remove("b.zip");
+            sut.remove("unknown.zip");
+
+            assertEquals("a.zip c.zip", getIds(sut.getAll()));
+            // one line per change
+            assertEquals(5, Files.readAllLines(file.toPath()).size());
+
+            List<MountInfo> loaded = new MountInfoStore(file).getAll();
+            assertEquals("a.zip c.zip", getIds(loaded));
+            assertEquals("a.idx", loaded.get(0).indexFile);
+            assertEquals("123:456", loaded.get(0).indexStamp);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void compacted() throws IOException {
+        File file = File.createTempFile("MountInfoStoreTest", ".log");
+        try {
+            MountInfoStore sut = new MountInfoStore(file);
+            for (int i = 0; i < 40; i++) {
+                sut.put(new MountInfo("zip" + (i % 2) + ".zip", "uri" + i, null));
+            }
+
+            // compacted after 32 changes: 2 mount lines + 8 change lines
+            assertEquals(10, Files.readAllLines(file.toPath()).size());
+            List<MountInfo> loaded = new MountInfoStore(file).getAll();
+            assertEquals("zip0.zip zip1.zip", getIds(loaded));
+            assertEquals("uri39", loaded.get(1).uri);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void ignoreIncompleteLastLine() throws IOException {
+        File file = File.createTempFile("MountInfoStoreTest", ".log");
+        try {
+            new MountInfoStore(file).save(Arrays.asList(
+                    new MountInfo("a.zip", "uri/a.zip", null), new MountInfo("b.zip", "uri/b.zip", null)));
+            // crash while appending
+            Files.write(file.toPath(), "M\t{\"zipId\":\"c.zi".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+
+            MountInfoStore sut = new MountInfoStore(file);
+            assertEquals("a.zip b.zip", getIds(sut.getAll()));
+            sut.remove("a.zip");
+            assertEquals("b.zip", getIds(new MountInfoStore(file).getAll()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void ejectIdThatCannotBeLogged() throws IOException {
+        File file = File.createTempFile("MountInfoStoreTest", ".log");
+        try {
+            MountInfoStore sut = new MountInfoStore(file);
+            sut.put(new MountInfo("a.zip", "uri/a.zip", null));
+            sut.put(new MountInfo("odd\nname.zip", "uri/odd", null));
+            sut.remove("odd\nname.zip");
+
+            assertEquals("a.zip", getIds(new MountInfoStore(file).getAll()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void ignoreIncompleteEject() throws IOException {
+        File file = File.createTempFile("MountInfoStoreTest", ".log");
+        try {
+            new MountInfoStore(file).save(Arrays.asList(
+                    new MountInfo("a", "uri/a", null), new MountInfo("a.zip", "uri/a.zip", null)));
+            // crash while appending "E\ta.zip\n"
+            Files.write(file.toPath(), "E\ta".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            assertEquals("a a.zip", getIds(new MountInfoStore(file).getAll()));
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ContentSearchIndexTest {
+    /** entry content by path. Entries ending with ".txt" are text. */
+    private static class MapSource implements ContentIndexer.Source {
+        private final ZipIndex index;
+        private final Map<String, String> contents = new HashMap<>();
+        int openCount = 0;
+
+        MapSource(ZipIndex index) {
+            this.index = index;
+        }
+
+        @Override
+        public boolean isText(int node) {
+            return index.getPath(node).endsWith(".txt");
+        }
+
+        @Override
+        public InputStream open(int node) {
+            openCount++;
+            String content = contents.get(index.getPath(node));
+            return content == null ? null : new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String[] getPaths(ZipIndex index, int[] nodes) {
+        String[] result = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) result[i] = index.getPath(nodes[i]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    @Test
+    public void tokenize() {
+        List<String> words = new ArrayList<>();
+        ContentSearchIndex.tokenize("Error: Connection-Timeout a 42!", words);
+        assertEquals(Arrays.asList("error", "connection", "timeout", "42"), words);
+    }
+
+    @Test
+    public void indexAndSearch() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip(
+                "logs/app.txt", "logs/system.txt", "src/Main.txt", "image.jpg"));
+        MapSource source = new MapSource(index);
+        source.contents.put("logs/app.txt", "2022 ERROR connection timeout\nretry");
+        source.contents.put("logs/system.txt", "boot ok\nconnection established");
+        source.contents.put("src/Main.txt", "class Main { /* timeout */ }");
+        source.contents.put("image.jpg", "timeout");
+
+        File file = File.createTempFile("ContentSearchIndexTest", ".words");
+        try {
+            ContentSearchIndex sut = ContentSearchIndex.open(file, "1:2");
+            new ContentIndexer(index, sut, source).run();
+
+            assertTrue(sut.isComplete());
+            assertArrayEquals(new String[]{"logs/app.txt", "src/Main.txt"}, getPaths(index, sut.search("Timeout", 10)));
+            assertArrayEquals(new String[]{"logs/app.txt"}, getPaths(index, sut.search("connection timeout", 10)));
+            assertEquals(0, sut.search("unknown", 10).length);
+            assertEquals(1, sut.search("connection", 1).length);
+
+            // reopen from file: nothing to do
+            ContentSearchIndex reopened = ContentSearchIndex.open(file, "1:2");
+            assertTrue(reopened.isComplete());
+            assertArrayEquals(new String[]{"logs/system.txt"}, getPaths(index, reopened.search("boot", 10)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void resumeAfterInterruptedSegment() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt", "b.txt"));
+        File file = File.createTempFile("ContentSearchIndexTest", ".words");
+        try {
+            ContentSearchIndex first = ContentSearchIndex.open(file, "1:2");
+            Map<String, ContentSearchIndex.Postings> words = new HashMap<>();
+            ContentSearchIndex.Postings postings = new ContentSearchIndex.Postings();
+            postings.add(index.find("a.txt"));
+            words.put("alpha", postings);
+            first.append(words, index.find("a.txt") + 1, false);
+            long validLength = file.length();
+
+            // process killed while writing the next segment
+            first.append(words, index.size(), true);
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(file.length() - 3);
+            }
+
+            ContentSearchIndex sut = ContentSearchIndex.open(file, "1:2");
+            assertEquals(validLength, file.length());
+            assertFalse(sut.isComplete());
+            assertEquals(index.find("a.txt") + 1, sut.getNextNode());
+            assertEquals(1, sut.search("alpha", 10).length);
+
+            MapSource source = new MapSource(index);
+            source.contents.put("b.txt", "beta");
+            new ContentIndexer(index, sut, source).run();
+            assertEquals(1, source.openCount);
+            assertTrue(sut.isComplete());
+            assertArrayEquals(new String[]{"b.txt"}, getPaths(index, sut.search("beta", 10)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void openWithOtherStampStartsNew() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt"));
+        MapSource source = new MapSource(index);
+        source.contents.put("a.txt", "alpha");
+        File file = File.createTempFile("ContentSearchIndexTest", ".words");
+        try {
+            new ContentIndexer(index, ContentSearchIndex.open(file, "1:2"), source).run();
+
+            ContentSearchIndex sut = ContentSearchIndex.open(file, "1:3");
+            assertFalse(sut.isComplete());
+            assertEquals(0, sut.search("alpha", 10).length);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void canceledIndexerStops() throws IOException, InterruptedException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt", "b.txt"));
+        MapSource source = new MapSource(index);
+        File file = File.createTempFile("ContentSearchIndexTest", ".words");
+        try {
+            ContentSearchIndex sut = ContentSearchIndex.open(file, "1:2");
+            ContentIndexer indexer = new ContentIndexer(index, sut, source);
+            indexer.cancel();
+            assertFalse("not started yet", indexer.awaitFinished(0));
+            indexer.run();
+            assertTrue(indexer.awaitFinished(0));
+            assertEquals(0, source.openCount);
+            assertFalse(sut.isComplete());
+        } finally {
+            file.delete();
+        }
+    }
+}
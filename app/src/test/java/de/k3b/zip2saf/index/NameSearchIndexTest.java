@@ -0,0 +1,87 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class NameSearchIndexTest {
+    private static String[] getPaths(ZipIndex index, int[] nodes) {
+        String[] result = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) result[i] = index.getPath(nodes[i]);
+        return result;
+    }
+
+    @Test
+    public void searchSubstringPrefixFirst() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip(
+                "photos/MyHoliday.jpg", "photos/holiday.txt", "docs/readme.txt", "docs/holidays/"));
+        NameSearchIndex sut = NameSearchIndex.create(index);
+
+        String[] found = getPaths(index, sut.search("HOLIDAY", 10));
+        assertEquals(3, found.length);
+        // names that start with the query come first
+        assertEquals("photos/MyHoliday.jpg", found[2]);
+        assertArrayEquals(new String[]{"docs/readme.txt"}, getPaths(index, sut.search("adm", 10)));
+        assertEquals(0, sut.search("xyz", 10).length);
+        assertEquals(0, sut.search("", 10).length);
+    }
+
+    @Test
+    public void searchShortQueryScans() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt", "b.txt", "ab.txt"));
+        NameSearchIndex sut = NameSearchIndex.create(index);
+
+        assertArrayEquals(new String[]{"b.txt", "ab.txt"}, getPaths(index, sut.search("b", 10)));
+        assertEquals(1, sut.search(".", 1).length);
+    }
+
+    @Test
+    public void searchShortQueryPrefixFirst() throws IOException {
+        String[] names = new String[1001];
+        for (int i = 0; i < 1000; i++) names[i] = "dir/xy" + i + ".txt";
+        names[1000] = "dir/Y.txt";
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip(names));
+        NameSearchIndex sut = NameSearchIndex.create(index);
+
+        // the only name that starts with the query is the last one
+        String[] found = getPaths(index, sut.search("y", 3));
+        assertArrayEquals(new String[]{"dir/Y.txt", "dir/xy0.txt", "dir/xy1.txt"}, found);
+        assertEquals("dir/Y.txt", getPaths(index, sut.search("Y.", 1))[0]);
+        assertEquals(1000, sut.search("xy", 5000).length);
+        assertEquals(0, sut.search("q", 10).length);
+    }
+
+    @Test
+    public void searchManyEntries() throws IOException {
+        String[] names = new String[3000];
+        for (int i = 0; i < names.length; i++) names[i] = "dir" + (i % 7) + "/file" + i + ".txt";
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip(names));
+        NameSearchIndex sut = NameSearchIndex.create(index);
+
+        assertArrayEquals(new String[]{"dir2/file1234.txt"}, getPaths(index, sut.search("file1234.", 10)));
+        assertEquals(11, sut.search("file123", 100).length); // 123, 1230..1239
+        assertEquals(5, sut.search("file", 5).length);
+        assertTrue(sut.isFor(index));
+    }
+}
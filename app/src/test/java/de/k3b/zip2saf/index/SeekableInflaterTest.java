@@ -0,0 +1,107 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+public class SeekableInflaterTest {
+    /** text like content with some random (incompressible) parts */
+    static byte[] createContent(int size) {
+        Random random = new Random(4711);
+        byte[] result = new byte[size];
+        for (int i = 0; i < size; i++) {
+            boolean noise = (i / 100000) % 3 == 2;
+            result[i] = (byte) (noise ? random.nextInt() : "abcdefgh ijk\n".charAt(random.nextInt(13)));
+        }
+        return result;
+    }
+
+    static byte[] deflate(byte[] content, int level) {
+        Deflater deflater = new Deflater(level, true);
+        deflater.setInput(content);
+        deflater.finish();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        while (!deflater.finished()) {
+            result.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return result.toByteArray();
+    }
+
+    private static byte[] inflateAll(byte[] compressed, int bufferSize) throws IOException {
+        SeekableInflater sut = new SeekableInflater(new ZipIndexTest.ByteArrayInput(compressed), null);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[bufferSize];
+        int len;
+        while ((len = sut.inflate(buffer, 0, buffer.length)) >= 0) {
+            result.write(buffer, 0, len);
+        }
+        return result.toByteArray();
+    }
+
+    @Test
+    public void inflateAllBlockTypes() throws IOException {
+        byte[] small = "hello hello hello".getBytes(); // fixed huffman block
+        assertArrayEquals(small, inflateAll(deflate(small, 9), 3));
+
+        byte[] content = createContent(400000);
+        for (int level : new int[]{0, 1, 6, 9}) {
+            assertArrayEquals("level " + level, content, inflateAll(deflate(content, level), 1000));
+        }
+    }
+
+    @Test
+    public void seekWithCheckpoints() throws IOException {
+        byte[] content = createContent(3 * 1024 * 1024 + 17);
+        InflateCheckpoints checkpoints = new InflateCheckpoints(content.length);
+        DeflatedEntryInput sut = new DeflatedEntryInput(
+                new ZipIndexTest.ByteArrayInput(deflate(content, 6)), content.length, checkpoints);
+
+        // first sequential read records the checkpoints
+        byte[] buffer = new byte[64 * 1024];
+        long position = 0;
+        int len;
+        while ((len = sut.read(position, buffer, 0, buffer.length)) > 0) {
+            assertArrayEquals(Arrays.copyOfRange(content, (int) position, (int) position + len),
+                    Arrays.copyOf(buffer, len));
+            position += len;
+        }
+        assertEquals(content.length, position);
+        assertEquals(2, checkpoints.size());
+
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            int start = random.nextInt(content.length);
+            len = sut.read(start, buffer, 0, 1000);
+            assertEquals(Math.min(1000, content.length - start), len);
+            assertArrayEquals("at " + start, Arrays.copyOfRange(content, start, start + len), Arrays.copyOf(buffer, len));
+        }
+        assertEquals(-1, sut.read(content.length, buffer, 0, 1));
+    }
+}
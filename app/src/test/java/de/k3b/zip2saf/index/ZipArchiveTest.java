@@ -0,0 +1,139 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.k3b.zip2saf.cache.FileLruCache;
+
+public class ZipArchiveTest {
+    private File cacheDir;
+    private FileLruCache spoolCache;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDir = Files.createTempDirectory("ZipArchiveTest").toFile();
+        spoolCache = new FileLruCache(cacheDir, 1024 * 1024, ".zip");
+    }
+
+    @After
+    public void tearDown() {
+        spoolCache.invalidate("mount");
+        cacheDir.delete();
+        ZipIndexRepository.getInstance().remove("mount");
+    }
+
+    /** outer zip with the inner zip as entry fileName */
+    private static byte[] createOuterZip(String fileName, byte[] content, boolean stored) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(result)) {
+            zip.putNextEntry(new ZipEntry("readme.txt"));
+            zip.write("hello".getBytes());
+            ZipEntry entry = new ZipEntry(fileName);
+            if (stored) {
+                CRC32 crc = new CRC32();
+                crc.update(content);
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(content.length);
+                entry.setCrc(crc.getValue());
+            }
+            zip.putNextEntry(entry);
+            zip.write(content);
+            zip.closeEntry();
+        }
+        return result.toByteArray();
+    }
+
+    private static String read(ZipArchive.Entry entry) throws IOException {
+        try (InputStream in = ZipEntryReader.open(entry.archive.openInput(), entry.archive.index, entry.node)) {
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[100];
+            int len;
+            while ((len = in.read(buffer)) > 0) content.write(buffer, 0, len);
+            return content.toString("UTF-8");
+        }
+    }
+
+    private ZipArchive createArchive(boolean stored) throws IOException {
+        byte[] inner = ZipIndexTest.createZip("dir/", "dir/file.txt", "dir/image.jpg");
+        byte[] outer = createOuterZip("backup/Inner.ZIP", inner, stored);
+        return new ZipArchive("mount", ZipIndexTest.createIndex(outer), () -> new ZipIndexTest.ByteArrayInput(outer));
+    }
+
+    @Test
+    public void findInStoredNestedZip() throws IOException {
+        ZipArchive sut = createArchive(true);
+
+        ZipArchive.Entry entry = sut.find("backup/Inner.ZIP/dir/image.jpg", spoolCache, "mount");
+        assertEquals("mount/backup/Inner.ZIP", entry.archive.id);
+        assertTrue(entry.archive.isNested());
+        assertEquals("dir/image.jpg", read(entry));
+        // stored: read through a window, nothing spooled
+        assertEquals(0, spoolCache.getTotalBytes());
+    }
+
+    @Test
+    public void findInDeflatedNestedZipSpoolsOnce() throws IOException {
+        ZipArchive sut = createArchive(false);
+
+        ZipArchive.Entry root = sut.find("backup/Inner.ZIP/", spoolCache, "mount");
+        assertEquals(ZipIndex.ROOT, root.node);
+        assertEquals(1, root.archive.index.getChildCount(ZipIndex.ROOT));
+        long spooled = spoolCache.getTotalBytes();
+        assertTrue(spooled > 0);
+
+        ZipArchive.Entry entry = sut.find("backup/Inner.ZIP/dir/file.txt", spoolCache, "mount");
+        assertEquals("dir/file.txt", read(entry));
+        assertEquals(spooled, spoolCache.getTotalBytes());
+    }
+
+    @Test
+    public void findInOuterZip() throws IOException {
+        ZipArchive sut = createArchive(false);
+
+        ZipArchive.Entry file = sut.find("readme.txt", spoolCache, "mount");
+        assertSame(sut, file.archive);
+        assertFalse(file.archive.isNested());
+
+        // without trailing "/" the nested zip is the zip file itself
+        ZipArchive.Entry zipFile = sut.find("backup/Inner.ZIP", spoolCache, "mount");
+        assertSame(sut, zipFile.archive);
+        assertTrue(ZipArchive.isNestedArchive(sut.index, zipFile.node));
+        assertFalse(ZipArchive.isNestedArchive(sut.index, file.node));
+        assertTrue(ZipArchive.isNestedArchive(sut.index, zipFile.node, "Inner.ZIP"));
+        assertFalse(ZipArchive.isNestedArchive(sut.index, file.node, "readme.txt"));
+
+        assertNull(sut.find("backup/Inner.ZIP/unknown.txt", spoolCache, "mount"));
+        assertNull(sut.find("readme.txt/x", spoolCache, "mount"));
+    }
+}
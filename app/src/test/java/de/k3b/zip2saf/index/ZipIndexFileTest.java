@@ -0,0 +1,89 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class ZipIndexFileTest {
+    @Test
+    public void writeAndOpen() throws IOException {
+        ZipIndex memory = ZipIndexTest.createIndex(ZipIndexTest.createZip(
+                "b.txt", "dir/sub/file.txt", "dir/other.txt", "dir/sub/", "dir/ä.jpg"));
+        File file = File.createTempFile("ZipIndexFileTest", ".idx");
+        try {
+            ZipIndexFile.write(memory, "1234:5678", file);
+            MappedZipIndex sut = ZipIndexFile.open(file);
+
+            assertEquals("1234:5678", sut.getSourceStamp());
+            assertEquals(memory.size(), sut.size());
+            for (int node = 0; node < memory.size(); node++) {
+                String path = memory.getPath(node);
+                assertEquals(path, node, sut.find(path));
+                assertEquals(path, sut.getPath(node));
+                assertEquals(memory.getName(node), sut.getName(node));
+                assertEquals(memory.getParent(node), sut.getParent(node));
+                assertEquals(memory.getChildCount(node), sut.getChildCount(node));
+                assertEquals(memory.getSize(node), sut.getSize(node));
+                assertEquals(memory.getCrc(node), sut.getCrc(node));
+                assertEquals(memory.getLocalHeaderOffset(node), sut.getLocalHeaderOffset(node));
+                assertEquals(memory.isDirectory(node), sut.isDirectory(node));
+            }
+            assertEquals(ZipIndex.NOT_FOUND, sut.find("dir/unknown.txt"));
+            assertEquals(ZipIndex.NOT_FOUND, sut.find("a.txt"));
+            assertEquals(ZipIndex.NOT_FOUND, sut.find("zzz"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void findInManyBuckets() throws IOException {
+        String[] names = new String[100];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "dir" + (i % 7) + "/file" + i + ".txt";
+        }
+        ZipIndex memory = ZipIndexTest.createIndex(ZipIndexTest.createZip(names));
+        File file = File.createTempFile("ZipIndexFileTest", ".idx");
+        try {
+            ZipIndexFile.write(memory, "1:2", file);
+            MappedZipIndex sut = ZipIndexFile.open(file);
+            for (String name : names) {
+                assertEquals(name, memory.find(name), sut.find(name));
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void openInvalid() throws IOException {
+        File file = File.createTempFile("ZipIndexFileTest", ".idx");
+        try {
+            ZipIndexFile.open(file);
+        } finally {
+            file.delete();
+        }
+    }
+}
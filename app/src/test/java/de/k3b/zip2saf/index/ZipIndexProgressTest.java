@@ -0,0 +1,75 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ZipIndexProgressTest {
+    private static ZipEntryInfo file(String name) {
+        return new ZipEntryInfo(name, 1, 1, 0, 0, ZipEntryInfo.METHOD_STORED, 0, false);
+    }
+
+    @Test
+    public void snapshotWhileLoading() {
+        List<ZipIndexProgress> notified = new ArrayList<>();
+        ZipIndexProgress sut = new ZipIndexProgress(notified::add, Long.MAX_VALUE);
+        sut.add(file("dir/a.txt"));
+
+        ZipIndex first = sut.getSnapshot();
+        assertSame(first, sut.getSnapshot());
+        assertEquals(1, first.getChildCount(first.find("dir/")));
+
+        sut.add(file("dir/b.txt"));
+        ZipIndex second = sut.getSnapshot();
+        assertEquals(2, second.getChildCount(second.find("dir/")));
+        // older snapshots do not change
+        assertEquals(1, first.getChildCount(first.find("dir/")));
+        assertEquals(ZipIndex.NOT_FOUND, first.find("dir/b.txt"));
+        assertFalse(sut.isDone());
+        assertFalse(sut.await(1));
+        assertTrue(notified.isEmpty());
+
+        ZipIndex result = sut.build();
+        sut.finish(result);
+        assertTrue(sut.isDone());
+        assertTrue(sut.await(0));
+        assertSame(result, sut.getResult());
+        assertSame(result, sut.getSnapshot());
+        assertEquals(1, notified.size());
+    }
+
+    @Test
+    public void throttledNotifications() {
+        List<ZipIndexProgress> notified = new ArrayList<>();
+        ZipIndexProgress sut = new ZipIndexProgress(notified::add, 0);
+        sut.addObserver("content://x/dir");
+        sut.addObserver("content://x/dir");
+        sut.add(file("a.txt"));
+        sut.add(file("b.txt"));
+
+        assertEquals(2, notified.size());
+        assertEquals(1, sut.getObservers().size());
+    }
+}
@@ -0,0 +1,65 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+public class ZipIndexRepositoryTest {
+    @Test
+    public void changedZipIsEvicted() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt"));
+        ZipIndexRepository sut = new ZipIndexRepository(0);
+        sut.put("zip", index, "1:1");
+        sut.put("zip/nested.zip", index);
+
+        assertSame(index, sut.get("zip", () -> "1:1"));
+        assertNull(sut.get("zip", () -> "2:1"));
+        assertNull(sut.get("zip"));
+        assertNull(sut.get("zip/nested.zip"));
+    }
+
+    @Test
+    public void stampIsNotRecheckedWithinInterval() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt"));
+        ZipIndexRepository sut = new ZipIndexRepository(60000);
+        sut.put("zip", index, "1:1");
+
+        // checked when put: no stat within the interval
+        assertSame(index, sut.get("zip", () -> {
+            throw new AssertionError("stamp should not be checked");
+        }));
+    }
+
+    @Test
+    public void unknownStampKeepsIndex() throws IOException {
+        ZipIndex index = ZipIndexTest.createIndex(ZipIndexTest.createZip("a.txt"));
+        ZipIndexRepository sut = new ZipIndexRepository(0);
+        sut.put("zip", index, "1:1");
+        sut.put("noStamp", index);
+
+        assertSame(index, sut.get("zip", () -> null));
+        assertSame(index, sut.get("noStamp", () -> "2:1"));
+    }
+}
@@ -0,0 +1,233 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.index;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+public class ZipIndexTest {
+    /** in memory zip file */
+    static class ByteArrayInput implements RandomAccessInput {
+        private final byte[] data;
+
+        ByteArrayInput(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int len) {
+            if (position >= data.length) return -1;
+            int count = (int) Math.min(len, data.length - position);
+            System.arraycopy(data, (int) position, buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static byte[] createZip(String... fileNames) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(result)) {
+            for (String fileName : fileNames) {
+                ZipEntry entry = new ZipEntry(fileName);
+                byte[] content = fileName.getBytes(StandardCharsets.UTF_8);
+                if (fileName.endsWith(".txt")) {
+                    // stored entries need size and crc in advance
+                    CRC32 crc = new CRC32();
+                    crc.update(content);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(content.length);
+                    entry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(entry);
+                if (!entry.isDirectory()) zip.write(content);
+                zip.closeEntry();
+            }
+        }
+        return result.toByteArray();
+    }
+
+    static ZipIndex createIndex(byte[] zip) throws IOException {
+        return MemoryZipIndex.create(ZipCentralDirectoryReader.read(new ByteArrayInput(zip)));
+    }
+
+    @Test
+    public void readCentralDirectory() throws IOException {
+        byte[] zip = createZip("dir/", "dir/file.txt", "dir/image.jpg");
+        List<ZipEntryInfo> entries = ZipCentralDirectoryReader.read(new ByteArrayInput(zip));
+
+        assertEquals(3, entries.size());
+        ZipEntryInfo stored = entries.get(1);
+        assertEquals("dir/file.txt", stored.fileName);
+        assertEquals(ZipEntryInfo.METHOD_STORED, stored.method);
+        assertEquals("dir/file.txt".length(), stored.uncompressedSize);
+        assertEquals(ZipEntryInfo.METHOD_DEFLATED, entries.get(2).method);
+        assertTrue(stored.localHeaderOffset > 0);
+        assertTrue(stored.lastModified > 0);
+    }
+
+    @Test
+    public void readCentralDirectoryWithPrependedData() throws IOException {
+        byte[] zip = createZip("file.txt");
+        byte[] withPrefix = new byte[zip.length + 100];
+        System.arraycopy(zip, 0, withPrefix, 100, zip.length);
+
+        List<ZipEntryInfo> entries = ZipCentralDirectoryReader.read(new ByteArrayInput(withPrefix));
+        assertEquals(100, entries.get(0).localHeaderOffset);
+    }
+
+    @Test(expected = IOException.class)
+    public void readNoZip() throws IOException {
+        ZipCentralDirectoryReader.read(new ByteArrayInput(new byte[100]));
+    }
+
+    @Test
+    public void findWithImpliedDirectories() throws IOException {
+        ZipIndex sut = createIndex(createZip("a.txt", "dir/sub/file.txt", "dir/other.txt", "dir/sub/"));
+
+        int dir = sut.find("dir/");
+        assertEquals(dir, sut.find("dir"));
+        assertTrue(sut.isDirectory(dir));
+        assertEquals("dir/", sut.getPath(dir));
+        assertEquals(2, sut.getChildCount(dir));
+
+        int sub = sut.getChild(dir, 0);
+        assertEquals("sub", sut.getName(sub));
+        assertEquals(sub, sut.find("dir/sub/"));
+        assertEquals(1, sut.getChildCount(sub));
+        assertEquals("dir/sub/file.txt", sut.getPath(sut.getChild(sub, 0)));
+
+        assertEquals(2, sut.getChildCount(ZipIndex.ROOT));
+        assertEquals(ZipIndex.ROOT, sut.find(""));
+        assertEquals(ZipIndex.NOT_FOUND, sut.find("dir/unknown.txt"));
+    }
+
+    @Test
+    public void openEntryDirect() throws IOException {
+        byte[] zip = createZip("first.jpg", "dir/stored.txt", "dir/deflated.jpg");
+        ZipIndex index = createIndex(zip);
+
+        for (String name : new String[]{"dir/stored.txt", "dir/deflated.jpg"}) {
+            int node = index.find(name);
+            assertTrue(name, ZipEntryReader.canOpen(index, node));
+            try (InputStream in = ZipEntryReader.open(new ByteArrayInput(zip), index, node)) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[7];
+                int len;
+                while ((len = in.read(buffer)) > 0) content.write(buffer, 0, len);
+                assertEquals(name, content.toString("UTF-8"));
+            }
+        }
+        assertFalse(ZipEntryReader.canOpen(index, index.find("dir")));
+    }
+
+    @Test
+    public void openEntryWithWrongCrc() throws IOException {
+        byte[] zip = createZip("first.jpg", "dir/stored.txt", "dir/deflated.jpg");
+
+        for (String name : new String[]{"dir/stored.txt", "dir/deflated.jpg"}) {
+            ZipIndex corrupt = createIndex(withWrongCentralCrc(zip, name));
+            try (InputStream in = ZipEntryReader.open(new ByteArrayInput(zip), corrupt, corrupt.find(name))) {
+                byte[] buffer = new byte[7];
+                while (in.read(buffer) >= 0) ;
+                fail(name + ": expected crc error");
+            } catch (ZipException expected) {
+                assertTrue(expected.getMessage(), expected.getMessage().contains(name));
+            }
+        }
+    }
+
+    /** @return copy of zip where the central directory crc of fileName is changed */
+    private static byte[] withWrongCentralCrc(byte[] zip, String fileName) {
+        byte[] result = zip.clone();
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        for (int pos = 0; pos + 46 + name.length <= result.length; pos++) {
+            if (ZipCentralDirectoryReader.getInt(result, pos) == 0x02014b50
+                    && ZipCentralDirectoryReader.getShort(result, pos + 28) == name.length
+                    && new String(result, pos + 46, name.length, StandardCharsets.UTF_8).equals(fileName)) {
+                result[pos + 16] ^= 0x01;
+                return result;
+            }
+        }
+        throw new IllegalArgumentException(fileName);
+    }
+
+    @Test
+    public void openStoredSeekable() throws IOException {
+        byte[] zip = createZip("first.jpg", "dir/stored.txt");
+        ZipIndex index = createIndex(zip);
+
+        try (RandomAccessInput sut = ZipEntryReader.openStored(new ByteArrayInput(zip), index, index.find("dir/stored.txt"))) {
+            assertEquals("dir/stored.txt".length(), sut.length());
+            byte[] buffer = new byte[100];
+            int len = sut.read(4, buffer, 0, buffer.length);
+            assertEquals("stored.txt", new String(buffer, 0, len, StandardCharsets.UTF_8));
+            assertEquals(-1, sut.read(sut.length(), buffer, 0, buffer.length));
+        }
+    }
+
+    @Test
+    public void isDescendant() throws IOException {
+        ZipIndex sut = createIndex(createZip("dir/sub/file.txt", "other.txt"));
+
+        int file = sut.find("dir/sub/file.txt");
+        assertTrue(sut.isDescendant(ZipIndex.ROOT, file));
+        assertTrue(sut.isDescendant(sut.find("dir"), file));
+        assertFalse(sut.isDescendant(file, file));
+        assertFalse(sut.isDescendant(sut.find("other.txt"), file));
+        assertFalse(sut.isDescendant(ZipIndex.ROOT, ZipIndex.NOT_FOUND));
+    }
+
+    @Test
+    public void internedNames() throws IOException {
+        MemoryZipIndex sut = (MemoryZipIndex) createIndex(createZip(
+                "a/thumbs/1.jpg", "b/thumbs/1.jpg", "c/thumbs/1.jpg", "c/thumbs/"));
+
+        // a, b, c, thumbs, 1.jpg and the root
+        assertEquals(6, sut.getSegmentCount());
+        int first = sut.find("a/thumbs/1.jpg");
+        int second = sut.find("/b//thumbs/1.jpg");
+        assertNotEquals(first, second);
+        assertSame(sut.getName(first), sut.getName(second));
+        assertEquals("b/thumbs/1.jpg", sut.getPath(second));
+        assertTrue(sut.getLastModified(sut.find("c/thumbs/")) > 0);
+        assertEquals(0, sut.getLastModified(sut.find("a/thumbs/")));
+        assertEquals(ZipIndex.NOT_FOUND, sut.find("a/thumbs/2.jpg"));
+        assertEquals(ZipIndex.NOT_FOUND, sut.find("x/thumbs/1.jpg"));
+    }
+}
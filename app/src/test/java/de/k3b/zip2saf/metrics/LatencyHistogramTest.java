@@ -0,0 +1,54 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+    @Test
+    public void percentiles() {
+        LatencyHistogram sut = new LatencyHistogram();
+        assertEquals(0, sut.getPercentileMicros(50));
+        for (int i = 0; i < 90; i++) sut.record(3_000);
+        for (int i = 0; i < 10; i++) sut.record(1_000_000);
+
+        assertEquals(100, sut.getCount());
+        // 3 us is in [2, 4)
+        assertEquals(4, sut.getPercentileMicros(50));
+        assertEquals(4, sut.getPercentileMicros(90));
+        // 1000 us is in [512, 1024)
+        assertEquals(1024, sut.getPercentileMicros(99));
+        assertEquals(1000, sut.getMaxMicros());
+        assertEquals((90 * 3 + 10 * 1000) / 100, sut.getMeanMicros());
+
+        sut.reset();
+        assertEquals(0, sut.getCount());
+        assertEquals(0, sut.getMaxMicros());
+    }
+
+    @Test
+    public void bucketOfHugeLatency() {
+        assertEquals(0, LatencyHistogram.getBucket(0));
+        assertEquals(1, LatencyHistogram.getBucket(1));
+        assertEquals(39, LatencyHistogram.getBucket(Long.MAX_VALUE));
+    }
+}
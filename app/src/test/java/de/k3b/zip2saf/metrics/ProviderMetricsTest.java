@@ -0,0 +1,100 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import de.k3b.zip2saf.index.RandomAccessInput;
+
+public class ProviderMetricsTest {
+    @Test
+    public void countersAndDump() throws IOException {
+        ProviderMetrics sut = new ProviderMetrics();
+        sut.record(ProviderMetrics.OP_OPEN, System.nanoTime());
+        sut.cacheHit(ProviderMetrics.CACHE_CONTENT);
+        sut.cacheHit(ProviderMetrics.CACHE_CONTENT);
+        sut.cacheHit(ProviderMetrics.CACHE_CONTENT);
+        sut.cacheMiss(ProviderMetrics.CACHE_CONTENT);
+        sut.addEntriesScanned(10);
+        sut.addEntriesScanned(30);
+        sut.transferStarted();
+        sut.addBytesServed(100);
+
+        try (RandomAccessInput input = new MeteredInput(new ZeroInput(), sut)) {
+            assertEquals(7, input.read(0, new byte[7], 0, 7));
+            assertEquals(-1, input.read(100, new byte[7], 0, 7));
+        }
+
+        assertEquals(1, sut.getLatency(ProviderMetrics.OP_OPEN).getCount());
+        assertEquals(0.75, sut.getHitRatio(ProviderMetrics.CACHE_CONTENT), 0.001);
+        assertEquals(0, sut.getHitRatio(ProviderMetrics.CACHE_THUMBNAIL), 0.001);
+        assertEquals(7, sut.getBytesRead());
+        assertEquals(100, sut.getBytesServed());
+
+        StringWriter dump = new StringWriter();
+        sut.dump(new PrintWriter(dump));
+        assertTrue(dump.toString(), dump.toString().contains("entries scanned=40 in 2 scans (mean=20 max=30)"));
+        assertTrue(dump.toString(), dump.toString().contains("active transfers=1"));
+
+        sut.reset();
+        assertEquals(0, sut.getBytesRead());
+        assertEquals(0, sut.getEntriesScanned());
+        assertEquals(1, sut.getActiveTransfers());
+    }
+
+    @Test
+    public void coldStartOnlyOnce() {
+        ProviderMetrics sut = new ProviderMetrics();
+        assertEquals(-1, sut.getColdStartMillis());
+
+        assertTrue(sut.coldStartFinished(250));
+        assertFalse(sut.coldStartFinished(900));
+        sut.reset();
+        assertEquals(250, sut.getColdStartMillis());
+
+        StringWriter dump = new StringWriter();
+        sut.dump(new PrintWriter(dump));
+        assertTrue(dump.toString(), dump.toString().contains("cold start to first roots query=250 ms"));
+    }
+
+    /** 10 zero bytes */
+    private static class ZeroInput implements RandomAccessInput {
+        @Override
+        public long length() {
+            return 10;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int len) {
+            if (position >= length()) return -1;
+            return (int) Math.min(len, length() - position);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.recent;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+public class RecentDocumentsTest {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    @Test
+    public void rankByFrequencyAndRecency() throws IOException {
+        File file = File.createTempFile("RecentDocumentsTest", ".recent");
+        try {
+            RecentDocuments sut = new RecentDocuments(file, 10);
+            long now = 100 * DAY;
+            sut.add("often.jpg", now - 20 * DAY);
+            sut.add("often.jpg", now - 20 * DAY);
+            sut.add("often.jpg", now - 20 * DAY);
+            sut.add("old.jpg", now - 30 * DAY);
+            sut.add("new.jpg", now);
+
+            assertEquals(Arrays.asList("new.jpg", "often.jpg", "old.jpg"), sut.getRecent(10));
+            assertEquals(Arrays.asList("new.jpg"), sut.getRecent(1));
+
+            // 3 accesses 20 days ago beat one access 10 days ago but not one 5 days ago
+            sut.add("tenDays.jpg", now - 10 * DAY);
+            sut.add("fiveDays.jpg", now - 5 * DAY);
+            assertEquals(Arrays.asList("new.jpg", "fiveDays.jpg", "often.jpg", "tenDays.jpg"), sut.getRecent(4));
+            assertTrue(sut.getRank("often.jpg") > sut.getRank("old.jpg"));
+            assertEquals(Double.NEGATIVE_INFINITY, sut.getRank("unknown.jpg"), 0);
+
+            // reload from log
+            assertEquals(sut.getRecent(10), new RecentDocuments(file, 10).getRecent(10));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void cappedAndCompacted() throws IOException {
+        File file = File.createTempFile("RecentDocumentsTest", ".recent");
+        try {
+            RecentDocuments sut = new RecentDocuments(file, 3);
+            for (int i = 0; i < 20; i++) {
+                sut.add("file" + i + ".jpg", i * DAY);
+            }
+            assertEquals(Arrays.asList("file19.jpg", "file18.jpg", "file17.jpg"), sut.getRecent(10));
+
+            // compacted after 12 accesses: 3 rank lines + 8 access lines
+            assertEquals(11, Files.readAllLines(file.toPath()).size());
+            assertEquals(sut.getRecent(10), new RecentDocuments(file, 3).getRecent(10));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void clear() throws IOException {
+        File file = File.createTempFile("RecentDocumentsTest", ".recent");
+        RecentDocuments sut = new RecentDocuments(file, 3);
+        sut.add("a.jpg", DAY);
+        sut.clear();
+
+        assertTrue(sut.getRecent(10).isEmpty());
+        assertFalse(file.exists());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.thumbnail;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+public class ExifThumbnailReaderTest {
+    /** minimal jpg that only contains SOI, SOF0 with the image size and EOI */
+    private static byte[] createJpeg(int width, int height) {
+        return new byte[]{(byte) 0xFF, (byte) 0xD8,
+                (byte) 0xFF, (byte) 0xC0, 0, 11, 8, (byte) (height >> 8), (byte) height, (byte) (width >> 8), (byte) width, 1, 1, 0x11, 0,
+                (byte) 0xFF, (byte) 0xD9};
+    }
+
+    /** jpg with an APP0, an exif APP1 (little endian tiff with empty IFD0 and IFD1 pointing to thumbnail) and image data */
+    private static byte[] createJpegWithExif(byte[] thumbnail, int imageDataSize) {
+        return createJpegWithExif(thumbnail, imageDataSize, 14);
+    }
+
+    private static byte[] createJpegWithExif(byte[] thumbnail, int imageDataSize, long ifd1) {
+        ByteArrayOutputStream tiff = new ByteArrayOutputStream();
+        write(tiff, 'I', 'I', 42, 0, 8, 0, 0, 0);           // header, IFD0 at 8
+        write(tiff, 0, 0, (int) ifd1 & 0xff, (int) (ifd1 >> 8) & 0xff,
+                (int) (ifd1 >> 16) & 0xff, (int) (ifd1 >> 24) & 0xff); // IFD0: 0 entries, IFD1 at ifd1
+        write(tiff, 2, 0);                                  // IFD1: 2 entries
+        write(tiff, 0x01, 0x02, 4, 0, 1, 0, 0, 0, 44, 0, 0, 0); // JPEGInterchangeFormat = 44
+        write(tiff, 0x02, 0x02, 4, 0, 1, 0, 0, 0, thumbnail.length, 0, 0, 0);
+        write(tiff, 0, 0, 0, 0);                            // no IFD2
+        tiff.write(thumbnail, 0, thumbnail.length);
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        write(result, 0xFF, 0xD8);
+        write(result, 0xFF, 0xE0, 0, 4, 'J', 'F');
+        int app1Length = 2 + 6 + tiff.size();
+        write(result, 0xFF, 0xE1, app1Length >> 8, app1Length & 0xff, 'E', 'x', 'i', 'f', 0, 0);
+        byte[] tiffBytes = tiff.toByteArray();
+        result.write(tiffBytes, 0, tiffBytes.length);
+        byte[] image = createJpeg(4000, 3000);
+        result.write(image, 2, image.length - 4);
+        result.write(new byte[imageDataSize], 0, imageDataSize);
+        write(result, 0xFF, 0xD9);
+        return result.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, int... bytes) {
+        for (int b : bytes) out.write(b);
+    }
+
+    @Test
+    public void readExifThumbnail() throws IOException {
+        byte[] thumbnail = createJpeg(160, 120);
+        byte[] jpeg = createJpegWithExif(thumbnail, 100000);
+        ByteArrayInputStream in = new ByteArrayInputStream(jpeg);
+
+        byte[] result = ExifThumbnailReader.read(in);
+        assertArrayEquals(thumbnail, result);
+        assertTrue("stops after exif", jpeg.length - in.available() < 200);
+        assertArrayEquals(new int[]{160, 120}, ExifThumbnailReader.getJpegSize(result));
+        assertArrayEquals(new int[]{4000, 3000}, ExifThumbnailReader.getJpegSize(jpeg));
+    }
+
+    @Test
+    public void readWithoutExif() throws IOException {
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream(createJpeg(10, 10))));
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream("no jpg".getBytes())));
+    }
+
+    @Test
+    public void readMalformedExif() throws IOException {
+        byte[] jpeg = createJpegWithExif(createJpeg(160, 120), 100, 0xFFFFFFF0L);
+        assertNull(ExifThumbnailReader.read(new ByteArrayInputStream(jpeg)));
+    }
+}
@@ -0,0 +1,97 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.thumbnail;
+
+import static org.junit.Assert.*;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class ThumbnailCacheTest {
+    private File root;
+
+    @Before
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("ThumbnailCacheTest").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        for (File dir : root.listFiles()) {
+            for (File file : dir.listFiles()) file.delete();
+            dir.delete();
+        }
+        root.delete();
+    }
+
+    private static File put(ThumbnailCache sut, String mountId, String key, int size) throws IOException {
+        File temp = sut.createTempFile(mountId);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(new byte[size]);
+        }
+        return sut.put(mountId, key, temp);
+    }
+
+    @Test
+    public void getAfterPut() throws IOException {
+        ThumbnailCache sut = new ThumbnailCache(root, 1000);
+        String key = ThumbnailCache.getKey("zip/dir/a.jpg", 1234, 5000, ThumbnailCache.getSizeBucket(100, 90));
+        assertNull(sut.get("zip", key));
+
+        File thumbnail = put(sut, "zip", key, 100);
+        assertEquals(thumbnail, sut.get("zip", key));
+        assertNull("changed crc", sut.get("zip", ThumbnailCache.getKey("zip/dir/a.jpg", 4321, 5000, 64)));
+        assertEquals("same size bucket", key, ThumbnailCache.getKey("zip/dir/a.jpg", 1234, 5000,
+                ThumbnailCache.getSizeBucket(120, 64)));
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() throws IOException {
+        ThumbnailCache sut = new ThumbnailCache(root, 250);
+        put(sut, "zip", "a", 100);
+        put(sut, "zip", "b", 100);
+        sut.get("zip", "a");
+        put(sut, "other", "c", 100);
+
+        assertNotNull(sut.get("zip", "a"));
+        assertNull(sut.get("zip", "b"));
+        assertNotNull(sut.get("other", "c"));
+        assertEquals(200, sut.getTotalBytes());
+    }
+
+    @Test
+    public void invalidateAndReload() throws IOException {
+        ThumbnailCache sut = new ThumbnailCache(root, 1000);
+        put(sut, "zip", "a", 100);
+        put(sut, "other", "b", 100);
+        assertTrue(sut.invalidate("zip") > 0);
+        assertNull(sut.get("zip", "a"));
+
+        ThumbnailCache reloaded = new ThumbnailCache(root, 1000);
+        assertEquals(100, reloaded.getTotalBytes());
+        assertNotNull(reloaded.get("other", "b"));
+    }
+}
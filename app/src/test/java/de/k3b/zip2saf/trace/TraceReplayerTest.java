@@ -0,0 +1,94 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.trace;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+public class TraceReplayerTest {
+    private static File createZip(String... fileNames) throws IOException {
+        File result = File.createTempFile("TraceReplayerTest", ".zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(result))) {
+            for (String fileName : fileNames) {
+                zip.putNextEntry(new ZipEntry(fileName));
+                zip.write(fileName.getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return result;
+    }
+
+    private static TraceRecord record(int operation, long startMillis, String documentId, String argument) {
+        return new TraceRecord(operation, startMillis, 0, documentId, argument, null, 0, 0);
+    }
+
+    @Test
+    public void replayZipCore() throws Exception {
+        File zipFile = createZip("dir/a.jpg", "dir/b.jpg", "readme.txt");
+        ZipCoreReplayTarget target = new ZipCoreReplayTarget().add("my.zip", zipFile);
+        List<TraceRecord> records = Arrays.asList(
+                record(ProviderMetrics.OP_ROOTS, 0, "my.zip", null),
+                record(ProviderMetrics.OP_CHILDREN, 1, "my.zip/dir/", null),
+                record(ProviderMetrics.OP_DOCUMENT, 2, "my.zip/dir/a.jpg", null),
+                record(ProviderMetrics.OP_THUMBNAIL, 3, "my.zip/dir/a.jpg", null),
+                record(ProviderMetrics.OP_OPEN, 4, "my.zip/readme.txt", "r"),
+                record(ProviderMetrics.OP_SEARCH, 5, "my.zip", "b.jpg"),
+                record(ProviderMetrics.OP_OPEN, 6, "my.zip/unknown.txt", "r"),
+                record(ProviderMetrics.OP_CHILDREN, 7, "unknown.zip/", null));
+
+        TraceReplayer.Result result = new TraceReplayer(target, 3, 1).replay(records);
+
+        assertEquals(8, result.getCount());
+        assertEquals(2, result.getErrorCount());
+        assertEquals(2, result.getLatency(ProviderMetrics.OP_OPEN).getCount());
+        // recorded timing is kept
+        assertTrue(result.getElapsedMillis() >= 7);
+        zipFile.delete();
+    }
+
+    @Test
+    public void replayAsFastAsPossible() throws Exception {
+        List<TraceRecord> records = Arrays.asList(
+                record(ProviderMetrics.OP_ROOTS, 0, "my.zip", null),
+                record(ProviderMetrics.OP_ROOTS, 60000, "my.zip", null));
+        final int[] calls = {0};
+        TraceReplayer.Result result = new TraceReplayer(new TraceReplayer.Target() {
+            @Override
+            public void execute(TraceRecord record) {
+                calls[0]++;
+            }
+        }, 1, 0).replay(records);
+
+        assertEquals(2, calls[0]);
+        assertTrue(result.getElapsedMillis() < 60000);
+    }
+}
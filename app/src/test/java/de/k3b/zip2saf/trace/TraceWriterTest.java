@@ -0,0 +1,128 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.trace;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import de.k3b.zip2saf.metrics.ProviderMetrics;
+
+public class TraceWriterTest {
+    @Test
+    public void writeAndRead() throws IOException {
+        File dir = Files.createTempDirectory("TraceWriterTest").toFile();
+        File file = new File(dir, "sub/provider.trace");
+        long start = System.nanoTime();
+        try (TraceWriter sut = new TraceWriter(file, 1000000)) {
+            sut.add(ProviderMetrics.OP_ROOTS, start, null, null, null, null);
+            sut.add(ProviderMetrics.OP_CHILDREN, start, "my.zip/dir,with\ttab/", "_display_name ASC",
+                    new String[]{"document_id", "odd,column"}, null);
+            sut.add(ProviderMetrics.OP_THUMBNAIL, start, "my.zip/dir/a\\b.jpg", null, null, new int[]{96, 64});
+            assertEquals(3, sut.getCount());
+        }
+
+        List<TraceRecord> records = TraceWriter.read(file);
+        assertEquals(3, records.size());
+        assertEquals(ProviderMetrics.OP_ROOTS, records.get(0).operation);
+        assertNull(records.get(0).documentId);
+        assertNull(records.get(0).projection);
+
+        TraceRecord children = records.get(1);
+        assertEquals(ProviderMetrics.OP_CHILDREN, children.operation);
+        assertEquals("my.zip/dir,with\ttab/", children.documentId);
+        assertEquals("_display_name ASC", children.argument);
+        assertArrayEquals(new String[]{"document_id", "odd,column"}, children.projection);
+
+        TraceRecord thumbnail = records.get(2);
+        assertEquals("my.zip/dir/a\\b.jpg", thumbnail.documentId);
+        assertEquals(96, thumbnail.sizeX);
+        assertEquals(64, thumbnail.sizeY);
+        assertTrue(thumbnail.durationMicros >= 0);
+
+        file.delete();
+        file.getParentFile().delete();
+        dir.delete();
+    }
+
+    @Test
+    public void stopsWhenFull() throws IOException {
+        File file = File.createTempFile("TraceWriterTest", ".trace");
+        TraceWriter sut = new TraceWriter(file, 100);
+        for (int i = 0; i < 10; i++) {
+            sut.add(ProviderMetrics.OP_DOCUMENT, System.nanoTime(), "my.zip/file" + i + ".txt", null, null, null);
+        }
+        assertFalse(sut.isRecording());
+        int count = sut.getCount();
+        assertTrue(count < 10);
+        assertEquals(count, TraceWriter.read(file).size());
+        file.delete();
+    }
+
+    @Test
+    public void ignoreTornLastLine() throws IOException {
+        File file = File.createTempFile("TraceWriterTest", ".trace");
+        try (TraceWriter sut = new TraceWriter(file, 1000000)) {
+            sut.add(ProviderMetrics.OP_DOCUMENT, System.nanoTime(), "my.zip/file1.txt", null, null, null);
+            sut.add(ProviderMetrics.OP_DOCUMENT, System.nanoTime(), "my.zip/file2.txt", null, null, null);
+        }
+        byte[] content = Files.readAllBytes(file.toPath());
+
+        // killed while writing the last record
+        Files.write(file.toPath(), Arrays.copyOf(content, content.length - 5));
+        List<TraceRecord> records = TraceWriter.read(file);
+        assertEquals(1, records.size());
+        assertEquals("my.zip/file1.txt", records.get(0).documentId);
+
+        // invalid record before the last one
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8)) {
+            out.write("\ninvalid record\n");
+            out.write(new String(content, StandardCharsets.UTF_8).split("\n")[1]);
+            out.write("\n");
+        }
+        try {
+            TraceWriter.read(file);
+            fail("invalid record before the last line");
+        } catch (IOException expected) {
+            // ok
+        }
+        file.delete();
+    }
+
+    @Test(expected = IOException.class)
+    public void readNoTrace() throws IOException {
+        File file = File.createTempFile("TraceWriterTest", ".trace");
+        file.deleteOnExit();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            out.write("something else\n");
+        }
+        TraceWriter.read(file);
+    }
+}
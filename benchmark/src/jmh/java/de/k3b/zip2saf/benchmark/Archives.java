@@ -0,0 +1,98 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import de.k3b.zip2saf.index.RandomAccessInput;
+
+/**
+ * Test archives for the benchmarks: photo-folder like zips with 100 entries per directory
+ * in two directory levels.
+ */
+class Archives {
+    static final int FILES_PER_DIR = 100;
+    private static final int DIRS_PER_DIR = 100;
+
+    private Archives() {
+    }
+
+    /** @return zip path of the entry number i */
+    static String getName(int i) {
+        int dir = i / FILES_PER_DIR;
+        return String.format(Locale.ROOT, "dir%03d/sub%03d/IMG_%07d.jpg", dir / DIRS_PER_DIR, dir % DIRS_PER_DIR, i);
+    }
+
+    static String[] getNames(int count) {
+        String[] result = new String[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = getName(i);
+        }
+        return result;
+    }
+
+    /** @return zip with count empty STORED entries. Only the central directory matters */
+    static byte[] createZip(int count) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(count * 130);
+        CRC32 empty = new CRC32();
+        try (ZipOutputStream zip = new ZipOutputStream(result)) {
+            for (int i = 0; i < count; i++) {
+                ZipEntry entry = new ZipEntry(getName(i));
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(0);
+                entry.setCrc(empty.getValue());
+                zip.putNextEntry(entry);
+                zip.closeEntry();
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /** in memory zip file */
+    static class ByteArrayInput implements RandomAccessInput {
+        private final byte[] data;
+
+        ByteArrayInput(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public long length() {
+            return data.length;
+        }
+
+        @Override
+        public int read(long position, byte[] buffer, int offset, int len) {
+            if (position >= data.length) return -1;
+            int count = (int) Math.min(len, data.length - position);
+            System.arraycopy(data, (int) position, buffer, offset, count);
+            return count;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
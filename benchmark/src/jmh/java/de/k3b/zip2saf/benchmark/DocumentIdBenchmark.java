@@ -0,0 +1,86 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import de.k3b.zip2saf.data.DocumentIds;
+
+/**
+ * Parsing of document ids that every provider call does at least once.
+ * One operation = one document id out of a sample of the archive.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DocumentIdBenchmark {
+    private static final int SAMPLE_SIZE = 4096;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int entries;
+
+    private String[] documentIds;
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        documentIds = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            // spread over the whole archive
+            int entry = (int) ((long) i * entries / SAMPLE_SIZE);
+            documentIds[i] = DocumentIds.getDocumentId("photos-2022.zip", Archives.getName(entry));
+        }
+    }
+
+    private String nextId() {
+        String result = documentIds[next];
+        next = (next + 1) % SAMPLE_SIZE;
+        return result;
+    }
+
+    @Benchmark
+    public String rootId() {
+        return DocumentIds.getRootId(nextId());
+    }
+
+    @Benchmark
+    public String zipPath() {
+        return DocumentIds.getZipPath(nextId());
+    }
+
+    @Benchmark
+    public String directoryId() {
+        return DocumentIds.getDirectoryID(DocumentIds.getZipPath(nextId()));
+    }
+
+    @Benchmark
+    public long lastModified() {
+        return DocumentIds.getTimeInMilliSince1970(next++ & 0x7fffffff);
+    }
+}
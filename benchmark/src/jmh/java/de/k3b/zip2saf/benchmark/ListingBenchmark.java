@@ -0,0 +1,82 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import de.k3b.zip2saf.data.DocumentIds;
+
+/**
+ * Path handling of a directory listing without index: every entry name of the archive is
+ * checked against the listed directory like ZipReadStorageProvider.includeLocalFileHeader() does.
+ * One operation = one listing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListingBenchmark {
+    @Param({"10", "1000", "100000", "1000000"})
+    public int entries;
+
+    private String[] names;
+
+    @Setup
+    public void setup() {
+        names = Archives.getNames(entries);
+    }
+
+    @Benchmark
+    public int listRoot() {
+        return list("");
+    }
+
+    @Benchmark
+    public int listSubDir() {
+        return list("dir000/sub000/");
+    }
+
+    /** @return number of children of dir */
+    private int list(String dir) {
+        Set<String> alreadyIncluded = new HashSet<>();
+        for (String name : names) {
+            String relPath = DocumentIds.getRelPath(name, dir);
+            if (relPath != null) {
+                int end = relPath.indexOf(DocumentIds.PATH_DELIMITER) + 1;
+                if (end > 0) {
+                    // entry of a sub dir: the sub dir is the child
+                    relPath = relPath.substring(0, end);
+                }
+                alreadyIncluded.add(relPath);
+            }
+        }
+        return alreadyIncluded.size();
+    }
+}
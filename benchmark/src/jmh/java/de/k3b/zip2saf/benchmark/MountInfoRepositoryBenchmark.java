@@ -0,0 +1,76 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import de.k3b.zip2saf.data.MountInfo;
+import de.k3b.zip2saf.data.MountInfoRepository;
+
+/**
+ * Persistence of the mounted zips as json, as done on every mount, unmount and index update.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MountInfoRepositoryBenchmark {
+    @Param({"1", "10", "100"})
+    public int mounts;
+
+    private MountInfoRepository repository;
+    private String json;
+
+    @Setup
+    public void setup() {
+        repository = MountInfoRepository.fromString("[]");
+        for (int i = 0; i < mounts; i++) {
+            String zipId = "photos-" + i + ".zip";
+            repository.add(new MountInfo(zipId,
+                    "content://com.android.externalstorage.documents/document/primary%3ADownload%2F" + zipId,
+                    null, "/data/user/0/de.k3b.android.zip2saf/cache/.zipindex/" + zipId + ".idx",
+                    "1234567:1650000000000"));
+        }
+        json = repository.toString();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return repository.toString();
+    }
+
+    @Benchmark
+    public MountInfoRepository fromJson() {
+        return MountInfoRepository.fromString(json);
+    }
+
+    @Benchmark
+    public MountInfoRepository roundTrip() {
+        return MountInfoRepository.fromString(repository.toString());
+    }
+}
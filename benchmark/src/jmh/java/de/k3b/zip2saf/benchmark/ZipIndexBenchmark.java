@@ -0,0 +1,102 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import de.k3b.zip2saf.index.MemoryZipIndex;
+import de.k3b.zip2saf.index.ZipCentralDirectoryReader;
+import de.k3b.zip2saf.index.ZipEntryInfo;
+import de.k3b.zip2saf.index.ZipIndex;
+
+/**
+ * Creating the in memory {@link ZipIndex} from the central directory of a zip
+ * and using it for lookups and listings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ZipIndexBenchmark {
+    private static final int SAMPLE_SIZE = 4096;
+
+    @Param({"10", "1000", "100000", "1000000"})
+    public int entries;
+
+    private byte[] zip;
+    private List<ZipEntryInfo> centralDirectory;
+    private ZipIndex index;
+    private String[] sample;
+    private int next = 0;
+
+    @Setup
+    public void setup() throws IOException {
+        zip = Archives.createZip(entries);
+        centralDirectory = ZipCentralDirectoryReader.read(new Archives.ByteArrayInput(zip));
+        index = MemoryZipIndex.create(centralDirectory);
+        sample = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sample[i] = Archives.getName((int) ((long) i * entries / SAMPLE_SIZE));
+        }
+    }
+
+    /** parsing the central directory */
+    @Benchmark
+    public List<ZipEntryInfo> readCentralDirectory() throws IOException {
+        return ZipCentralDirectoryReader.read(new Archives.ByteArrayInput(zip));
+    }
+
+    /** building the path tree of an already parsed central directory */
+    @Benchmark
+    public ZipIndex createIndex() {
+        return MemoryZipIndex.create(centralDirectory);
+    }
+
+    /** one lookup of a document id */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int find() {
+        String zipPath = sample[next];
+        next = (next + 1) % SAMPLE_SIZE;
+        return index.find(zipPath);
+    }
+
+    /** touching every child of a directory with {@link Archives#FILES_PER_DIR} entries */
+    @Benchmark
+    public long listSubDir() {
+        int dir = index.find("dir000/sub000/");
+        long sum = 0;
+        for (int i = index.getChildCount(dir) - 1; i >= 0; i--) {
+            int child = index.getChild(dir, i);
+            sum += index.getName(child).length() + index.getSize(child);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+    Copyright (C) 2022 k3b
+
+    This file is part of de.k3b.android.zip2saf (https://github.com/k3b/Zip2Saf/)
+
+    This program is free software: you can redistribute it and/or modify it
+    under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful, but WITHOUT
+    ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+    FOR A PARTICULAR PURPOSE. See the GNU General Public License
+    for more details.
+
+    You should have received a copy of the GNU General Public License along with
+    this program. If not, see <http://www.gnu.org/licenses/>
+    */
+
+package de.k3b.zip2saf.benchmark;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+
+import de.k3b.zip2saf.trace.TraceRecord;
+import de.k3b.zip2saf.trace.TraceReplayer;
+import de.k3b.zip2saf.trace.TraceWriter;
+import de.k3b.zip2saf.trace.ZipCoreReplayTarget;
+
+/**
+ * Replays a trace recorded on a device (adb shell dumpsys activity provider
+ * de.k3b.android.zip2saf/.ZipReadStorageProvider trace-on) against local copies of the zip files.
+ *
+ * ./gradlew :benchmark:replay --args="provider.trace zipId=file.zip ... [threads=4] [speed=0]"
+ */
+public class ReplayTool {
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("usage: ReplayTool trace-file zipId=zip-file ... [threads=n] [speed=factor]"
+                    + "\n  speed=1 recorded timing, 0 as fast as possible (default)");
+            System.exit(1);
+        }
+        List<TraceRecord> records = TraceWriter.read(new File(args[0]));
+        ZipCoreReplayTarget target = new ZipCoreReplayTarget();
+        int threads = 1;
+        double speed = 0;
+        for (int i = 1; i < args.length; i++) {
+            int pos = args[i].lastIndexOf('=');
+            if (pos <= 0) throw new IllegalArgumentException("expected name=value: " + args[i]);
+            String name = args[i].substring(0, pos);
+            String value = args[i].substring(pos + 1);
+            if (name.equals("threads")) {
+                threads = Integer.parseInt(value);
+            } else if (name.equals("speed")) {
+                speed = Double.parseDouble(value);
+            } else {
+                target.add(name, new File(value));
+            }
+        }
+
+        TraceReplayer.Result result = new TraceReplayer(target, threads, speed).replay(records);
+        PrintWriter out = new PrintWriter(System.out);
+        result.dump(out);
+        out.flush();
+    }
+}